@@ -0,0 +1,218 @@
+package cft.petrov;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Генераторы данных для бенчмарков. Данные задаются параметрами:
+ * размер, порядок (случайный / отсортированный / обратный), доля повторов и "форма" строк.
+ * Генерация детерминирована (фиксированное зерно), так что все способы сортировки получают одинаковые данные.
+ */
+public final class BenchmarkData {
+    static final long SEED = 20231018L;
+
+    /**
+     * Порядок сгенерированных данных.
+     */
+    public enum Order {
+        RANDOM,     // случайный
+        PRESORTED,  // уже отсортированы по возрастанию
+        REVERSED    // отсортированы по убыванию
+    }
+
+    /**
+     * "Форма" сгенерированных строк.
+     */
+    public enum Shape {
+        WORDS,         // латинские буквы без цифр, 4-16 символов
+        NUMERIC_RUNS,  // буквы вперемешку с числами: "part12-file7"
+        LONG_NUMBERS,  // префикс и число длиннее long (20-40 цифр)
+        CYRILLIC       // не-ASCII буквы с числами: "файл12"
+    }
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Метод генерирует массив целых чисел.
+     *
+     * @param size       длина массива
+     * @param order      порядок чисел
+     * @param duplicates доля повторов: числа выбираются из size * (1 - duplicates) различных значений
+     */
+    static int[] ints(int size, Order order, double duplicates) {
+        Random random = new Random(SEED);
+        int[] pool = random.ints(distinct(size, duplicates)).toArray();
+        int[] data = new int[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = pool[random.nextInt(pool.length)];
+        }
+        if (order != Order.RANDOM) {
+            Arrays.sort(data);
+            if (order == Order.REVERSED) {
+                for (int i = 0, j = size - 1; i < j; i++, j--) {
+                    int swap = data[i];
+                    data[i] = data[j];
+                    data[j] = swap;
+                }
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Метод генерирует массив 64-битных целых чисел (см. ints).
+     */
+    static long[] longs(int size, Order order, double duplicates) {
+        Random random = new Random(SEED);
+        long[] pool = random.longs(distinct(size, duplicates)).toArray();
+        long[] data = new long[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = pool[random.nextInt(pool.length)];
+        }
+        if (order != Order.RANDOM) {
+            Arrays.sort(data);
+            if (order == Order.REVERSED) {
+                for (int i = 0, j = size - 1; i < j; i++, j--) {
+                    long swap = data[i];
+                    data[i] = data[j];
+                    data[j] = swap;
+                }
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Метод генерирует массив строк без пробелов; упорядочиваются они "естественным порядком".
+     *
+     * @param size       длина массива
+     * @param shape      форма строк
+     * @param order      порядок строк
+     * @param duplicates доля повторов (см. ints)
+     */
+    static String[] strings(int size, Shape shape, Order order, double duplicates) {
+        Random random = new Random(SEED);
+        String[] pool = new String[distinct(size, duplicates)];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = string(random, shape);
+        }
+        String[] data = new String[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = pool[random.nextInt(pool.length)];
+        }
+        if (order != Order.RANDOM) {
+            Comparator<String> comparator = new CustomComparator();
+            Arrays.sort(data, order == Order.PRESORTED ? comparator : comparator.reversed());
+        }
+        return data;
+    }
+
+    /**
+     * Метод генерирует одну строку заданной формы.
+     */
+    static String string(Random random, Shape shape) {
+        StringBuilder sb = new StringBuilder();
+        switch (shape) {
+            case WORDS -> appendLetters(sb, random, 'a', 26, 4 + random.nextInt(13));
+            case NUMERIC_RUNS -> {
+                int runs = 1 + random.nextInt(3);
+                for (int run = 0; run < runs; run++) {
+                    appendLetters(sb, random, 'a', 26, 1 + random.nextInt(6));
+                    sb.append(random.nextInt(run == 0 ? 1000 : 100_000));
+                    if (run + 1 < runs) {
+                        sb.append('-');
+                    }
+                }
+            }
+            case LONG_NUMBERS -> {
+                sb.append("id");
+                sb.append(1 + random.nextInt(9));
+                int digits = 19 + random.nextInt(21);
+                for (int i = 0; i < digits; i++) {
+                    sb.append((char) ('0' + random.nextInt(10)));
+                }
+            }
+            case CYRILLIC -> {
+                appendLetters(sb, random, 'а', 32, 2 + random.nextInt(8));
+                sb.append(random.nextInt(10_000));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendLetters(StringBuilder sb, Random random, char first, int letters, int length) {
+        for (int i = 0; i < length; i++) {
+            sb.append((char) (first + random.nextInt(letters)));
+        }
+    }
+
+    private static int distinct(int size, double duplicates) {
+        return Math.max(1, (int) (size * (1 - duplicates)));
+    }
+
+    /**
+     * Метод генерирует входные файлы программы, каждый отсортирован по возрастанию.
+     * Строки делятся между файлами по кругу, так что их диапазоны пересекаются, как у независимых источников.
+     *
+     * @param dir        каталог файлов
+     * @param prefix     начало имен файлов
+     * @param dataType   тип данных
+     * @param lines      общее кол-во строк всех файлов
+     * @param files      кол-во файлов
+     * @param shape      форма строк (для строкового типа данных)
+     * @param duplicates доля повторов
+     * @param gzip       сжимать ли файлы (расширение ".txt.gz" вместо ".txt")
+     * @return           имена файлов
+     */
+    static List<String> writeInputFiles(Path dir, String prefix, DataType dataType, int lines, int files,
+                                        Shape shape, double duplicates, boolean gzip) throws IOException {
+        String[] data = switch (dataType) {
+            case INTEGER -> Arrays.stream(ints(lines, Order.PRESORTED, duplicates))
+                    .mapToObj(Integer::toString).toArray(String[]::new);
+            case LONG -> Arrays.stream(longs(lines, Order.PRESORTED, duplicates))
+                    .mapToObj(Long::toString).toArray(String[]::new);
+            case STRING -> strings(lines, shape, Order.PRESORTED, duplicates);
+        };
+        List<String> names = new ArrayList<>();
+        RunOptions runOptions = new RunOptions();
+        for (int file = 0; file < files; file++) {
+            Path path = dir.resolve(prefix + file + (gzip ? ".txt.gz" : ".txt"));
+            try (ChannelLineWriter out = ChannelLineWriter.open(path, runOptions)) {
+                for (int i = file; i < data.length; i += files) {
+                    out.writeLine(data[i]);
+                }
+            }
+            names.add(path.toString());
+        }
+        return names;
+    }
+
+    /**
+     * Метод удаляет каталог с файлами бенчмарка.
+     */
+    static void deleteDirectory(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Объект сообщений, к-й ничего не выводит: бенчмарки измеряют работу, а не вывод на консоль.
+     */
+    static Reporter quietReporter() {
+        return new Reporter(ReportLevel.QUIET, new PrintStream(OutputStream.nullOutputStream()), null);
+    }
+
+}
@@ -0,0 +1,90 @@
+package cft.petrov;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость одного сравнения строк в "естественном порядке" (CustomComparator)
+ * в сравнении с String.compareTo и с построением байтового ключа поразрядной сортировки.
+ * Пары строк либо случайны, либо отличаются только последним числом (худший случай для сравнения).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComparatorBenchmark {
+    private static final int PAIRS = 4096;
+
+    @Param({"WORDS", "NUMERIC_RUNS", "LONG_NUMBERS", "CYRILLIC"})
+    private BenchmarkData.Shape shape;
+
+    // строки пары: случайные или с общим префиксом
+    @Param({"false", "true"})
+    private boolean commonPrefix;
+
+    private final String[] left = new String[PAIRS];
+    private final String[] right = new String[PAIRS];
+    private final CustomComparator comparator = new CustomComparator();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        for (int i = 0; i < PAIRS; i++) {
+            if (commonPrefix) {
+                String prefix = BenchmarkData.string(random, shape);
+                left[i] = prefix + random.nextInt(1000);
+                right[i] = prefix + random.nextInt(1000);
+            }
+            else {
+                left[i] = BenchmarkData.string(random, shape);
+                right[i] = BenchmarkData.string(random, shape);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public int customComparator() {
+        int sum = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            sum += comparator.compare(left[i], right[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public int stringCompareTo() {
+        int sum = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            sum += left[i].compareTo(right[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public int radixKey() {
+        int sum = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            sum += StringRadixSort.encodeKey(left[i]).length;
+        }
+        return sum;
+    }
+
+}
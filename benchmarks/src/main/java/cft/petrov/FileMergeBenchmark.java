@@ -0,0 +1,87 @@
+package cft.petrov;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Работа программы целиком (Main.main): проверка входных файлов, сортировка и запись выходного файла.
+ * Общий объем строк фиксирован и делится между входными файлами, так что видно,
+ * как от числа файлов зависят слияние в памяти и потоковое слияние.
+ * Программа принимает имена файлов без каталога (см. ArgsValidator), поэтому файлы бенчмарка
+ * создаются в рабочем каталоге с префиксом "merge-bench-" и удаляются по окончании.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class FileMergeBenchmark {
+
+    @Param({"1000000"})
+    private int lines;
+
+    @Param({"2", "16"})
+    private int files;
+
+    @Param({"INTEGER", "STRING"})
+    private DataType dataType;
+
+    // способ работы программы: сортировка в памяти, потоковое слияние (--stream) или внешняя сортировка (--unsorted)
+    @Param({"memory", "stream", "unsorted"})
+    private String mode;
+
+    @Param({"0.0"})
+    private double duplicates;
+
+    private static final String OUTPUT_FILE_NAME = "merge-bench-out.txt";
+
+    private List<String> inputFileNames;
+    private String[] args;
+
+    @Setup
+    public void setUp() throws IOException {
+        inputFileNames = BenchmarkData.writeInputFiles(Path.of(""), "merge-bench-in", dataType, lines, files,
+                BenchmarkData.Shape.NUMERIC_RUNS, duplicates, false);
+        List<String> argList = new ArrayList<>();
+        argList.add(dataType == DataType.INTEGER ? "-i" : "-s");
+        argList.add(OUTPUT_FILE_NAME);
+        argList.addAll(inputFileNames);
+        argList.add("--log=quiet");
+        if (!mode.equals("memory")) {
+            argList.add("--" + mode);
+        }
+        args = argList.toArray(String[]::new);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (String fileName : inputFileNames) {
+            Files.deleteIfExists(Path.of(fileName));
+        }
+        Files.deleteIfExists(Path.of(OUTPUT_FILE_NAME));
+    }
+
+    @Benchmark
+    public void sortFiles() {
+        Main.main(args);
+    }
+
+}
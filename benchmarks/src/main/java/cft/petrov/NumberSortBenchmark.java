@@ -0,0 +1,99 @@
+package cft.petrov;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Скорость сортировки массивов целых чисел в памяти: слиянием (IntegerMergeSort),
+ * параллельным слиянием (ParallelMergeSort) и поразрядной сортировкой (IntegerRadixSort).
+ * Каждый вызов сортирует свежую копию исходного массива; стоимость копирования показывает бенчмарк copy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class NumberSortBenchmark {
+
+    @Param({"100000", "2000000"})
+    private int size;
+
+    @Param({"RANDOM", "PRESORTED", "REVERSED"})
+    private BenchmarkData.Order order;
+
+    @Param({"0.0", "0.9"})
+    private double duplicates;
+
+    private int[] ints;
+    private long[] longs;
+    private ParallelMergeSort parallelMergeSort;
+
+    @Setup
+    public void setUp() {
+        ints = BenchmarkData.ints(size, order, duplicates);
+        longs = BenchmarkData.longs(size, order, duplicates);
+        parallelMergeSort = new ParallelMergeSort(Runtime.getRuntime().availableProcessors(),
+                ParallelMergeSort.DEFAULT_THRESHOLD);
+    }
+
+    @Benchmark
+    public int[] copy() {
+        return ints.clone();
+    }
+
+    @Benchmark
+    public int[] intMerge() {
+        int[] data = ints.clone();
+        new IntegerMergeSort().divideIntArray(data, SortMode.ASC);
+        return data;
+    }
+
+    @Benchmark
+    public int[] intParallelMerge() {
+        int[] data = ints.clone();
+        parallelMergeSort.sortIntArray(data, SortMode.ASC);
+        return data;
+    }
+
+    @Benchmark
+    public int[] intRadix() {
+        int[] data = ints.clone();
+        new IntegerRadixSort().sortIntArray(data, SortMode.ASC);
+        return data;
+    }
+
+    @Benchmark
+    public int[] intJdkSort() {
+        int[] data = ints.clone();
+        Arrays.sort(data);
+        return data;
+    }
+
+    @Benchmark
+    public long[] longMerge() {
+        long[] data = longs.clone();
+        new IntegerMergeSort().divideLongArray(data, SortMode.ASC);
+        return data;
+    }
+
+    @Benchmark
+    public long[] longRadix() {
+        long[] data = longs.clone();
+        new IntegerRadixSort().sortLongArray(data, SortMode.ASC);
+        return data;
+    }
+
+}
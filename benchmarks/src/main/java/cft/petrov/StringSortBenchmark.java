@@ -0,0 +1,74 @@
+package cft.petrov;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Скорость сортировки массива строк в "естественном порядке": слиянием (StringMergeSort),
+ * параллельным слиянием (ParallelMergeSort) и поразрядной сортировкой по байтовым ключам (StringRadixSort).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class StringSortBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int size;
+
+    @Param({"WORDS", "NUMERIC_RUNS", "LONG_NUMBERS", "CYRILLIC"})
+    private BenchmarkData.Shape shape;
+
+    @Param({"RANDOM", "PRESORTED"})
+    private BenchmarkData.Order order;
+
+    @Param({"0.0", "0.9"})
+    private double duplicates;
+
+    private String[] strings;
+    private final Comparator<String> comparator = new CustomComparator();
+    private ParallelMergeSort parallelMergeSort;
+
+    @Setup
+    public void setUp() {
+        strings = BenchmarkData.strings(size, shape, order, duplicates);
+        parallelMergeSort = new ParallelMergeSort(Runtime.getRuntime().availableProcessors(),
+                ParallelMergeSort.DEFAULT_THRESHOLD);
+    }
+
+    @Benchmark
+    public String[] merge() {
+        String[] data = strings.clone();
+        new StringMergeSort().divideStringArray(data, SortMode.ASC, comparator);
+        return data;
+    }
+
+    @Benchmark
+    public String[] parallelMerge() {
+        String[] data = strings.clone();
+        parallelMergeSort.sortStringArray(data, SortMode.ASC, comparator);
+        return data;
+    }
+
+    @Benchmark
+    public String[] radix() {
+        String[] data = strings.clone();
+        new StringRadixSort().sortStringArray(data, SortMode.ASC);
+        return data;
+    }
+
+}
@@ -0,0 +1,96 @@
+package cft.petrov;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Скорость чтения и проверки входного файла курсором InputFileCursor:
+ * разбор строк, проверка типа данных и "естественного порядка".
+ * Кроме числа проходов по файлу выводятся счетчики lines и bytes - строк и байт файла в секунду.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ValidationBenchmark {
+
+    @Param({"1000000"})
+    private int lines;
+
+    @Param({"INTEGER", "LONG", "STRING"})
+    private DataType dataType;
+
+    @Param({"NUMERIC_RUNS"})
+    private BenchmarkData.Shape shape;
+
+    @Param({"false", "true"})
+    private boolean gzip;
+
+    private Path dir;
+    private String fileName;
+    private long fileSize;
+    private Reporter reporter;
+    private final CustomComparator comparator = new CustomComparator();
+
+    /**
+     * Счетчики прочитанных строк и байт, к-е JMH выводит в пересчете на секунду.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long lines;
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            lines = 0;
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("validation-bench");
+        fileName = BenchmarkData.writeInputFiles(dir, "in", dataType, lines, 1, shape, 0.0, gzip).get(0);
+        fileSize = Files.size(Path.of(fileName));
+        reporter = BenchmarkData.quietReporter();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteDirectory(dir);
+    }
+
+    @Benchmark
+    public long validate(Counters counters) throws IOException {
+        long checksum = 0;
+        try (InputFileCursor cursor = InputFileCursor.open(fileName, dataType, comparator, true, reporter)) {
+            while (cursor.next()) {
+                checksum += dataType.isNumeric() ? cursor.currentNumber() : cursor.current().length();
+            }
+            counters.lines += cursor.getStats().getRead();
+        }
+        counters.bytes += fileSize;
+        return checksum;
+    }
+
+}
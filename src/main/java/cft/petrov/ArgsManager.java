@@ -1,34 +1,59 @@
 package cft.petrov;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Класс содержит методы получения из аргументов командной строки частей программы:
- * режима сортировки, типа данных, списка имен входных файлов, имени выходного файла.
+ * режима сортировки, типа данных, списка имен входных файлов, имени выходного файла
+ * и дополнительных параметров запуска.
  */
 public class ArgsManager {
 
+    // наибольший размер буфера ввода-вывода (размер задается в int)
+    static final long MAX_BUFFER_SIZE = 1L << 30;
+
+    // позиционные аргументы: [типСортировки] типДанных выхФайл вхФайл [вхФайл2 вхФайл3 ...]
     private final String[] args;
+    // дополнительные параметры вида "--имя" или "--имя=значение"
+    private final List<String> options;
 
     public ArgsManager(String[] args) {
-        this.args = args;
+        this.args = withoutOptions(args);
+        this.options = Arrays.stream(args).filter(ArgsManager::isOption).toList();
+    }
+
+    /**
+     * Метод проверяет, является ли аргумент командной строки дополнительным параметром.
+     */
+    static boolean isOption(String arg) {
+        return arg.startsWith("--");
+    }
+
+    /**
+     * Метод возвращает позиционные аргументы командной строки, отбрасывая дополнительные параметры.
+     */
+    static String[] withoutOptions(String[] args) {
+        return Arrays.stream(args).filter(arg -> !isOption(arg)).toArray(String[]::new);
     }
 
     /**
      * Метод определяет режим сортировки, исходя из значения первого аргумента командной строки,
      * и возвращает его.
+     *
+     * @param reporter объект, выводящий сообщение о выбранном режиме
      */
-    public SortMode findAndGetSortType() {
+    public SortMode findAndGetSortType(Reporter reporter) {
         SortMode sortMode = SortMode.ASC;  // по умолчанию - сортировка по возрастанию
         switch (args[0]) {
-            case "-a", "-A" -> System.out.println("Выбран режим сортировки по возрастанию.");
+            case "-a", "-A" -> reporter.info("Выбран режим сортировки по возрастанию.\n");
             case "-d", "-D" -> {
                 sortMode = SortMode.DESC;
-                System.out.println("Выбран режим сортировки по убыванию.");
+                reporter.info("Выбран режим сортировки по убыванию.\n");
             }
-            // метод isValidArgs заботится, чтобы args[0].matches("^-[aAdDiIsS]$")
-            default -> System.out.println("По умолчанию будет произведена сортировка по возрастанию.");
+            // метод isValidArgs заботится, чтобы args[0].matches("^-[aAdDiIlLsS]$")
+            default -> reporter.info("По умолчанию будет произведена сортировка по возрастанию.\n");
         }
         return sortMode;
     }
@@ -36,18 +61,24 @@ public class ArgsManager {
     /**
      * Метод определяет тип данных, исходя из значения первого (второго) аргумента командной строки,
      * и возвращает его.
+     *
+     * @param reporter объект, выводящий сообщение о выбранном типе данных
      */
-    public DataType findAndGetDataType() {
+    public DataType findAndGetDataType(Reporter reporter) {
         DataType dataType;
         if (args[0].matches("-[iI]") || args[1].matches("-[iI]")) {
             dataType = DataType.INTEGER;
-            System.out.println("Выбран режим работы с целыми числами.");
+            reporter.info("Выбран режим работы с целыми числами.\n");
+        }
+        else if (args[0].matches("-[lL]") || args[1].matches("-[lL]")) {
+            dataType = DataType.LONG;
+            reporter.info("Выбран режим работы с 64-битными целыми числами.\n");
         }
         else {
             dataType = DataType.STRING;
-            System.out.println("Выбран режим работы со строками.");
+            reporter.info("Выбран режим работы со строками.\n");
         }
-        // метод isValidArgs заботится, чтобы тип данных matches("^-[iIsS]$")
+        // метод isValidArgs заботится, чтобы тип данных matches("^-[iIlLsS]$")
         return dataType;
     }
 
@@ -56,8 +87,8 @@ public class ArgsManager {
      */
     public List<String> findAndGetInputFileNames() {
         List<String> inputFileNames = new ArrayList<>();
-        for (int i = args.length-1; !args[i-1].matches("^-[iIsS]$"); i--) {
-            if (args[i].endsWith(".txt")) {
+        for (int i = args.length-1; !args[i-1].matches("^-[iIlLsS]$"); i--) {
+            if (isTextFileName(args[i])) {
                 inputFileNames.add(args[i]);
             }
         }
@@ -70,11 +101,80 @@ public class ArgsManager {
     public String findAndGetOutputFileName() {
         for (int i = 1; i < args.length; i++) {
             // почему с i = 1: [типСортировки] типДанных выхФайл вхФайл [вхФайл2 вхФайл3 ...]
-            if (args[i].endsWith(".txt")) {
+            if (isTextFileName(args[i])) {
                 return args[i];
             }
         }
         return "";
     }
 
+    /**
+     * Метод проверяет, является ли аргумент именем текстового файла: ".txt" или сжатого ".txt.gz",
+     * либо стандартным потоком ("-") или именованным каналом.
+     */
+    private static boolean isTextFileName(String arg) {
+        return arg.endsWith(".txt") || arg.endsWith(".txt.gz") || LineReader.isStream(arg);
+    }
+
+    /**
+     * Метод формирует и возвращает дополнительные параметры запуска программы.
+     * Метод isValidOptions заботится, чтобы все параметры были известны и имели допустимые значения.
+     */
+    public RunOptions findAndGetRunOptions() {
+        RunOptions runOptions = new RunOptions();
+        for (String option : options) {
+            int eq = option.indexOf('=');
+            String name = eq < 0 ? option : option.substring(0, eq);
+            String value = eq < 0 ? "" : option.substring(eq + 1);
+            switch (name) {
+                case "--stream" -> runOptions.setStreaming(true);
+                case "--parallelism" -> runOptions.setParallelism(Integer.parseInt(value));
+                case "--parallel-threshold" -> runOptions.setParallelThreshold(Integer.parseInt(value));
+                case "--engine" -> runOptions.setSortEngine(SortEngine.valueOf(value.toUpperCase()));
+                case "--unsorted" -> runOptions.setUnsorted(true);
+                case "--presorted" -> runOptions.setPresorted(true);
+                case "--max-memory" -> runOptions.setMaxMemory(parseSize(value));
+                case "--temp-dir" -> runOptions.setTempDir(value);
+                case "--write-buffer" -> runOptions.setWriteBufferSize((int) Math.min(parseSize(value), MAX_BUFFER_SIZE));
+                case "--async-write" -> runOptions.setAsyncWrite(true);
+                case "--gzip-buffer" -> runOptions.setGzipBufferSize((int) Math.min(parseSize(value), MAX_BUFFER_SIZE));
+                case "--threads" -> runOptions.setThreads(Integer.parseInt(value));
+                case "--log" -> runOptions.setReportLevel(ReportLevel.valueOf(value.toUpperCase()));
+                case "--rejects" -> runOptions.setRejectsFileName(value);
+                case "--stats" -> runOptions.setStatsFileName(value);
+                case "--limit" -> runOptions.setLimit(Long.parseLong(value));
+                case "--index" -> runOptions.setIndexInterval(value.isEmpty()
+                        ? SparseIndex.DEFAULT_INTERVAL : Integer.parseInt(value));
+                case "--from" -> runOptions.setRangeFrom(value);
+                case "--to" -> runOptions.setRangeTo(value);
+                case "--checkpoint" -> runOptions.setCheckpointInterval(value.isEmpty()
+                        ? MergeCheckpoint.DEFAULT_INTERVAL : Long.parseLong(value));
+                case "--resume" -> runOptions.setResume(true);
+                case "--shards" -> runOptions.setShards(Integer.parseInt(value));
+                case "--fan-in" -> runOptions.setFanIn(Integer.parseInt(value));
+                default -> { } // неизвестные параметры отсекает метод isValidOptions
+            }
+        }
+        // продолжаемое слияние и дальше сохраняет контрольные точки
+        if (runOptions.isResume() && runOptions.getCheckpointInterval() == 0) {
+            runOptions.setCheckpointInterval(MergeCheckpoint.DEFAULT_INTERVAL);
+        }
+        return runOptions;
+    }
+
+    /**
+     * Метод переводит размер вида "512", "64k", "256m" или "2g" в байты.
+     */
+    static long parseSize(String value) {
+        char suffix = Character.toLowerCase(value.charAt(value.length() - 1));
+        long multiplier = switch (suffix) {
+            case 'k' -> 1L << 10;
+            case 'm' -> 1L << 20;
+            case 'g' -> 1L << 30;
+            default -> 1;
+        };
+        String digits = multiplier == 1 ? value : value.substring(0, value.length() - 1);
+        return Long.parseLong(digits) * multiplier;
+    }
+
 }
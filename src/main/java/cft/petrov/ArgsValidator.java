@@ -1,7 +1,10 @@
 package cft.petrov;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 /**
@@ -15,11 +18,53 @@ import java.util.regex.Pattern;
 public class ArgsValidator {
     // минимально допустимое кол-во аргументов
     private static final int MIN_COUNT_ARGS = 3;
+    // допустимые дополнительные параметры и шаблоны их значений ("" - параметр без значения)
+    private static final Map<String, String> OPTION_PATTERNS = Map.ofEntries(
+            Map.entry("--stream", ""),
+            Map.entry("--parallelism", "^[1-9]\\d{0,3}$"),
+            Map.entry("--parallel-threshold", "^[1-9]\\d{0,8}$"),
+            Map.entry("--engine", "^(?i)(auto|merge|radix|natural)$"),
+            Map.entry("--unsorted", ""),
+            Map.entry("--presorted", ""),
+            Map.entry("--max-memory", "^[1-9]\\d{0,9}[kKmMgG]?$"),
+            Map.entry("--temp-dir", "^.+$"),
+            Map.entry("--write-buffer", "^[1-9]\\d{0,9}[kKmMgG]?$"),
+            Map.entry("--async-write", ""),
+            Map.entry("--gzip-buffer", "^[1-9]\\d{0,9}[kKmMgG]?$"),
+            Map.entry("--threads", "^[1-9]\\d{0,3}$"),
+            Map.entry("--log", "^(?i)(quiet|summary|verbose)$"),
+            Map.entry("--rejects", "^.+$"),
+            Map.entry("--stats", "^.+$"),
+            Map.entry("--limit", "^[1-9]\\d{0,17}$"),
+            Map.entry("--index", "^([1-9]\\d{0,8})?$"),
+            Map.entry("--from", "^\\S+$"),
+            Map.entry("--to", "^\\S+$"),
+            Map.entry("--checkpoint", "^([1-9]\\d{0,17})?$"),
+            Map.entry("--resume", ""),
+            Map.entry("--shards", "^[1-9]\\d{0,2}$"),
+            Map.entry("--fan-in", "^([2-9]|[1-9]\\d{1,4})$")
+    );
 
+    // позиционные аргументы
     private final String[] args;
+    // дополнительные параметры вида "--имя" или "--имя=значение"
+    private final List<String> options;
+
+    // поток сообщений об ошибках в аргументах и справки
+    private final PrintStream messages;
 
     public ArgsValidator(String[] args) {
-        this.args = args;
+        this(args, System.err);
+    }
+
+    /**
+     * @param args     аргументы командной строки
+     * @param messages поток сообщений об ошибках в аргументах и справки (н-р, System.err)
+     */
+    public ArgsValidator(String[] args, PrintStream messages) {
+        this.args = ArgsManager.withoutOptions(args);
+        this.options = Arrays.stream(args).filter(ArgsManager::isOption).toList();
+        this.messages = messages;
     }
 
     /**
@@ -28,23 +73,26 @@ public class ArgsValidator {
      * @return результат проверки (корректны / некорректны)
      */
     boolean isValidArgs() {
+        if (!isValidOptions()) {
+            return false;
+        }
         // [типСортировки] типДанных выхФайл вхФайл [вхФайл2 вхФайл3 ...]
         if (args.length < MIN_COUNT_ARGS) {
-            System.out.println("Число аргументов командной строки меньше минимально допустимого !");
+            messages.println("Число аргументов командной строки меньше минимально допустимого !");
             return false;
         }
         int i = 0;
         // первый аргумент должен быть валидным ключом режима сортировки или типа данных
-        if (!args[i].matches("^-[aAdDiIsS]$")) {
-            System.out.println("Неверно указан первый аргумент командной строки !");
+        if (!args[i].matches("^-[aAdDiIlLsS]$")) {
+            messages.println("Неверно указан первый аргумент командной строки !");
             return false;
         }
         // если первый аргумент - ключ режима сортировки
         if (args[i].matches("^-[aAdD]$")) {
             i++; // переход к следующему аргументу, к-й должен быть ключом типа данных
         }
-        if (!args[i].matches("^-[iIsS]$")) {
-            System.out.println("Тип данных указан неверно, либо не указан вовсе !");
+        if (!args[i].matches("^-[iIlLsS]$")) {
+            messages.println("Тип данных указан неверно, либо не указан вовсе !");
             return false;
         }
         else {
@@ -53,6 +101,30 @@ public class ArgsValidator {
         }
     }
 
+    /**
+     * Метод проверяет, что все дополнительные параметры известны программе и имеют допустимые значения.
+     *
+     * @return результат проверки (корректны / некорректны)
+     */
+    private boolean isValidOptions() {
+        for (String option : options) {
+            int eq = option.indexOf('=');
+            String name = eq < 0 ? option : option.substring(0, eq);
+            String value = eq < 0 ? "" : option.substring(eq + 1);
+            String valuePattern = OPTION_PATTERNS.get(name);
+
+            if (valuePattern == null) {
+                messages.println("Указан неизвестный параметр " + option + " !");
+                return false;
+            }
+            if (!value.matches(valuePattern)) {
+                messages.println("Недопустимое значение параметра " + option + " !");
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Метод проверяет, корректны ли имена файлов и количество входных файлов.
      *
@@ -62,6 +134,8 @@ public class ArgsValidator {
     private boolean isValidFileNames(int i) {
         // счетчик файлов
         int filesCounter = 0;
+        // сколько входных файлов читаются из стандартного ввода
+        int standardInputs = 0;
         // список невалидных имен входных файлов
         List<String> wrongFileNames = new ArrayList<>();
 
@@ -69,33 +143,41 @@ public class ArgsValidator {
         Pattern pattern = Pattern.compile("^(?!" + // негативная опережающая проверка: имя файла не ...
                         // одно из зарезервированных системой имен:
                         "(?:AUX|NUL|PRN|CON|COM\\d|LPT\\d)" +
-                        // за которым может следовать расширение файла
-                        "(?:\\.[^.]*)?$)" +
+                        // за которым может следовать расширение файла (или несколько, н-р NUL.txt.gz)
+                        "(?:\\.[^.]*)*$)" +
                         // имя не должно содержать следующих символов:
                         "[^*:?\"\\|/<>\\x00-\\x1f]*" +
-                        // разрешение файла пусть будет ".txt" (как в примерах к ТЗ)
-                        "\\.txt$"
+                        // разрешение файла пусть будет ".txt" (как в примерах к ТЗ) или ".txt.gz" (сжатый файл)
+                        "\\.txt(?:\\.gz)?$"
                 , Pattern.CASE_INSENSITIVE);
 
         for (; i < args.length; i++) {
-            if (!pattern.matcher(args[i]).find()) {
+            // стандартный поток ("-") и именованный канал (FIFO) - не файлы на диске, их имена не проверяются
+            if (!LineReader.isStream(args[i]) && !pattern.matcher(args[i]).find()) {
                 wrongFileNames.add(args[i]);
             }
+            if (filesCounter > 0 && LineReader.isStandardStream(args[i])) {
+                standardInputs++;
+            }
             filesCounter++;
         }
 
         if (wrongFileNames.isEmpty()) {
             if (filesCounter < 2) {
-                System.out.println("Количество файлов не должно быть меньше двух!");
+                messages.println("Количество файлов не должно быть меньше двух!");
+                return false;
+            }
+            else if (standardInputs > 1) {
+                messages.println("Стандартный ввод (\"-\") можно указать лишь одним входным файлом!");
                 return false;
             }
             else {
-                System.out.println("Все аргументы командной строки соответствуют требованиям.");
+                // об успешной проверке сообщает Main, когда уже известен уровень подробности сообщений
                 return true;
             }
         }
         else {
-            System.out.println("Были указаны невалидные имена файлов:\n" + wrongFileNames);
+            messages.println("Были указаны невалидные имена файлов:\n" + wrongFileNames);
             return false;
         }
     }
@@ -104,22 +186,87 @@ public class ArgsValidator {
      * Метод выводит справку со всеми требованиями к переданным командной строке аргументам.
      */
     void printArgsHint() {
-        System.out.println("""
+        messages.println("""
                 \nОбнаружено несоответствие требованиям к одному или нескольким аргументам.
                 Программа преждевременно завершила свою работу.
                 Внимательно ознакомьтесь со справкой и устраните все возможные ошибки.
-                               
+
                 =====================================================С=П=Р=А=В=К=А=====================================================
                 Допустимые аргументы командной строки, по порядку:
                 1. режим сортировки ("-a" или "-A" - по возрастанию; "-d" или "-D" - по убыванию), необязательный
                    (по умолчанию - сортировка по возрастанию);
-                2. тип данных ("-i" или "-I" - целые числа; "-s" или "-S" - строки), обязательный;
+                2. тип данных ("-i" или "-I" - целые числа; "-l" или "-L" - 64-битные целые числа;
+                   "-s" или "-S" - строки), обязательный;
                 3. имя выходного файла, обязательное;
                 4. имена входных файлов, не менее одного.
 
-                Имена файлов должны оканчиваться на ".txt", могут содержать цифры
+                Дополнительные параметры (необязательные, в любом месте командной строки):
+                --stream  потоковое слияние предварительно отсортированных входных файлов
+                          без загрузки всех данных в память (по убыванию - только с --presorted);
+                --parallelism=N  параллельная сортировка на N потоках (по умолчанию 1 - последовательная);
+                --parallel-threshold=N  длина подмассива, выше к-й параллельная сортировка делит задачу
+                          (по умолчанию 8192);
+                --engine=auto|merge|radix|natural  способ сортировки в памяти: слиянием, поразрядный
+                          (для строк - по байтовым ключам "естественного порядка") или естественным слиянием
+                          уже упорядоченных серий; по умолчанию auto - естественное слияние упорядоченных
+                          входных файлов (при --parallelism > 1 - параллельное слияние, для больших массивов
+                          целых чисел из многих серий - поразрядная), а с --unsorted - поразрядная сортировка
+                          для больших массивов целых чисел, иначе слиянием;
+                --unsorted  входные файлы не упорядочены: строки не отбрасываются за нарушение порядка,
+                          а сортируются внешней сортировкой с временными файлами;
+                --presorted  входные файлы гарантированно упорядочены по возрастанию: по убыванию --stream
+                          и --limit сливают несжатые файлы потоком, читая их с конца
+                          (нарушение порядка в файле при этом - ошибка);
+                --max-memory=РАЗМЕР  бюджет памяти на порцию внешней сортировки, н-р 512m или 2g
+                          (по умолчанию половина доступной JVM памяти);
+                --temp-dir=КАТАЛОГ  каталог временных файлов внешней сортировки;
+                --write-buffer=РАЗМЕР  размер буфера записи выходного файла, н-р 4m (по умолчанию 1m);
+                --async-write  писать выходной файл в отдельном потоке, пока форматируется следующий буфер;
+                --gzip-buffer=РАЗМЕР  размер буфера распаковки / сжатия файлов ".txt.gz" (по умолчанию 64k);
+                --threads=N  кол-во потоков, в к-х параллельно проверяются входные файлы (по умолчанию 1);
+                --log=УРОВЕНЬ  подробность сообщений: quiet - только ошибки,
+                          summary - итоговые счетчики строк по каждому файлу (по умолчанию),
+                          verbose - также сообщение о каждой отброшенной строке;
+                --rejects=ФАЙЛ  файл, в к-й записываются отброшенные строки входных файлов
+                          (имя файла, номер строки, причина и сама строка);
+                --stats=ФАЙЛ  файл отчета JSON: время этапов работы, строки и байты в секунду,
+                          отброшенные строки по причинам, пиковый объем кучи и работа сборщика мусора;
+                --limit=N  записать в выходной файл только первые N строк результата:
+                          отсортированные по возрастанию файлы читаются лишь до N-й строки результата,
+                          в остальных случаях в памяти хранятся только N лучших строк;
+                --index[=K]  записать рядом с выходным файлом разреженный индекс "ФАЙЛ.idx":
+                          ключ и смещение каждой K-й строки (по умолчанию каждой 1024-й);
+                --from=КЛЮЧ, --to=КЛЮЧ  извлечь из упорядоченных по возрастанию входных файлов только строки
+                          диапазона [from, to] (любую из границ можно опустить): начало диапазона ищется
+                          по индексу "ФАЙЛ.idx" или двоичным поиском по самому файлу, без чтения файла с начала;
+                --checkpoint[=N]  при потоковом слиянии через каждые N строк (по умолчанию 1000000)
+                          сбрасывать выходной файл на диск и сохранять контрольную точку "ВЫХФАЙЛ.ckpt";
+                --resume  продолжить прерванное слияние с последней контрольной точки
+                          (с теми же аргументами, что и прерванный запуск);
+                --shards=N  разбить результат на N упорядоченных файлов-сегментов "ВЫХФАЙЛ-01.txt", ...
+                          с непересекающимися диапазонами ключей и примерно равным числом строк;
+                          границы ключей сегментов перечисляет манифест "ВЫХФАЙЛ.shards";
+                --fan-in=N  сливать за один проход не больше N файлов (по умолчанию 512, но не больше,
+                          чем процесс может открыть): при --stream с большим числом входных файлов
+                          и при большом числе серий --unsorted слияние идет в несколько проходов
+                          через временные файлы;
+
+                Имена файлов должны оканчиваться на ".txt" (или ".txt.gz" - файл сжат gzip), могут содержать цифры
                 и НЕ могут содержать зарезервированные системой имена и ряд символов: *,:,?,",<,>,\\,|,/
-                
+                Вместо имени файла можно указать "-" - стандартный ввод (для выходного файла - стандартный вывод,
+                сообщения программы тогда выводятся в стандартный поток ошибок), а также путь к именованному
+                каналу (FIFO), н-р, "<(команда)" в bash: так программа встраивается в конвейер команд.
+
+                Демон сортировки (первым аргументом, без остальных аргументов): --daemon[=АДРЕС] [--jobs=N] -
+                JVM остается запущенной и выполняет задания клиентов, до N одновременно; АДРЕС - номер порта
+                на localhost или путь к Unix-сокету (по умолчанию ".merge-sort.sock" в рабочем каталоге).
+                Клиент: --client[=АДРЕС] и обычные аргументы - задание выполняет демон того же рабочего каталога.
+                Демон, слушающий порт, принимает задания только с токеном из файла ".merge-sort.token",
+                доступного лишь владельцу: задания выполняются с правами пользователя демона.
+                Пакетный режим (первым аргументом): --batch=МАНИФЕСТ [--jobs=N] [--max-memory=РАЗМЕР] [--max-open-files=N] -
+                выполнить задания манифеста (по заданию - обычным аргументам - на строку) одновременно, до N сразу,
+                в пределах общего бюджета памяти и числа открытых файлов.
+
                 Подробнее об именовании файлов в Windows:
                 https://learn.microsoft.com/ru-ru/windows/win32/fileio/naming-a-file?redirectedfrom=MSDN#maximum-path-length-limitation
                 =======================================================================================================================
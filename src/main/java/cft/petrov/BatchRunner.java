@@ -0,0 +1,541 @@
+package cft.petrov;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Пакетный режим (параметр --batch=МАНИФЕСТ): один запуск выполняет много независимых заданий сортировки,
+ * перечисленных в манифесте, - по одному заданию на строку, с теми же аргументами, что и при обычном запуске
+ * (пустые строки и строки, начинающиеся с "#", пропускаются; аргумент с пробелами заключается в кавычки).
+ * <p>
+ * Задания выполняются одновременно в общем пуле из --jobs=N потоков. Чтобы одновременные задания
+ * не исчерпали память и дескрипторы файлов, каждое задание перед запуском занимает свою оценку памяти
+ * из общего бюджета --max-memory и по дескриптору на каждый входной и выходной файл из предела --max-open-files.
+ * Задания запускаются по убыванию объема входных файлов: самые долгие начинаются первыми
+ * и не остаются в конце пакета одни. Сообщения задания копятся во временном файле (а не в памяти: их объем
+ * не ограничен, н-р, с --log=detail) и выводятся целиком в порядке заданий в манифесте,
+ * так что они не перемешиваются и не зависят от числа потоков.
+ */
+public class BatchRunner {
+    static final String OPTION = "--batch";
+    static final int DEFAULT_MAX_OPEN_FILES = 256;
+
+    // оценка памяти задания в байтах на байт входных файлов (массив и его копия при сортировке)
+    private static final int NUMBER_BYTES_FACTOR = 3;
+    private static final int STRING_BYTES_FACTOR = 6;
+    // во сколько раз сжатый gzip текст меньше исходного (для оценки объема данных файла .txt.gz)
+    private static final int GZIP_RATIO = 4;
+    // память потокового слияния на один входной файл (буферы чтения и чтения заранее)
+    private static final long STREAM_BYTES_PER_FILE = 4L << 20;
+    private static final long MEGABYTE = 1L << 20;
+
+    private final int jobs;
+    private final int memoryPermits;     // бюджет памяти в Мб
+    private final int openFilePermits;
+
+    /**
+     * Задание манифеста.
+     *
+     * @param lineNumber номер строки манифеста
+     * @param args       аргументы задания
+     * @param inputBytes объем входных файлов
+     * @param memory     оценка памяти задания в Мб
+     * @param files      кол-во одновременно открытых заданием файлов
+     */
+    private record Job(int lineNumber, String[] args, long inputBytes, int memory, int files) { }
+
+    private BatchRunner(int jobs, long maxMemory, int maxOpenFiles) {
+        this.jobs = jobs;
+        this.memoryPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxMemory / MEGABYTE));
+        this.openFilePermits = maxOpenFiles;
+    }
+
+    /**
+     * Метод проверяет, запускает ли аргумент пакетный режим ("--batch=МАНИФЕСТ").
+     */
+    static boolean isBatchOption(String arg) {
+        return arg.startsWith(OPTION + "=");
+    }
+
+    /**
+     * Метод выполняет задания манифеста.
+     *
+     * @param args аргументы командной строки: "--batch=МАНИФЕСТ" и, необязательно,
+     *             "--jobs=N", "--max-memory=РАЗМЕР", "--max-open-files=N"
+     * @return     наибольший из кодов завершения заданий (см. Main.runJob)
+     */
+    static int run(String[] args) {
+        String manifest = args[0].substring(OPTION.length() + 1);
+        int jobs = Runtime.getRuntime().availableProcessors();
+        long maxMemory = Runtime.getRuntime().maxMemory() / 4 * 3;
+        int maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.matches("^--jobs=[1-9]\\d{0,3}$")) {
+                jobs = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+            }
+            else if (arg.matches("^--max-memory=[1-9]\\d{0,9}[kKmMgG]?$")) {
+                maxMemory = ArgsManager.parseSize(arg.substring(arg.indexOf('=') + 1));
+            }
+            else if (arg.matches("^--max-open-files=[1-9]\\d{0,5}$")) {
+                maxOpenFiles = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+            }
+            else {
+                System.err.println("Недопустимый параметр пакетного режима " + arg
+                        + " ! Допустимы --jobs=N, --max-memory=РАЗМЕР и --max-open-files=N");
+                return Main.EXIT_INVALID_ARGS;
+            }
+        }
+        if (manifest.isEmpty()) {
+            System.err.println("Не указан манифест заданий: --batch=МАНИФЕСТ !");
+            return Main.EXIT_INVALID_ARGS;
+        }
+        return new BatchRunner(jobs, maxMemory, maxOpenFiles).runManifest(Path.of(manifest));
+    }
+
+    /**
+     * Метод читает и проверяет задания манифеста, выполняет их и выводит их сообщения.
+     */
+    private int runManifest(Path manifest) {
+        List<Job> batch;
+        try {
+            batch = readJobs(manifest);
+        }
+        catch (IOException e) {
+            System.err.println("Не удалось прочитать манифест заданий " + manifest + ": " + e.getMessage());
+            return Main.EXIT_INVALID_ARGS;
+        }
+        if (batch == null) {
+            return Main.EXIT_INVALID_ARGS;
+        }
+        if (batch.isEmpty()) {
+            System.out.println("В манифесте " + manifest + " нет заданий.");
+            return Main.EXIT_OK;
+        }
+        System.out.printf("""
+                Заданий в манифесте %s: %d. Одновременно выполняется до %d заданий,
+                бюджет памяти %d Мб, открытых файлов не более %d.
+
+                """, manifest, batch.size(), jobs, memoryPermits, openFilePermits);
+
+        long start = System.nanoTime();
+        Semaphore memory = new Semaphore(memoryPermits, true);
+        Semaphore openFiles = new Semaphore(openFilePermits, true);
+        ExecutorService executor = Executors.newFixedThreadPool(jobs, task -> {
+            Thread thread = new Thread(task, "batch-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<JobResult>> results = new ArrayList<>(Collections.nCopies(batch.size(), null));
+        try {
+            // долгие задания (по объему входных файлов) запускаются первыми
+            List<Integer> schedule = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                schedule.add(i);
+            }
+            schedule.sort(Comparator.comparingLong((Integer i) -> batch.get(i).inputBytes()).reversed());
+            for (int i : schedule) {
+                Job job = batch.get(i);
+                results.set(i, executor.submit(() -> runJob(job, memory, openFiles)));
+            }
+
+            int status = Main.EXIT_OK;
+            int failed = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                Job job = batch.get(i);
+                JobResult result = await(results.get(i));
+                System.out.printf("========== Задание %d (строка %d манифеста): %s%n",
+                        i + 1, job.lineNumber(), String.join(" ", job.args()));
+                printMessages(result);
+                if (result.status() != Main.EXIT_OK) {
+                    System.out.printf("Задание %d завершилось с кодом %d.%n", i + 1, result.status());
+                    failed++;
+                }
+                status = Math.max(status, result.status());
+            }
+            System.out.printf("""
+                    ==========================================================
+                    Выполнено заданий: %d, из них с ошибками: %d. Время пакета: %.1f с.
+                    """, batch.size(), failed, (System.nanoTime() - start) / 1e9);
+            return status;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Результат задания.
+     *
+     * @param messages файл сообщений задания или null, если задание не выполнялось
+     * @param failure  сообщение о сбое, выводимое после сообщений задания (пустое, если сбоя не было)
+     * @param status   код завершения задания
+     */
+    private record JobResult(Path messages, String failure, int status) { }
+
+    /**
+     * Файлы, к-е задание читает и пишет (вместе с индексами, сегментами и пр. файлами рядом с выходным).
+     * По ним же демон (см. класс MergeDaemon) проверяет, что одновременные задания не мешают друг другу.
+     */
+    record JobFiles(int lineNumber, String line, Set<Path> inputs, Set<Path> outputs) {
+
+        /**
+         * Метод возвращает файл, к-й одно из заданий пишет, а другое читает или тоже пишет.
+         *
+         * @return общий файл или null, если задания независимы
+         */
+        Path sharedWith(JobFiles other) {
+            for (Path output : outputs) {
+                if (other.outputs.contains(output) || other.inputs.contains(output)) {
+                    return output;
+                }
+            }
+            for (Path input : inputs) {
+                if (other.outputs.contains(input)) {
+                    return input;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Метод занимает память и дескрипторы файлов задания, выполняет его и освобождает их.
+     */
+    private JobResult runJob(Job job, Semaphore memory, Semaphore openFiles) throws InterruptedException {
+        // ресурсы занимаются всегда в одном порядке, поэтому задания не ждут друг друга по кругу
+        int files = Math.min(job.files(), openFilePermits);
+        int megabytes = Math.min(job.memory(), memoryPermits);
+        openFiles.acquire(files);
+        try {
+            memory.acquire(megabytes);
+            try {
+                return runSpooled(job.args());
+            }
+            finally {
+                memory.release(megabytes);
+            }
+        }
+        finally {
+            openFiles.release(files);
+        }
+    }
+
+    /**
+     * Метод выполняет задание, записывая его сообщения во временный файл.
+     */
+    private static JobResult runSpooled(String[] args) {
+        Path messages = null;
+        try {
+            messages = Files.createTempFile("merge-sort-job-", ".log");
+            int status;
+            try (PrintStream out = new PrintStream(new BufferedOutputStream(Files.newOutputStream(messages)),
+                    false, StandardCharsets.UTF_8)) {
+                try {
+                    status = Main.runJob(args, out, out);
+                }
+                catch (RuntimeException | OutOfMemoryError e) {
+                    // сбой одного задания не прерывает остальные
+                    out.println("Задание прервано из-за непредвиденной ошибки: " + e);
+                    status = Main.EXIT_ERRORS;
+                }
+            }
+            return new JobResult(messages, "", status);
+        }
+        catch (IOException e) {
+            deleteMessages(messages);
+            return new JobResult(null, "Не удалось создать временный файл сообщений задания: " + e.getMessage() + "\n",
+                    Main.EXIT_ERRORS);
+        }
+    }
+
+    /**
+     * Метод выводит сообщения задания и удаляет их временный файл.
+     */
+    private static void printMessages(JobResult result) {
+        if (result.messages() != null) {
+            // сообщения записаны в UTF-8, а выводятся в кодировке стандартного вывода
+            try (BufferedReader reader = Files.newBufferedReader(result.messages(), StandardCharsets.UTF_8)) {
+                Writer writer = new OutputStreamWriter(System.out, System.out.charset());
+                reader.transferTo(writer);
+                writer.flush();
+            }
+            catch (IOException e) {
+                System.out.println("Не удалось прочитать сообщения задания: " + e.getMessage());
+            }
+            finally {
+                deleteMessages(result.messages());
+            }
+        }
+        System.out.print(result.failure());
+        System.out.flush();
+    }
+
+    private static void deleteMessages(Path messages) {
+        if (messages == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(messages);
+        }
+        catch (IOException e) {
+            // временный файл останется в каталоге временных файлов
+        }
+    }
+
+    private static JobResult await(Future<JobResult> result) {
+        try {
+            return result.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new JobResult(null, "Задание прервано.\n", Main.EXIT_ERRORS);
+        }
+        catch (ExecutionException e) {
+            return new JobResult(null, "Задание прервано: " + e.getCause() + "\n", Main.EXIT_ERRORS);
+        }
+    }
+
+    /**
+     * Метод читает задания манифеста и проверяет их аргументы так же, как при обычном запуске.
+     *
+     * @return задания в порядке манифеста или null, если в манифесте есть ошибки (они выводятся)
+     */
+    private List<Job> readJobs(Path manifest) throws IOException {
+        List<Job> batch = new ArrayList<>();
+        List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+        List<JobFiles> jobFiles = new ArrayList<>();
+        boolean valid = true;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int lineNumber = i + 1;
+            String[] args = split(line);
+
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            try (PrintStream err = new PrintStream(errors, true, StandardCharsets.UTF_8)) {
+                if (!new ArgsValidator(args, err).isValidArgs()) {
+                    System.err.printf("Строка %d манифеста: %s%n%s", lineNumber, line,
+                            errors.toString(StandardCharsets.UTF_8));
+                    valid = false;
+                    continue;
+                }
+            }
+            for (String arg : ArgsManager.withoutOptions(args)) {
+                if (LineReader.isStandardStream(arg)) {
+                    System.err.printf("Строка %d манифеста: %s%nСтандартные потоки (\"-\") в пакетном режиме недоступны !%n",
+                            lineNumber, line);
+                    valid = false;
+                }
+            }
+            jobFiles.add(files(lineNumber, line, args));
+            batch.add(estimate(lineNumber, args));
+        }
+        if (!checkIndependent(jobFiles)) {
+            valid = false;
+        }
+        if (!valid) {
+            System.err.println("\nЗадания манифеста не выполнялись: исправьте ошибки в строках манифеста.");
+            new ArgsValidator(new String[0]).printArgsHint();
+            return null;
+        }
+        return batch;
+    }
+
+    /**
+     * Метод собирает файлы, к-е задание читает и пишет: входные файлы (и их индексы при --from/--to),
+     * выходной файл или его сегменты с манифестом, их индексы, контрольную точку, файлы --rejects и --stats.
+     */
+    static JobFiles files(int lineNumber, String line, String[] args) {
+        ArgsManager argsManager = new ArgsManager(args);
+        RunOptions runOptions = argsManager.findAndGetRunOptions();
+
+        Set<Path> inputs = new HashSet<>();
+        for (String input : argsManager.findAndGetInputFileNames()) {
+            Path path = pathOf(input);
+            inputs.add(path);
+            if (runOptions.isRangeQuery()) {
+                inputs.add(SparseIndex.pathFor(path));
+            }
+        }
+
+        Set<Path> outputs = new HashSet<>();
+        Path output = pathOf(argsManager.findAndGetOutputFileName());
+        List<Path> written = new ArrayList<>();
+        int shards = runOptions.getShards();
+        if (shards > 1) {
+            for (int shard = 0; shard < shards; shard++) {
+                written.add(ShardManifest.shardPath(output, shard, shards));
+            }
+            outputs.add(ShardManifest.pathFor(output));
+        }
+        else {
+            written.add(output);
+        }
+        for (Path path : written) {
+            outputs.add(path);
+            if (runOptions.getIndexInterval() > 0) {
+                outputs.add(SparseIndex.pathFor(path));
+            }
+        }
+        if (runOptions.getCheckpointInterval() > 0) {
+            outputs.add(MergeCheckpoint.pathFor(output));
+        }
+        if (runOptions.getRejectsFileName() != null) {
+            outputs.add(pathOf(runOptions.getRejectsFileName()));
+        }
+        if (runOptions.getStatsFileName() != null) {
+            outputs.add(pathOf(runOptions.getStatsFileName()));
+        }
+        return new JobFiles(lineNumber, line, inputs, outputs);
+    }
+
+    /**
+     * Метод возвращает абсолютный путь к файлу, по к-му файлы разных заданий можно сравнить.
+     */
+    private static Path pathOf(String fileName) {
+        return Path.of(fileName).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Метод проверяет, что задания пакета не зависят друг от друга: ни один файл не пишут два задания
+     * и ни одно задание не читает файл, к-й пишет другое. Задания выполняются не в порядке манифеста
+     * (см. класс), поэтому проверяются обе стороны: и файлы, записанные строками выше, и строками ниже.
+     * Ошибки выводятся.
+     *
+     * @return true, если задания независимы
+     */
+    private static boolean checkIndependent(List<JobFiles> jobFiles) {
+        boolean independent = true;
+        Map<Path, JobFiles> writers = new HashMap<>();
+        for (JobFiles job : jobFiles) {
+            for (Path output : job.outputs()) {
+                JobFiles other = writers.putIfAbsent(output, job);
+                if (other != null) {
+                    System.err.printf("Строка %d манифеста: %s%nФайл %s уже пишет задание из строки %d !%n",
+                            job.lineNumber(), job.line(), output, other.lineNumber());
+                    independent = false;
+                }
+            }
+        }
+        for (JobFiles job : jobFiles) {
+            for (Path input : job.inputs()) {
+                JobFiles writer = writers.get(input);
+                if (writer != null && writer != job) {
+                    System.err.printf("Строка %d манифеста: %s%nВходной файл %s пишет задание из строки %d, "
+                            + "задания пакета должны быть независимы !%n", job.lineNumber(), job.line(), input,
+                            writer.lineNumber());
+                    independent = false;
+                }
+            }
+        }
+        return independent;
+    }
+
+    /**
+     * Метод оценивает память и кол-во открытых файлов задания по его режиму и объему входных файлов.
+     * Оценка грубая: она нужна лишь для того, чтобы не запускать одновременно задания, к-м вместе не хватит памяти.
+     */
+    private static Job estimate(int lineNumber, String[] args) {
+        ArgsManager argsManager = new ArgsManager(args);
+        RunOptions runOptions = argsManager.findAndGetRunOptions();
+        List<String> inputFileNames = argsManager.findAndGetInputFileNames();
+        DataType dataType;
+        try (Reporter quiet = new Reporter(ReportLevel.QUIET, new PrintStream(OutputStream.nullOutputStream()), null)) {
+            dataType = argsManager.findAndGetDataType(quiet);
+        }
+
+        long inputBytes = 0;
+        for (String fileName : inputFileNames) {
+            try {
+                long size = Files.size(Path.of(fileName));
+                inputBytes += LineReader.isGzip(fileName) ? size * GZIP_RATIO : size;
+            }
+            catch (IOException e) {
+                // об отсутствии файла сообщит само задание
+            }
+        }
+
+        // слияние открывает одновременно не больше fan-in файлов, остальные сливаются в несколько проходов
+        int mergedFiles = Math.min(inputFileNames.size(), MultiPassMerger.fanIn(runOptions));
+        long memory;
+        if (runOptions.isStreaming()) {
+            memory = STREAM_BYTES_PER_FILE * mergedFiles;
+        }
+        else if (runOptions.getLimit() > 0 || runOptions.isRangeQuery()) {
+            memory = STREAM_BYTES_PER_FILE * inputFileNames.size();
+        }
+        else {
+            memory = inputBytes * (dataType.isNumeric() ? NUMBER_BYTES_FACTOR : STRING_BYTES_FACTOR);
+            if (runOptions.isUnsorted()) {
+                // внешняя сортировка держит в памяти не больше порции
+                memory = Math.min(memory, runOptions.getMaxMemory());
+            }
+        }
+        int megabytes = (int) Math.max(1, Math.min(Integer.MAX_VALUE, (memory + MEGABYTE - 1) / MEGABYTE));
+        // входные файлы проверяются по одному (с --threads - по нескольку сразу), выходных - по числу сегментов
+        int files = Math.min(inputFileNames.size(), Math.max(1, runOptions.getThreads()));
+        if (runOptions.isStreaming() || runOptions.isUnsorted()) {
+            files = mergedFiles;
+        }
+        files += runOptions.getShards();
+        return new Job(lineNumber, args, inputBytes, megabytes, files);
+    }
+
+    /**
+     * Метод делит строку манифеста на аргументы по пробелам; аргумент в двойных кавычках может содержать пробелы.
+     */
+    static String[] split(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder arg = new StringBuilder();
+        boolean quoted = false;
+        boolean inArg = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                inArg = true;
+            }
+            else if (Character.isWhitespace(c) && !quoted) {
+                if (inArg) {
+                    args.add(arg.toString());
+                    arg.setLength(0);
+                    inArg = false;
+                }
+            }
+            else {
+                arg.append(c);
+                inArg = true;
+            }
+        }
+        if (inArg) {
+            args.add(arg.toString());
+        }
+        return args.toArray(String[]::new);
+    }
+
+}
@@ -0,0 +1,383 @@
+package cft.petrov;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Построчная запись в файл через FileChannel большими порциями.
+ * Целые числа форматируются прямо в байты буфера, без Integer.toString / Long.toString,
+ * строки из ASCII-символов копируются в буфер посимвольно, остальные - кодируются в UTF-8.
+ * Буфер - прямой (direct) ByteBuffer, поэтому канал пишет его в файл без промежуточного копирования.
+ * В асинхронном режиме (параметр --async-write) буферов два: пока один пишется на диск
+ * в отдельном потоке, в другой форматируются следующие строки.
+ * Строки разделяются так же, как в BufferedWriter.newLine (System.lineSeparator()).
+ * Файл с расширением ".gz" сжимается на лету (GZIPOutputStream, уровень BEST_SPEED): заполненный буфер
+ * сжимается при сбросе, т.е. в асинхронном режиме - тоже в потоке записи.
+ * Если к объекту записи подключен разреженный индекс (см. setIndex), каждая строка передается ему
+ * вместе со смещением ее начала от начала файла.
+ */
+public class ChannelLineWriter implements LineWriter {
+    static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    // самое длинное число: 19 цифр Long.MIN_VALUE и знак
+    private static final int MAX_NUMBER_LENGTH = 20;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final WritableByteChannel channel;
+    private ByteBuffer buffer;               // буфер, в к-й форматируются строки
+    private ByteBuffer spare;                // второй буфер асинхронного режима (пишется на диск или свободен)
+    private final ExecutorService flusher;   // поток записи асинхронного режима (null - запись синхронная)
+    private Future<?> pendingWrite;          // незавершенная запись второго буфера
+    private final byte[] digits = new byte[MAX_NUMBER_LENGTH];
+    private long flushedBytes;               // сколько байт уже передано в канал (без текущего буфера)
+    private SparseIndexWriter index;         // разреженный индекс файла (null - индекс не пишется)
+
+    /**
+     * Метод открывает выходной файл на запись с размером буфера и режимом записи из параметров запуска.
+     * Файл с расширением ".gz" сжимается с буфером сжатия из параметра --gzip-buffer.
+     * Вместо файла с именем "-" строки пишутся в стандартный вывод (сообщения программы тогда выводятся
+     * в стандартный поток ошибок, см. Main).
+     *
+     * @param path       путь к файлу (существующий файл перезаписывается)
+     * @param runOptions дополнительные параметры запуска
+     * @return           объект записи в файл
+     * @throws IOException если файл не удалось открыть
+     */
+    public static ChannelLineWriter open(Path path, RunOptions runOptions) throws IOException {
+        if (LineReader.isStandardStream(path.toString())) {
+            // канал пишет прямо в дескриптор стандартного вывода, минуя буфер System.out
+            return new ChannelLineWriter(new FileOutputStream(FileDescriptor.out).getChannel(),
+                    runOptions.getWriteBufferSize(), runOptions.isAsyncWrite());
+        }
+        if (!LineReader.isGzip(path.toString())) {
+            return new ChannelLineWriter(path, runOptions.getWriteBufferSize(), runOptions.isAsyncWrite());
+        }
+        OutputStream file = Files.newOutputStream(path);
+        try {
+            OutputStream gzip = new GZIPOutputStream(file, runOptions.getGzipBufferSize()) {
+                {
+                    // уровень сжатия по умолчанию (6) сжимает отсортированные данные в разы медленнее записи
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+            return new ChannelLineWriter(Channels.newChannel(gzip), runOptions.getWriteBufferSize(),
+                    runOptions.isAsyncWrite());
+        }
+        catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Метод открывает на дозапись частично записанный выходной файл (продолжение слияния, см. MergeCheckpoint):
+     * файл обрезается до offset байт, и следующие строки пишутся с этого места.
+     *
+     * @param path       путь к несжатому файлу
+     * @param runOptions дополнительные параметры запуска
+     * @param offset     сколько байт файла уже записано
+     * @return           объект записи в файл
+     * @throws IOException если файл не удалось открыть или он короче offset байт
+     */
+    public static ChannelLineWriter openAt(Path path, RunOptions runOptions, long offset) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < offset) {
+                throw new IOException("файл короче записанной части (" + offset + " байт)");
+            }
+            channel.truncate(offset);
+            channel.position(offset);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        ChannelLineWriter writer = new ChannelLineWriter(channel, runOptions.getWriteBufferSize(),
+                runOptions.isAsyncWrite());
+        writer.flushedBytes = offset;
+        return writer;
+    }
+
+    /**
+     * @param path       путь к файлу (существующий файл перезаписывается)
+     * @param bufferSize размер буфера в байтах
+     * @param async      писать ли буфер на диск в отдельном потоке
+     * @throws IOException если файл не удалось открыть
+     */
+    public ChannelLineWriter(Path path, int bufferSize, boolean async) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE), bufferSize, async);
+    }
+
+    /**
+     * @param channel    канал, в к-й пишутся строки (закрывается вместе с объектом записи)
+     * @param bufferSize размер буфера в байтах
+     * @param async      писать ли буфер в канал в отдельном потоке
+     */
+    ChannelLineWriter(WritableByteChannel channel, int bufferSize, boolean async) {
+        this.channel = channel;
+        int capacity = Math.max(bufferSize, MAX_NUMBER_LENGTH + LINE_SEPARATOR.length);
+        this.buffer = ByteBuffer.allocateDirect(capacity);
+        if (async) {
+            this.spare = ByteBuffer.allocateDirect(capacity);
+            this.flusher = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "output-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        else {
+            this.flusher = null;
+        }
+    }
+
+    /**
+     * Метод подключает разреженный индекс: он дописывается вместе с файлом и закрывается при закрытии файла.
+     */
+    void setIndex(SparseIndexWriter index) {
+        this.index = index;
+    }
+
+    SparseIndexWriter getIndex() {
+        return index;
+    }
+
+    /**
+     * Смещение следующей строки от начала файла (сколько байт уже записано, вместе с буфером).
+     */
+    long position() {
+        return flushedBytes + buffer.position();
+    }
+
+    /**
+     * Метод пишет строку с целым числом.
+     */
+    @Override
+    public void writeLine(int value) throws IOException {
+        if (index != null) {
+            index.add(position(), value);
+        }
+        ensureRemaining(MAX_NUMBER_LENGTH + LINE_SEPARATOR.length);
+        // цифры получаются от младшей к старшей, поэтому пишутся с конца массива;
+        // число приводится к отрицательному, т.к. по модулю Integer.MIN_VALUE больше Integer.MAX_VALUE
+        int position = MAX_NUMBER_LENGTH;
+        int rest = value < 0 ? value : -value;
+        do {
+            digits[--position] = (byte) ('0' - rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        if (value < 0) {
+            digits[--position] = '-';
+        }
+        buffer.put(digits, position, MAX_NUMBER_LENGTH - position);
+        buffer.put(LINE_SEPARATOR);
+    }
+
+    /**
+     * Метод пишет строку с 64-битным целым числом (см. writeLine(int)).
+     */
+    @Override
+    public void writeLine(long value) throws IOException {
+        if (index != null) {
+            index.add(position(), value);
+        }
+        ensureRemaining(MAX_NUMBER_LENGTH + LINE_SEPARATOR.length);
+        int position = MAX_NUMBER_LENGTH;
+        long rest = value < 0 ? value : -value;
+        do {
+            digits[--position] = (byte) ('0' - rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        if (value < 0) {
+            digits[--position] = '-';
+        }
+        buffer.put(digits, position, MAX_NUMBER_LENGTH - position);
+        buffer.put(LINE_SEPARATOR);
+    }
+
+    /**
+     * Метод пишет строку в кодировке UTF-8.
+     */
+    @Override
+    public void writeLine(String line) throws IOException {
+        if (index != null) {
+            index.add(position(), line);
+        }
+        int length = line.length();
+        if (length + LINE_SEPARATOR.length <= buffer.capacity()) {
+            ensureRemaining(length + LINE_SEPARATOR.length);
+            int start = buffer.position();
+            int i = 0;
+            char ch;
+            while (i < length && (ch = line.charAt(i)) < 0x80) {
+                buffer.put((byte) ch);
+                i++;
+            }
+            if (i < length) {
+                // в строке есть не-ASCII символы: строка кодируется целиком
+                buffer.position(start);
+                putBytes(line.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        else {
+            putBytes(line.getBytes(StandardCharsets.UTF_8));
+        }
+        ensureRemaining(LINE_SEPARATOR.length);
+        buffer.put(LINE_SEPARATOR);
+    }
+
+    /**
+     * Метод копирует байты в буфер, сбрасывая его на диск по мере заполнения.
+     */
+    private void putBytes(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                flushBuffer();
+            }
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * Метод дописывает в файл все строки из буферов и сбрасывает файл на диск (fsync),
+     * так что после сбоя файл содержит по меньшей мере position() байт.
+     */
+    void sync() throws IOException {
+        if (buffer.position() > 0) {
+            flushBuffer();
+        }
+        awaitPendingWrite();
+        if (channel instanceof FileChannel fileChannel) {
+            fileChannel.force(false);
+        }
+    }
+
+    /**
+     * Метод сбрасывает буфер на диск, если в нем осталось меньше length байт.
+     */
+    private void ensureRemaining(int length) throws IOException {
+        if (buffer.remaining() < length) {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * Метод пишет заполненную часть буфера в файл: синхронно
+     * или (в асинхронном режиме) в потоке записи, продолжая работу со вторым буфером.
+     */
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        flushedBytes += buffer.remaining();
+        if (flusher == null) {
+            writeFully(buffer);
+            buffer.clear();
+            return;
+        }
+        awaitPendingWrite();
+        ByteBuffer full = buffer;
+        buffer = spare;
+        buffer.clear();
+        spare = full;
+        pendingWrite = flusher.submit(() -> {
+            writeFully(full);
+            return null;
+        });
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    /**
+     * Метод дожидается окончания записи второго буфера и пробрасывает ее ошибку.
+     */
+    private void awaitPendingWrite() throws IOException {
+        if (pendingWrite == null) {
+            return;
+        }
+        try {
+            pendingWrite.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Запись в файл прервана");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(e.getCause());
+        }
+        finally {
+            pendingWrite = null;
+        }
+    }
+
+    /**
+     * Метод дописывает в файл остаток буфера и закрывает файл (сжатый файл при этом дописывается до конца).
+     * Разреженный индекс дописывается, только если весь файл записан успешно, иначе - удаляется.
+     */
+    @Override
+    public void close() throws IOException {
+        boolean written = false;
+        Exception writeError = null;
+        try {
+            if (buffer.position() > 0) {
+                flushBuffer();
+            }
+            awaitPendingWrite();
+            written = true;
+        }
+        catch (IOException | RuntimeException e) {
+            writeError = e;
+            throw e;
+        }
+        finally {
+            if (flusher != null) {
+                flusher.shutdownNow();
+            }
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                if (writeError == null) {
+                    throw e;
+                }
+                // ошибка записи важнее: ошибка закрытия канала прикладывается к ней
+                writeError.addSuppressed(e);
+            }
+            finally {
+                if (index != null) {
+                    if (written) {
+                        index.finish(flushedBytes);
+                    }
+                    else {
+                        index.abort();
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -1,72 +1,91 @@
 package cft.petrov;
 
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
- * Кастомный класс-компаратор для сравнения элементов в списке validByDataTypeFileLines.
+ * Кастомный класс-компаратор для сравнения строк в "естественном порядке" (Natural Sort Order).
  * Элемент может иметь "числовую часть" (н-р, "abc2": "abc" - строковая часть, "2" - числовая).
- * Идея в том, чтобы элемент-строку преобразовать в список подстрок,
- * где каждая подстрока представляет только строковую или числовую часть и сравнить списки подстрок,
- * проверяя, является ли i-я подстрока числом или строкой.
- * Это нужно, чтобы метод checkNaturalOrdering сортировал строки файла в "естественном порядке".
+ * Строки сравниваются за один проход посимвольно, и каждая встреченная пара числовых частей
+ * сравнивается как число: сначала по длине без ведущих нулей, затем посимвольно.
+ * Поэтому числовая часть может быть сколь угодно длинной, а сравнение не создает ни объектов, ни кэша.
+ * Это нужно, чтобы метод isInNaturalOrder сортировал строки файла в "естественном порядке".
  * Так, н-р, при сравнении строк "abc2" > "abc10" (Alphabetical sorting),
  * я же хочу добиться, чтобы "abc2" < "abc10" (Natural sorting, привычный для человека порядок).
+ * Строковая часть, закончившаяся раньше (числом или концом строки), считается меньшей,
+ * а строки, различающиеся лишь ведущими нулями числовых частей ("a01" и "a1"), - равными.
+ * Сравнение работает с любыми CharSequence, чтобы курсор InputFileCursor мог проверять порядок
+ * строки прямо в байтах файла, не создавая для нее String.
  */
 public class CustomComparator implements Comparator<String> {
-    // Мапа <строка, списокПодстрокСтроки>
-    Map<String, List<String>> map = new HashMap<>();
 
     @Override
     public int compare(String current, String previous) {
-        // Проверяется наличие в map ключа current (previous).
-        // Если ключа нет или значение по ключу == null - считается значение, применяя к ключу метод parse.
-        // Так ключ-строка преобразуется в список подстрок.
-        // Если итоговое значение != null - пара ключ (строка) - значение (список подстрок) кладется в мапу.
-        List<String> val1 = map.computeIfAbsent(current, CustomComparator::parse);
-        List<String> val2 = map.computeIfAbsent(previous, CustomComparator::parse);
+        return compareNatural(current, previous);
+    }
 
-        int minList = Math.min(val1.size(), val2.size());
-        for (int i = 0; i < minList; i++) {
-            // извлечение части значения (одной из подстрок)
-            String str1 = val1.get(i);
-            String str2 = val2.get(i);
+    /**
+     * Метод сравнивает две последовательности символов в "естественном порядке".
+     *
+     * @param current  первая последовательность
+     * @param previous вторая последовательность
+     * @return         отрицательное число, ноль или положительное число, как в Comparator.compare
+     */
+    static int compareNatural(CharSequence current, CharSequence previous) {
+        int length1 = current.length();
+        int length2 = previous.length();
+        int i = 0, j = 0; // индексы текущих символов current и previous
 
-            int compareResult;  // результат сравнения подстрок
+        while (i < length1 && j < length2) {
+            char ch1 = current.charAt(i);
+            char ch2 = previous.charAt(j);
+            boolean isDigit1 = isDigit(ch1);
+            boolean isDigit2 = isDigit(ch2);
 
-            // если в подстроках можно извлечь целочисленное значение
-            if (str1.matches("\\d+") && str2.matches("\\d+")) {
-                // идет сравнение подстрок как чисел
-                compareResult = Integer.valueOf(str1).compareTo(Integer.valueOf(str2));
+            if (isDigit1 && isDigit2) {
+                // пропуск ведущих нулей числовых частей
+                while (i < length1 && current.charAt(i) == '0') {
+                    i++;
+                }
+                while (j < length2 && previous.charAt(j) == '0') {
+                    j++;
+                }
+                int start1 = i, start2 = j;
+                while (i < length1 && isDigit(current.charAt(i))) {
+                    i++;
+                }
+                while (j < length2 && isDigit(previous.charAt(j))) {
+                    j++;
+                }
+                // из двух чисел без ведущих нулей больше то, в к-м больше цифр
+                int compareResult = Integer.compare(i - start1, j - start2);
+                // при равном кол-ве цифр числа сравниваются посимвольно, как строки
+                for (int k = 0; compareResult == 0 && k < i - start1; k++) {
+                    compareResult = Character.compare(current.charAt(start1 + k), previous.charAt(start2 + k));
+                }
+                if (compareResult != 0) return compareResult;
             }
-            else { // сравнить как строковые значения
-                compareResult = str1.compareTo(str2);
+            else if (isDigit1) {
+                // строковая часть current закончилась раньше, чем у previous
+                return -1;
+            }
+            else if (isDigit2) {
+                return 1;
+            }
+            else {
+                if (ch1 != ch2) return Character.compare(ch1, ch2);
+                i++;
+                j++;
             }
-            if (compareResult != 0) return compareResult;
         }
-        return Integer.compare(val1.size(), val2.size());
+        // строка, закончившаяся раньше, меньше
+        return Boolean.compare(i < length1, j < length2);
     }
 
     /**
-     * Метод преобразует каждую строку в список подстрок согласно шаблону,
-     * "выделяя" у строки строковую часть и числовую.
-     *
-     * @param str входная строка
-     * @return список подстрок
+     * Метод проверяет, является ли символ цифрой "числовой части" (только ASCII-цифры, как "\\d" в шаблонах).
      */
-    private static List<String> parse(String str) {
-        final Pattern PATTERN = Pattern.compile("(\\D*)(\\d*)");
-        // строка str сопоставляется с шаблоном "(не цифра)(цифра)"
-        return PATTERN.matcher(str)
-                .results()
-                .filter(m -> !m.group(0).isEmpty()) // пропуск пустых совпадений с шаблоном
-                .flatMap(m -> Stream.of(m.group(1), m.group(2))) // отображение строки на подстроки
-                .collect(Collectors.toList()); // получение списка подстрок
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
     }
 
 }
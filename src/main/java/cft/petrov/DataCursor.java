@@ -0,0 +1,45 @@
+package cft.petrov;
+
+import java.io.IOException;
+
+/**
+ * Курсор по валидным данным одного файла, упорядоченным в режиме сортировки.
+ * Сам файл проверяет InputFileCursor, а PrefetchingCursor проверяет его заранее в отдельном потоке.
+ */
+public interface DataCursor extends AutoCloseable {
+
+    /**
+     * Метод перемещает курсор на следующую валидную строку файла.
+     *
+     * @return true, если такая строка нашлась; false, если файл дочитан до конца
+     * @throws IOException при ошибке чтения файла
+     */
+    boolean next() throws IOException;
+
+    /**
+     * Текущая валидная строка файла.
+     */
+    String current();
+
+    /**
+     * Числовое значение текущей валидной строки (только для целочисленных типов данных).
+     */
+    long currentNumber();
+
+    /**
+     * Смещение начала текущей валидной строки от начала (распакованных) данных файла.
+     * По нему курсор можно открыть заново с этой строки (см. класс MergeCheckpoint).
+     */
+    long currentOffset();
+
+    /**
+     * Номер текущей валидной строки в файле (с 1).
+     */
+    long currentLineNumber();
+
+    String getFileName();
+
+    @Override
+    void close() throws IOException;
+
+}
@@ -4,6 +4,14 @@ package cft.petrov;
  * Тип данных, с которым работает программа.
  */
 public enum DataType {
-    INTEGER,
-    STRING
+    INTEGER,  // целые числа в пределах int
+    LONG,     // 64-битные целые числа (в пределах long)
+    STRING;
+
+    /**
+     * Метод проверяет, является ли тип данных целочисленным.
+     */
+    public boolean isNumeric() {
+        return this != STRING;
+    }
 }
@@ -0,0 +1,323 @@
+package cft.petrov;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * В классе осуществляется внешняя сортировка слиянием неупорядоченных входных файлов.
+ * Валидные строки входных файлов накапливаются в памяти порциями, размер к-х ограничен параметром --max-memory.
+ * Заполненная порция сортируется (см. ValidDataManager) и сбрасывается во временный файл-серию,
+ * после чего все серии сливаются в выходной файл классом KWayMerger
+ * (если серий больше, чем сливается за один проход, - в несколько проходов, см. класс MultiPassMerger).
+ * Если все данные уместились в одну порцию, временные файлы не создаются,
+ * и отсортированная порция пишется сразу в выходной файл.
+ */
+public class ExternalMergeSort {
+    // оценка памяти на одно целое число: эл-т массива порции + эл-т буфера сортировки
+    private static final int INT_RECORD_BYTES = 2 * Integer.BYTES;
+    private static final int LONG_RECORD_BYTES = 2 * Long.BYTES;
+    // оценка памяти на одну строку сверх ее символов: объект String, массив символов и ссылки на строку
+    private static final int STRING_OVERHEAD_BYTES = 64;
+    // начальная емкость массива порции (дальше она удваивается до предела, заданного бюджетом памяти)
+    private static final int INITIAL_CHUNK_CAPACITY = 1 << 16;
+
+    private final DataType dataType;
+    private final SortMode sortMode;
+    private final Comparator<String> comparator;
+    private final RunOptions runOptions;
+    private final Reporter reporter;
+    private final ValidDataManager validDataManager;
+
+    private final long maxChunkRecords; // предел кол-ва чисел в порции
+    private int[] intChunk = new int[0];
+    private long[] longChunk = new long[0];
+    private final List<String> stringChunk = new ArrayList<>();
+    private int chunkSize;              // кол-во эл-ов в текущей порции
+    private long chunkBytes;            // оценка памяти, занятой текущей порцией строк
+
+    private Path tempDir;               // каталог временных файлов-серий (создается при первом сбросе)
+    private final List<Path> runFiles = new ArrayList<>();
+    private long runLines;              // кол-во строк во всех сериях
+
+    /**
+     * @param dataType   тип данных, с к-м работает программа
+     * @param sortMode   режим сортировки
+     * @param comparator компаратор строк
+     * @param runOptions дополнительные параметры запуска (бюджет памяти, каталог временных файлов и др.)
+     * @param reporter   объект, выводящий сообщения о ходе сортировки
+     */
+    public ExternalMergeSort(DataType dataType, SortMode sortMode, Comparator<String> comparator,
+                             RunOptions runOptions, Reporter reporter) {
+        this.dataType = dataType;
+        this.sortMode = sortMode;
+        this.comparator = comparator;
+        this.runOptions = runOptions;
+        this.reporter = reporter;
+        this.validDataManager = new ValidDataManager(reporter);
+        int recordBytes = dataType == DataType.LONG ? LONG_RECORD_BYTES : INT_RECORD_BYTES;
+        this.maxChunkRecords = Math.max(1, Math.min(Integer.MAX_VALUE - 8, runOptions.getMaxMemory() / recordBytes));
+    }
+
+    /**
+     * Метод отбирает валидные строки входных файлов, сортирует их порциями и пишет результат в выходной файл.
+     *
+     * @param inputFileNames     список имен входных файлов
+     * @param inputFilesAnalyzer объект, открывающий курсоры по валидным строкам входных файлов
+     * @param outputFileName     имя выходного файла
+     */
+    public void sortAndWrite(List<String> inputFileNames, InputFilesAnalyzer inputFilesAnalyzer,
+                             String outputFileName) {
+        try {
+            readInputFiles(inputFileNames, inputFilesAnalyzer);
+
+            if (runFiles.isEmpty()) {
+                writeChunkToOutput(outputFileName);
+            }
+            else {
+                spillChunk();
+                mergeRuns(outputFileName);
+            }
+        }
+        catch (IOException | UncheckedIOException e) {
+            reporter.error("""
+                    Ошибка записи временного файла внешней сортировки: %s
+                    Сортировка прервана, выходной файл не записан.
+                    """, e.getMessage());
+        }
+        finally {
+            deleteRuns();
+        }
+    }
+
+    /**
+     * Метод читает валидные строки входных файлов в порции, сбрасывая заполненные порции во временные файлы.
+     */
+    private void readInputFiles(List<String> inputFileNames, InputFilesAnalyzer inputFilesAnalyzer) {
+        inputFilesAnalyzer.printCheckStart();
+        reporter.getRunStats().start(Phase.VALIDATE);
+        try {
+            for (String fileName : inputFileNames) {
+                DataCursor cursor = inputFilesAnalyzer.openCursor(fileName, dataType, comparator);
+                if (cursor == null) {
+                    continue;
+                }
+                try (cursor) {
+                    while (cursor.next()) {
+                        addToChunk(cursor);
+                    }
+                }
+                catch (IOException e) {
+                    reporter.error("Ошибка при чтении входного файла %s: %s\n", fileName, e.getMessage());
+                }
+            }
+        }
+        finally {
+            reporter.getRunStats().stop(Phase.VALIDATE);
+        }
+    }
+
+    /**
+     * Метод добавляет текущую строку курсора в порцию и сбрасывает порцию на диск, если она заполнена.
+     */
+    private void addToChunk(DataCursor cursor) {
+        switch (dataType) {
+            case INTEGER -> {
+                if (chunkSize == intChunk.length) {
+                    intChunk = Arrays.copyOf(intChunk, grownCapacity(intChunk.length));
+                }
+                intChunk[chunkSize++] = (int) cursor.currentNumber();
+                if (chunkSize >= maxChunkRecords) {
+                    spillChunk();
+                }
+            }
+            case LONG -> {
+                if (chunkSize == longChunk.length) {
+                    longChunk = Arrays.copyOf(longChunk, grownCapacity(longChunk.length));
+                }
+                longChunk[chunkSize++] = cursor.currentNumber();
+                if (chunkSize >= maxChunkRecords) {
+                    spillChunk();
+                }
+            }
+            default -> {
+                String current = cursor.current();
+                stringChunk.add(current);
+                chunkSize++;
+                chunkBytes += STRING_OVERHEAD_BYTES + 2L * current.length();
+                if (chunkBytes >= runOptions.getMaxMemory()) {
+                    spillChunk();
+                }
+            }
+        }
+    }
+
+    /**
+     * Метод вычисляет новую емкость массива порции: вдвое больше прежней, но не больше предела порции.
+     */
+    private int grownCapacity(int capacity) {
+        return (int) Math.min(maxChunkRecords, Math.max(INITIAL_CHUNK_CAPACITY, 2L * capacity));
+    }
+
+    /**
+     * Метод сортирует текущую порцию и сбрасывает ее в новый временный файл-серию.
+     * Ошибка записи серии пробрасывается как UncheckedIOException, чтобы ее не спутать с ошибкой чтения
+     * входного файла: без серии результат был бы неполным, поэтому сортировка прерывается.
+     */
+    private void spillChunk() {
+        if (chunkSize == 0) {
+            return;
+        }
+        try {
+            writeRun();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // массив порции переиспользуется для следующей порции
+        chunkSize = 0;
+        chunkBytes = 0;
+        stringChunk.clear();
+    }
+
+    /**
+     * Метод сортирует текущую порцию и пишет ее в новый временный файл-серию.
+     */
+    private void writeRun() throws IOException {
+        if (tempDir == null) {
+            tempDir = createTempDirectory(runOptions);
+        }
+        Path runFile = tempDir.resolve("run-" + runFiles.size() + ".txt");
+        runFiles.add(runFile);
+
+        // сортировка порции - вложенный этап, время к-го не входит во время записи серии;
+        // неполная порция сортируется на месте: ее копия вместе с буфером сортировки превысила бы бюджет памяти
+        reporter.getRunStats().start(Phase.SPILL);
+        try (ChannelLineWriter out = ChannelLineWriter.open(runFile, runOptions)) {
+            switch (dataType) {
+                case INTEGER -> {
+                    validDataManager.sortIntArray(intChunk, chunkSize, sortMode, runOptions);
+                    OutputFileWriter.writeLines(out, intChunk, chunkSize);
+                }
+                case LONG -> {
+                    validDataManager.sortLongArray(longChunk, chunkSize, sortMode, runOptions);
+                    OutputFileWriter.writeLines(out, longChunk, chunkSize);
+                }
+                default -> {
+                    String[] stringArr = stringChunk.toArray(String[]::new);
+                    validDataManager.sortStringArray(stringArr, sortMode, comparator, runOptions);
+                    OutputFileWriter.writeLines(out, stringArr, chunkSize);
+                }
+            }
+        }
+        finally {
+            reporter.getRunStats().stop(Phase.SPILL);
+        }
+        runLines += chunkSize;
+        reporter.detail("Отсортированная порция данных (%d шт.) сброшена во временный файл %s\n",
+                chunkSize, runFile);
+    }
+
+    /**
+     * Метод создает каталог временных файлов в каталоге --temp-dir (по умолчанию - в системном).
+     */
+    static Path createTempDirectory(RunOptions runOptions) throws IOException {
+        return runOptions.getTempDir() == null
+                ? Files.createTempDirectory("merge-sort-")
+                : Files.createTempDirectory(Path.of(runOptions.getTempDir()), "merge-sort-");
+    }
+
+    /**
+     * Метод сортирует единственную порцию данных и пишет ее сразу в выходной файл.
+     */
+    private void writeChunkToOutput(String outputFileName) {
+        if (chunkSize == 0) {
+            reporter.info("""
+                    ==========================================================
+                    Общий список валидных данных всех входных файлов пуст!
+                    Сортировать нечего!
+
+                    """);
+            return;
+        }
+        OutputFileWriter outputFileWriter = new OutputFileWriter(reporter, runOptions);
+        switch (dataType) {
+            case INTEGER -> {
+                validDataManager.sortIntArray(intChunk, chunkSize, sortMode, runOptions);
+                outputFileWriter.writeIntArrayToFile(intChunk, chunkSize, outputFileName);
+            }
+            case LONG -> {
+                validDataManager.sortLongArray(longChunk, chunkSize, sortMode, runOptions);
+                outputFileWriter.writeLongArrayToFile(longChunk, chunkSize, outputFileName);
+            }
+            default -> {
+                String[] stringArr = stringChunk.toArray(String[]::new);
+                stringChunk.clear();
+                validDataManager.sortStringArray(stringArr, sortMode, comparator, runOptions);
+                outputFileWriter.writeArrayToFile(stringArr, outputFileName);
+            }
+        }
+    }
+
+    /**
+     * Метод сливает все временные файлы-серии в выходной файл.
+     */
+    private void mergeRuns(String outputFileName) throws IOException {
+        reporter.info("Данные разбиты на %d отсортированных серий, идет их слияние.\n", runFiles.size());
+        // порции больше не нужны - память освобождается под буферы чтения серий
+        intChunk = null;
+        longChunk = null;
+
+        List<String> runFileNames = new ArrayList<>();
+        for (Path runFile : runFiles) {
+            runFileNames.add(runFile.toString());
+        }
+        try (MultiPassMerger multiPassMerger = new MultiPassMerger(dataType, sortMode, comparator, runOptions, reporter);
+             KWayMerger merger = new KWayMerger(multiPassMerger.reduce(runFileNames, this::openRun, Long.MAX_VALUE),
+                     dataType, sortMode, comparator, reporter)) {
+            OutputFileWriter outputFileWriter = new OutputFileWriter(reporter, runOptions);
+            if (runOptions.getShards() > 1) {
+                // число строк результата известно точно - сегменты делятся по нему
+                outputFileWriter.writeMergedToShards(merger, outputFileName,
+                        ShardedLineWriter.Split.byCount(runLines, runOptions.getShards()));
+            }
+            else {
+                outputFileWriter.writeMergedToFile(merger, outputFileName);
+            }
+        }
+    }
+
+    /**
+     * Метод открывает курсор временного файла-серии.
+     */
+    private DataCursor openRun(String runFileName) throws IOException {
+        // Серии содержат только валидные данные, упорядоченные в режиме sortMode.
+        // Они читаются потоком, а не отображаются в память: в Windows отображенный файл
+        // нельзя удалить, пока буфер не собран сборщиком мусора.
+        LineReader reader = new StreamLineReader(Files.newInputStream(Path.of(runFileName)));
+        return InputFileCursor.open(reader, runFileName, dataType, comparator, false, reporter);
+    }
+
+    /**
+     * Метод удаляет временные файлы-серии и их каталог.
+     */
+    private void deleteRuns() {
+        try {
+            for (Path runFile : runFiles) {
+                Files.deleteIfExists(runFile);
+            }
+            if (tempDir != null) {
+                Files.deleteIfExists(tempDir);
+            }
+        }
+        catch (IOException e) {
+            reporter.error("Не удалось удалить временные файлы из каталога %s: %s\n", tempDir, e);
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package cft.petrov;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Чтение отдельных строк несжатого файла по произвольным смещениям, без чтения файла с начала.
+ * Нужно двоичному поиску по файлу (см. класс RangeQuery) и выборке ключей из входных файлов
+ * (см. класс ShardSampler): в файле читаются лишь небольшие порции около заданных смещений.
+ */
+class FileProbe implements Closeable {
+    // порция файла, читаемая за раз (строка длиннее порции дочитывается)
+    private static final int PROBE_SIZE = 1 << 12;
+
+    private final FileChannel channel;
+    private final long size;
+    private ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+
+    /**
+     * @param path путь к несжатому файлу
+     * @throws IOException если файл не удалось открыть
+     */
+    FileProbe(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.size = channel.size();
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Размер файла в байтах.
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Метод возвращает начало первой строки, начинающейся не раньше position (или размер файла, если такой нет).
+     * Строки разделяются так же, как в LineReader: "\n", "\r" или "\r\n".
+     */
+    long nextLineStart(long position) throws IOException {
+        if (position == 0) {
+            return 0;
+        }
+        // строка начинается в position, если перед ней разделитель строк
+        long offset = position - 1;
+        while (true) {
+            int length = read(offset);
+            if (length <= 0) {
+                return size;
+            }
+            for (int i = 0; i < length; i++) {
+                byte b = probe.get(i);
+                if (b == '\n') {
+                    return offset + i + 1;
+                }
+                if (b == '\r') {
+                    // после "\r" может идти "\n" того же разделителя
+                    long next = offset + i + 1;
+                    if (i + 1 < length) {
+                        return probe.get(i + 1) == '\n' ? next + 1 : next;
+                    }
+                    return read(next) > 0 && probe.get(0) == '\n' ? next + 1 : next;
+                }
+            }
+            offset += length;
+        }
+    }
+
+    /**
+     * Метод читает и декодирует строку файла, начинающуюся в position.
+     */
+    String readLine(long position) throws IOException {
+        while (true) {
+            int length = read(position);
+            for (int i = 0; i < length; i++) {
+                byte b = probe.get(i);
+                if (b == '\n' || b == '\r') {
+                    return new String(probe.array(), 0, i, StandardCharsets.UTF_8);
+                }
+            }
+            if (length < probe.capacity()) {
+                return new String(probe.array(), 0, Math.max(length, 0), StandardCharsets.UTF_8);
+            }
+            // строка длиннее буфера - буфер увеличивается
+            probe = ByteBuffer.allocate(2 * probe.capacity());
+        }
+    }
+
+    /**
+     * Метод читает в буфер байты файла, начиная с position.
+     *
+     * @return кол-во прочитанных байт (-1 - конец файла)
+     */
+    private int read(long position) throws IOException {
+        probe.clear();
+        int total = 0;
+        while (probe.hasRemaining()) {
+            int length = channel.read(probe, position + total);
+            if (length < 0) {
+                break;
+            }
+            total += length;
+        }
+        return total == 0 && position >= size ? -1 : total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -0,0 +1,73 @@
+package cft.petrov;
+
+/**
+ * Счетчики строк одного входного файла: сколько строк прочитано, принято
+ * и сколько отброшено по каждой из причин (см. RejectReason).
+ * Счетчики ведет курсор InputFileCursor, а выводит класс Reporter.
+ * Для отчета --stats также хранятся размер файла и время его чтения и проверки.
+ */
+public class FileStats {
+
+    private final String fileName;
+    private long read;                                                   // прочитано строк
+    private long accepted;                                               // принято строк
+    private final long[] rejected = new long[RejectReason.values().length]; // отброшено строк по причинам
+    private long bytes = -1;                                             // размер файла (-1 - неизвестен)
+    private long elapsedNanos = -1;                                      // время чтения и проверки (-1 - неизвестно)
+
+    public FileStats(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * Метод учитывает очередную прочитанную строку и возвращает ее номер в файле.
+     */
+    long countRead() {
+        return ++read;
+    }
+
+    void countAccepted() {
+        accepted++;
+    }
+
+    void countRejected(RejectReason reason) {
+        rejected[reason.ordinal()]++;
+    }
+
+    void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Время чтения и проверки файла известно, только если файл проверяется отдельно от слияния
+     * (в потоковом режиме строки файла читаются вперемешку со строками других файлов).
+     */
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getRead() {
+        return read;
+    }
+
+    public long getAccepted() {
+        return accepted;
+    }
+
+    public long getRejected(RejectReason reason) {
+        return rejected[reason.ordinal()];
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+}
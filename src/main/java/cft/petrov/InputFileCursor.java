@@ -0,0 +1,347 @@
+package cft.petrov;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+/**
+ * Курсор по валидным строкам одного входного файла.
+ * Файл читается построчно, и к каждой строке применяются те же проверки, что и в InputFilesAnalyzer:
+ * отсеиваются пустые и содержащие пробелы строки, строки с неподходящим типом данных
+ * и строки, нарушающие "естественный порядок сортировки" относительно предыдущей принятой строки.
+ * В памяти в каждый момент времени хранится только текущая и предыдущая принятые строки.
+ * Отброшенные строки не выводятся на консоль по одной, а учитываются в счетчиках файла (FileStats)
+ * и передаются классу Reporter, к-й решает, что из них показать.
+ * Для неупорядоченных входных данных (см. класс ExternalMergeSort) проверку порядка можно отключить.
+ * Файл, читаемый с конца (см. класс ReverseLineReader), проверяется на обратный порядок: каждая строка
+ * должна быть не больше предыдущей принятой, а строки нумеруются с конца файла (см. Reporter.rejected).
+ * С конца читаются только файлы, упорядоченность к-х гарантирована (параметр --presorted), поэтому
+ * нарушение порядка в таком файле - ошибка: отброшенные с конца строки могут отличаться от отброшенных с начала.
+ * Строки проверяются прямо в байтах файла (см. класс LineReader): целые числа разбираются из байтов,
+ * а String создается только для принятых строк строкового типа. Строки с не-ASCII символами
+ * (н-р, кириллицей) сперва декодируются и проверяются так же, как раньше.
+ */
+public class InputFileCursor implements DataCursor {
+
+    private final String fileName;
+    private final DataType dataType;
+    private final Comparator<String> comparator;
+    private final boolean checkOrder;
+    private final boolean reversed;  // файл читается с конца: строки идут по убыванию
+    private final LineSource reader;
+    private final Reporter reporter;
+    private final FileStats stats;  // счетчики прочитанных, принятых и отброшенных строк файла
+    // порядок CustomComparator можно проверять без создания String (см. CustomComparator.compareNatural)
+    private final boolean naturalComparator;
+    private final AsciiLine asciiLine = new AsciiLine();
+
+    private String current;        // текущая принятая строка (для целых чисел создается по запросу)
+    private long currentNumber;    // числовое значение текущей строки (для целых чисел)
+    private boolean hasCurrent;    // есть ли уже принятая строка
+    private long parsedNumber;     // результат последнего вызова parseAsciiNumber
+    private long currentOffset;    // смещение начала текущей строки в файле
+    private long currentLineNumber;
+    private long lineNumberBase;   // кол-во строк файла до первой прочитанной (курсор открыт с середины файла)
+    private boolean finished;      // файл дочитан до конца
+    private boolean disorderReported;  // о нарушении порядка в файле, читаемом с конца, уже сообщено
+
+    private InputFileCursor(String fileName, DataType dataType, Comparator<String> comparator, boolean checkOrder,
+                            LineSource reader, Reporter reporter) {
+        this.fileName = fileName;
+        this.dataType = dataType;
+        this.comparator = comparator;
+        this.checkOrder = checkOrder;
+        this.reversed = reader instanceof ReverseLineReader;
+        this.reader = reader;
+        this.reporter = reporter;
+        this.stats = new FileStats(fileName);
+        this.naturalComparator = comparator instanceof CustomComparator;
+    }
+
+    /**
+     * Метод открывает входной файл на чтение.
+     *
+     * @param fileName   имя входного файла
+     * @param dataType   тип данных, с к-м работает программа
+     * @param comparator объект-компаратор
+     * @param checkOrder отбрасывать ли строки, нарушающие "естественный порядок сортировки"
+     * @param reporter   объект, к-му передаются отброшенные строки
+     * @return           курсор, еще не спозиционированный на первую валидную строку
+     * @throws IOException если файл не удалось открыть
+     */
+    public static InputFileCursor open(String fileName, DataType dataType, Comparator<String> comparator,
+                                       boolean checkOrder, Reporter reporter) throws IOException {
+        return open(LineReader.open(Path.of(fileName)), fileName, dataType, comparator, checkOrder, reporter);
+    }
+
+    /**
+     * Метод создает курсор по уже открытому источнику строк (см. open).
+     */
+    static InputFileCursor open(LineSource reader, String fileName, DataType dataType,
+                                Comparator<String> comparator, boolean checkOrder, Reporter reporter) {
+        return new InputFileCursor(fileName, dataType, comparator, checkOrder, reader, reporter);
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (finished) {
+            return false;
+        }
+        while (reader.next()) {
+            // строки файла, читаемого с конца, нумеруются с конца: -1 - последняя строка
+            long numFileLine = reversed ? -stats.countRead() : lineNumberBase + stats.countRead();
+            ByteBuffer line = reader.buffer();
+            int from = reader.lineStart();
+            int to = reader.lineEnd();
+
+            RejectReason reason = null;
+            boolean ascii = true;
+            if (from == to) {
+                reason = RejectReason.BLANK;
+            }
+            for (int i = from; i < to && reason == null; i++) {
+                byte b = line.get(i);
+                if (b == ' ') {
+                    reason = RejectReason.WHITESPACE;
+                }
+                ascii &= b >= 0;
+            }
+            if (reason == null) {
+                reason = ascii ? checkAscii(line, from, to) : checkDecoded(reader.lineString());
+            }
+            if (reason == null) {
+                stats.countAccepted();
+                currentOffset = reader.lineOffset();
+                currentLineNumber = numFileLine;
+                return true;
+            }
+            // сама строка нужна только для файла отброшенных строк
+            reporter.rejected(stats, numFileLine, reporter.needsRejectedLines() ? reader.lineString() : null,
+                    reason);
+            if (reversed && reason == RejectReason.OUT_OF_ORDER && !disorderReported) {
+                disorderReported = true;
+                reporter.error("""
+                        Файл %s не упорядочен по возрастанию, хотя указан параметр --presorted: он читался с конца,
+                        поэтому результат может отличаться от сортировки без --presorted.
+                        """, fileName);
+            }
+        }
+        finished = true;
+        return false;
+    }
+
+    /**
+     * Метод проверяет строку из ASCII-символов, не создавая для нее String (кроме принятых строк строкового типа).
+     *
+     * @return причина, по к-й строка отбрасывается, или null, если строка стала текущей
+     */
+    private RejectReason checkAscii(ByteBuffer line, int from, int to) {
+        if (dataType.isNumeric()) {
+            if (!parseAsciiNumber(line, from, to, dataType == DataType.INTEGER)) {
+                return RejectReason.WRONG_TYPE;
+            }
+            return acceptNumber(parsedNumber);
+        }
+        // строка, к-ю можно привести к целому числу, не считается строковыми данными
+        if (parseAsciiNumber(line, from, to, true)) {
+            return RejectReason.WRONG_TYPE;
+        }
+        if (checkOrder && hasCurrent) {
+            asciiLine.set(line, from, to);
+            int compareResult = naturalComparator
+                    ? CustomComparator.compareNatural(asciiLine, current)
+                    : comparator.compare(asciiLine.toString(), current);
+            if (isOutOfOrder(compareResult)) {
+                return RejectReason.OUT_OF_ORDER;
+            }
+        }
+        current = reader.lineString();
+        hasCurrent = true;
+        return null;
+    }
+
+    /**
+     * Метод проверяет уже декодированную строку файла.
+     *
+     * @return причина, по к-й строка отбрасывается, или null, если строка стала текущей
+     */
+    private RejectReason checkDecoded(String fileLine) {
+        if (!isValidByDataType(fileLine)) {
+            return RejectReason.WRONG_TYPE;
+        }
+        if (dataType.isNumeric()) {
+            return acceptNumber(dataType == DataType.INTEGER ? Integer.parseInt(fileLine) : Long.parseLong(fileLine));
+        }
+        if (checkOrder && hasCurrent && isOutOfOrder(comparator.compare(fileLine, current))) {
+            return RejectReason.OUT_OF_ORDER;
+        }
+        current = fileLine;
+        hasCurrent = true;
+        return null;
+    }
+
+    /**
+     * Метод сравнивает число с предыдущим принятым и, если оно не нарушает порядок, делает его текущим.
+     */
+    private RejectReason acceptNumber(long number) {
+        if (checkOrder && hasCurrent && isOutOfOrder(Long.compare(number, currentNumber))) {
+            return RejectReason.OUT_OF_ORDER;
+        }
+        currentNumber = number;
+        current = null;
+        hasCurrent = true;
+        return null;
+    }
+
+    /**
+     * Метод проверяет по результату сравнения строки с предыдущей принятой, нарушает ли она порядок файла.
+     */
+    private boolean isOutOfOrder(int compareResult) {
+        return reversed ? compareResult > 0 : compareResult < 0;
+    }
+
+    /**
+     * Метод проверяет строчку файла на соответствие указанному в аргументах типу данных.
+     */
+    private boolean isValidByDataType(String fileLine) {
+        return switch (dataType) {
+            case INTEGER -> InputFilesAnalyzer.isInteger(fileLine);
+            case LONG -> InputFilesAnalyzer.isLong(fileLine);
+            // строка, к-ю можно привести к целому числу, не считается строковыми данными
+            default -> !InputFilesAnalyzer.isInteger(fileLine);
+        };
+    }
+
+    /**
+     * Метод разбирает целое число из ASCII-байтов строки по тем же правилам, что и Integer.parseInt / Long.parseLong:
+     * необязательный знак "+" или "-", затем хотя бы одна цифра, без выхода за пределы типа.
+     * Результат сохраняется в parsedNumber.
+     *
+     * @return удалось ли разобрать число
+     */
+    private boolean parseAsciiNumber(ByteBuffer line, int from, int to, boolean isInt) {
+        // число накапливается отрицательным, т.к. по модулю минимальное значение больше максимального
+        long limit = isInt ? -Integer.MAX_VALUE : -Long.MAX_VALUE;
+        boolean negative = false;
+        int i = from;
+        byte first = line.get(i);
+        if (first < '0') {
+            if (first == '-') {
+                negative = true;
+                limit = isInt ? Integer.MIN_VALUE : Long.MIN_VALUE;
+            }
+            else if (first != '+') {
+                return false;
+            }
+            if (++i == to) {
+                return false;
+            }
+        }
+        long multiplyMin = limit / 10;
+        long result = 0;
+        while (i < to) {
+            int digit = line.get(i++) - '0';
+            if (digit < 0 || digit > 9 || result < multiplyMin) {
+                return false;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return false;
+            }
+            result -= digit;
+        }
+        parsedNumber = negative ? result : -result;
+        return true;
+    }
+
+    /**
+     * Текущая валидная строка файла (для целых чисел - число в десятичной записи без знака "+" и ведущих нулей).
+     */
+    @Override
+    public String current() {
+        if (current == null && dataType.isNumeric()) {
+            current = Long.toString(currentNumber);
+        }
+        return current;
+    }
+
+    @Override
+    public long currentNumber() {
+        return currentNumber;
+    }
+
+    @Override
+    public long currentOffset() {
+        return currentOffset;
+    }
+
+    @Override
+    public long currentLineNumber() {
+        return currentLineNumber;
+    }
+
+    /**
+     * Метод задает номер первой читаемой строки, если курсор открыт с середины файла:
+     * строки в сообщениях об отброшенных строках нумеруются от начала файла.
+     */
+    void setFirstLineNumber(long lineNumber) {
+        this.lineNumberBase = lineNumber - 1;
+    }
+
+    @Override
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Счетчики прочитанных, принятых и отброшенных строк файла.
+     */
+    public FileStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Строка из ASCII-символов, к-я остается в буфере LineReader: каждый байт - один символ.
+     */
+    private static final class AsciiLine implements CharSequence {
+        private ByteBuffer buffer;
+        private int from;
+        private int length;
+
+        void set(ByteBuffer buffer, int from, int to) {
+            this.buffer = buffer;
+            this.from = from;
+            this.length = to - from;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) buffer.get(from + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[length];
+            buffer.get(from, bytes);
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+    }
+
+}
@@ -1,14 +1,17 @@
 package cft.petrov;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 /**
  * Класс-фильтр данных входных файлов.
@@ -19,8 +22,38 @@ import java.util.List;
  * и успешно прошедшие проходят отсев на нарушение "естественного порядка сортировки" (Natural Sort Order).
  * Пережившие все проверки строки попадают в общий список валидных данных всех входных файлов (allValidData).
  * Это именно те данные, которые будут преданы сортировке слиянием.
+ * Сами проверки выполняет курсор InputFileCursor, к-й открывается на каждый входной файл:
+ * в потоковом режиме курсоры не сливаются в общий список, а передаются классу KWayMerger.
+ * Проверки файлов не зависят друг от друга, поэтому при числе потоков > 1 (параметр --threads)
+ * файлы проверяются параллельно на пуле потоков. Результаты и сообщения о файлах все равно
+ * собираются в порядке следования входных файлов, так что выходной файл не зависит от числа потоков.
  */
-public class InputFilesAnalyzer {
+public class InputFilesAnalyzer implements AutoCloseable {
+    // отбрасывать ли строки, нарушающие "естественный порядок сортировки"
+    private final boolean checkNaturalOrder;
+    // кол-во потоков проверки входных файлов (1 - файлы проверяются по очереди в основном потоке)
+    private final int threads;
+    // размер буфера распаковки входных файлов ".gz"
+    private final int gzipBufferSize;
+    private final Reporter reporter;
+    private ExecutorService executor;  // пул потоков проверки (создается при первой надобности)
+
+    public InputFilesAnalyzer(Reporter reporter) {
+        this(new RunOptions(), reporter);
+    }
+
+    /**
+     * @param runOptions дополнительные параметры запуска: для неупорядоченных входных файлов (--unsorted)
+     *                   строки не отбрасываются за нарушение "естественного порядка сортировки",
+     *                   а также кол-во потоков проверки и размер буфера распаковки
+     * @param reporter   объект, выводящий сообщения о ходе проверки
+     */
+    public InputFilesAnalyzer(RunOptions runOptions, Reporter reporter) {
+        this.checkNaturalOrder = !runOptions.isUnsorted();
+        this.threads = runOptions.getThreads();
+        this.gzipBufferSize = runOptions.getGzipBufferSize();
+        this.reporter = reporter;
+    }
 
     /**
      * Метод отбирает валидные строки к-го входного файла и сохраняет их в общий список валидных данных.
@@ -31,143 +64,370 @@ public class InputFilesAnalyzer {
      * @return               общий список валидных данных всех входных файлов
      */
     public List<String> selectValidData(List<String> inputFileNames, DataType dataType, Comparator<String> comparator) {
-        // список строк файла с валидным типом данных
-        List<String> validByDataTypeFileLines = new ArrayList<>();
         // общий список валидных данных всех входных файлов
         List<String> allValidData = new ArrayList<>();
 
-        String fileLine; // строчка входного файла
-        int numFileLine; // номер строчки входного файла
+        List<List<String>> validDataByFile = validateFiles(inputFileNames, dataType, comparator, ArrayList::new,
+                (cursor, validData) -> {
+                    while (cursor.next()) {
+                        validData.add(cursor.current());
+                    }
+                });
+        for (List<String> validData : validDataByFile) {
+            allValidData.addAll(validData);
+        }
+        return allValidData;
+    }
 
-        System.out.print("""
-                ==========================================================
-                Начинается построчная проверка содержимого входных файлов.
-                """);
+    /**
+     * Метод отбирает валидные целые числа всех входных файлов (см. selectValidData).
+     * Числа разбираются курсором прямо из байтов файла и складываются в массив без создания строк.
+     * Файлы, проверяемые по очереди, пишут числа сразу в общий массив; при проверке на пуле потоков
+     * у каждого файла свой массив, и каждый освобождается, как только его числа перенесены в общий.
+     *
+     * @param inputFileNames список имен входных файлов
+     * @param dataType       целочисленный тип данных
+     * @param comparator     объект-компаратор
+     * @return               массив валидных чисел всех входных файлов
+     */
+    public NumberList selectValidNumbers(List<String> inputFileNames, DataType dataType,
+                                         Comparator<String> comparator) {
+        FileValidator<NumberList> validator = (cursor, validNumbers) -> {
+            while (cursor.next()) {
+                validNumbers.add(cursor.currentNumber());
+            }
+        };
+        if (threads == 1) {
+            NumberList allValidNumbers = new NumberList(dataType);
+            validateFiles(inputFileNames, dataType, comparator, () -> allValidNumbers, validator);
+            return allValidNumbers;
+        }
 
-        Path path;
-        for (String fileName : inputFileNames) {
-            path = Path.of(fileName);
-            try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
-                numFileLine = 0; // для к-го файла счетчик строк обнуляется
-
-                System.out.printf("""
-                        ==========================================================
-                        Проверка содержимого файла %s
-                        """, path.toAbsolutePath());
-
-                if (!in.ready()) {  //  если в буфере нет данных
-                    System.out.printf("Файл \"%s\" пуст.\n", fileName);
-                    continue;  // иду к следующему файлу, с этого нечего взять
-                }
+        List<NumberList> validNumbersByFile = validateFiles(inputFileNames, dataType, comparator,
+                () -> new NumberList(dataType), validator);
+        int total = 0;
+        for (NumberList validNumbers : validNumbersByFile) {
+            total = Math.addExact(total, validNumbers.size());
+        }
+        NumberList allValidNumbers = new NumberList(dataType, total);
+        for (int i = 0; i < validNumbersByFile.size(); i++) {
+            allValidNumbers.addAll(validNumbersByFile.get(i));
+            validNumbersByFile.set(i, null);
+        }
+        return allValidNumbers;
+    }
 
-                while ((fileLine = in.readLine()) != null) {
-                    numFileLine++;
-                    if (!fileLine.isEmpty() && !fileLine.contains(" ")) {
-                        checkFileLineDataType(dataType, fileLine, numFileLine, validByDataTypeFileLines);
-                    }
-                    else if (fileLine.isEmpty()) {
-                        System.out.printf("Строка %d пустая и не войдет в выходной файл.\n", numFileLine);
-                    }
-                    else {
-                        System.out.printf("Строка %d содержит пробел(-ы) и не войдет в выходной файл.\n", numFileLine);
-                    }
-                }
+    /**
+     * Метод проверяет все входные файлы и собирает валидные данные каждого файла.
+     * При числе потоков > 1 файлы проверяются на пуле потоков, каждый со своим объектом Reporter,
+     * а сообщения о файлах выводятся по мере сбора результатов, т.е. в порядке следования файлов.
+     *
+     * @return результаты файлов в порядке следования входных файлов (без файлов, к-е не удалось открыть)
+     */
+    private <R> List<R> validateFiles(List<String> inputFileNames, DataType dataType, Comparator<String> comparator,
+                                      Supplier<R> newResult, FileValidator<R> validator) {
+        List<R> results = new ArrayList<>();
 
-                if (validByDataTypeFileLines.isEmpty()) {
-                    System.out.printf("В файле \"%s\" не оказалось валидных данных.\n", fileName);
+        printCheckStart();
+        if (threads == 1) {
+            for (String fileName : inputFileNames) {
+                R result = validateFile(fileName, dataType, comparator, newResult, validator, reporter);
+                if (result != null) {
+                    results.add(result);
                 }
-                else {
-                    System.out.printf("Список значений отобранных строк валидного типа данных:\n%s\n",
-                            validByDataTypeFileLines);
-
-                    checkNaturalOrdering(dataType, validByDataTypeFileLines, allValidData, comparator);
+            }
+            return results;
+        }
 
-                    // список очищается перед заполнением валидными строками следующего вх. файла
-                    validByDataTypeFileLines.clear();
+        List<Future<R>> futures = new ArrayList<>();
+        List<Reporter> fileReporters = new ArrayList<>();
+        for (String fileName : inputFileNames) {
+            Reporter fileReporter = reporter.newFileReporter();
+            fileReporters.add(fileReporter);
+            futures.add(executor().submit(() -> validateFile(fileName, dataType, comparator, newResult, validator,
+                    fileReporter)));
+        }
+        int collected = 0;  // кол-во файлов, чьи результаты собраны, а сообщения выведены
+        try {
+            for (; collected < futures.size(); collected++) {
+                R result = futures.get(collected).get();
+                if (result != null) {
+                    results.add(result);
                 }
+                fileReporters.get(collected).close();
             }
-            catch (NoSuchFileException e) {
-                System.out.printf("""
-                        ==========================================================
-                        По пути %s не найден указанный в аргументах файл "%s".
-                        Сортировка будет выполнена без учета файла "%s".
-                        """, System.getProperty("user.dir"), fileName, fileName);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Проверка входных файлов прервана", e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка при проверке входного файла " + inputFileNames.get(collected),
+                    e.getCause());
+        }
+        finally {
+            // при ошибке проверка остальных файлов отменяется, а их сообщения все равно выводятся
+            for (int i = collected; i < futures.size(); i++) {
+                futures.get(i).cancel(true);
             }
-            catch (IOException e) {
-                System.out.printf("Ошибка при чтении входного файла " + fileName, e);
+            for (int i = collected; i < futures.size(); i++) {
+                fileReporters.get(i).close();
             }
         }
-        return allValidData;
+        return results;
     }
 
     /**
-     * Метод проверяет каждую непустую и не содержащую пробел(-ы) строчку входного файла
-     * на соответствие указанному в аргументах типу данных и либо отклоняет ее,
-     * либо добавляет в список строк файла с валидным типом данных.
+     * Метод проверяет один входной файл.
      *
-     * @param dataType                 тип данных, с к-м работает программа
-     * @param fileLine                 проверяемая строчка файла
-     * @param numFileLine              номер строчки файла
-     * @param validByDataTypeFileLines список строк файла с валидным типом данных
-     */
-    private static void checkFileLineDataType(DataType dataType, String fileLine, int numFileLine,
-                                              List<String> validByDataTypeFileLines) {
-        if (dataType == DataType.INTEGER) {
-            if (isInteger(fileLine)) {
-                validByDataTypeFileLines.add(fileLine);
-            }
-            else {
-                System.out.printf("Строка %d не содержит целочисленных данных и будет отброшена.\n", numFileLine);
-            }
+     * @return валидные данные файла (прочитанные до ошибки чтения, если она случилась)
+     *         или null, если файл не удалось открыть
+     */
+    private <R> R validateFile(String fileName, DataType dataType, Comparator<String> comparator,
+                               Supplier<R> newResult, FileValidator<R> validator, Reporter fileReporter) {
+        InputFileCursor cursor = openCursor(fileName, dataType, comparator, 0, false, fileReporter);
+        if (cursor == null) {
+            return null;  // иду к следующему файлу, с этого нечего взять
         }
-        else {
-            if (!isInteger(fileLine)) {
-                validByDataTypeFileLines.add(fileLine);
+        R result = newResult.get();
+        long start = System.nanoTime();
+        try (cursor) {
+            validator.validate(cursor, result);
+        }
+        catch (IOException e) {
+            fileReporter.error("Ошибка при чтении входного файла %s: %s\n", fileName, e.getMessage());
+        }
+        cursor.getStats().setElapsedNanos(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Метод открывает курсоры по валидным строкам всех существующих входных файлов.
+     * Сами строки при этом еще не читаются: проверка содержимого файла идет по мере продвижения его курсора.
+     * При числе потоков > 1 каждый файл проверяется заранее на пуле потоков (см. класс PrefetchingCursor).
+     *
+     * @param inputFileNames список имен входных файлов
+     * @param dataType       тип данных, с к-м работает программа
+     * @param comparator     объект-компаратор
+     * @return               список курсоров в порядке следования входных файлов
+     */
+    public List<DataCursor> openCursors(List<String> inputFileNames, DataType dataType,
+                                        Comparator<String> comparator) {
+        List<DataCursor> cursors = new ArrayList<>();
+
+        printCheckStart();
+        for (String fileName : inputFileNames) {
+            DataCursor cursor = openCursor(fileName, dataType, comparator);
+            if (cursor != null) {
+                cursors.add(cursor);
             }
-            else {
-                System.out.printf("Строка %d может быть приведена к целочисленному типу данных и будет отброшена.\n",
-                        numFileLine);
+        }
+        return cursors;
+    }
+
+    /**
+     * Метод открывает курсоры, читающие несжатые входные файлы с конца (см. класс ReverseLineReader):
+     * строки упорядоченных по возрастанию файлов идут по убыванию, что позволяет слить их по убыванию потоком.
+     *
+     * @param inputFileNames список имен входных файлов (см. ReverseLineReader.canRead)
+     * @param dataType       тип данных, с к-м работает программа
+     * @param comparator     объект-компаратор
+     * @return               список курсоров в порядке следования входных файлов
+     */
+    public List<DataCursor> openReversedCursors(List<String> inputFileNames, DataType dataType,
+                                                Comparator<String> comparator) {
+        List<DataCursor> cursors = new ArrayList<>();
+
+        printCheckStart();
+        for (String fileName : inputFileNames) {
+            DataCursor cursor = openCursor(fileName, dataType, comparator, true);
+            if (cursor != null) {
+                cursors.add(cursor);
             }
         }
+        return cursors;
     }
 
     /**
-     * Метод сравнивает каждый эл-т списка строк файла с валидным типом данных с предыдущим эл-ом,
-     * и если он не нарушает "естественный порядок сортировки", добавляет эл-т в общий список валидных данных.
+     * Метод открывает курсоры входных файлов для продолжения прерванного слияния:
+     * каждый файл читается с его текущей строки в контрольной точке, а слитые целиком файлы пропускаются.
      *
-     * @param dataType                 тип данных, с к-м работает программа
-     * @param validByDataTypeFileLines список строк файла с валидным типом данных
-     * @param allValidData             общий список валидных данных всех входных файлов
-     */
-    private static void checkNaturalOrdering(DataType dataType, List<String> validByDataTypeFileLines,
-                                             List<String> allValidData, Comparator<String> comparator) {
-        // предыдущий элемент списка
-        String previous = null;
-
-        if (dataType == DataType.INTEGER) {
-            for (String current : validByDataTypeFileLines) {
-                if (previous == null || (Integer.parseInt(current) >= Integer.parseInt(previous))) {
-                    allValidData.add(current);
-                    previous = current;
-                }
-                else {
-                    System.out.printf("Строка \"%s\" нарушает естественный порядок сортировки и будет отброшена.\n",
-                            current);
+     * @param dataType   тип данных, с к-м работает программа
+     * @param comparator объект-компаратор
+     * @param checkpoint контрольная точка прерванного слияния
+     * @return           список курсоров в порядке слияния
+     */
+    public List<DataCursor> resumeCursors(DataType dataType, Comparator<String> comparator,
+                                          MergeCheckpoint checkpoint) {
+        List<DataCursor> cursors = new ArrayList<>();
+
+        printCheckStart();
+        for (MergeCheckpoint.FileState state : checkpoint.getFiles()) {
+            if (state.isFinished()) {
+                reporter.detail("Файл %s слит целиком до контрольной точки.\n", state.fileName());
+                continue;
+            }
+            Reporter fileReporter = threads == 1 ? reporter : reporter.newFileReporter();
+            InputFileCursor cursor = openCursor(state.fileName(), dataType, comparator, state.offset(), false,
+                    fileReporter);
+            if (cursor == null) {
+                if (threads > 1) {
+                    fileReporter.close();
                 }
+                continue;
             }
+            cursor.setFirstLineNumber(state.lineNumber());
+            DataCursor resumed = threads == 1 ? cursor
+                    : new PrefetchingCursor(cursor, fileReporter, dataType, executor());
+            cursors.add(MergeCheckpoint.verifying(resumed, state));
+        }
+        return cursors;
+    }
+
+    /**
+     * Метод открывает курсор по валидным строкам входного файла,
+     * при числе потоков > 1 - курсор, проверяющий файл заранее на пуле потоков.
+     *
+     * @param fileName   имя входного файла
+     * @param dataType   тип данных, с к-м работает программа
+     * @param comparator объект-компаратор
+     * @return           курсор или null, если файл не удалось открыть
+     */
+    DataCursor openCursor(String fileName, DataType dataType, Comparator<String> comparator) {
+        return openCursor(fileName, dataType, comparator, false);
+    }
+
+    /**
+     * Метод открывает курсор по валидным строкам входного файла, читаемого с начала или с конца
+     * (см. openCursor(String, DataType, Comparator) и openReversedCursors).
+     * Равные строки файла, читаемого с конца, курсор возвращает в порядке файла (см. класс ReversedTiesCursor).
+     */
+    DataCursor openCursor(String fileName, DataType dataType, Comparator<String> comparator,
+                          boolean reversed) {
+        DataCursor cursor;
+        if (threads == 1) {
+            cursor = openCursor(fileName, dataType, comparator, 0, reversed, reporter);
         }
         else {
-            for (String current : validByDataTypeFileLines) {
-                if (previous == null || comparator.compare(current, previous) >= 0) {
-                    allValidData.add(current);
-                    previous = current;
-                }
-                else {
-                    System.out.printf("Строка \"%s\" нарушает естественный порядок сортировки и будет отброшена.\n",
-                            current);
-                }
+            Reporter fileReporter = reporter.newFileReporter();
+            InputFileCursor fileCursor = openCursor(fileName, dataType, comparator, 0, reversed, fileReporter);
+            if (fileCursor == null) {
+                fileReporter.close();
+                return null;
             }
+            cursor = new PrefetchingCursor(fileCursor, fileReporter, dataType, executor());
         }
+        if (cursor == null || !reversed || dataType.isNumeric()) {
+            return cursor;
+        }
+        // равные числа записываются одинаково, а равные строки могут различаться (н-р, "a1" и "a01")
+        return new ReversedTiesCursor(cursor, dataType, comparator);
+    }
+
+    /**
+     * Метод открывает курсор по валидным строкам несжатого входного файла, начиная со строки по смещению start
+     * (см. класс RangeQuery). Файл проверяется в основном потоке: проверка заранее прочитала бы его до конца.
+     *
+     * @param fileName   имя входного файла
+     * @param dataType   тип данных, с к-м работает программа
+     * @param comparator объект-компаратор
+     * @param start      смещение начала строки от начала файла
+     * @return           курсор или null, если файл не удалось открыть
+     */
+    DataCursor openCursor(String fileName, DataType dataType, Comparator<String> comparator, long start) {
+        return openCursor(fileName, dataType, comparator, start, false, reporter);
+    }
+
+    /**
+     * Метод открывает курсор по валидным строкам входного файла.
+     *
+     * @param fileName     имя входного файла
+     * @param dataType     тип данных, с к-м работает программа
+     * @param comparator   объект-компаратор
+     * @param start        смещение от начала файла, с к-го читаются строки
+     * @param reversed     читать ли файл с конца (start при этом не учитывается)
+     * @param fileReporter объект, выводящий сообщения о файле
+     * @return             курсор или null, если файл не удалось открыть
+     */
+    private InputFileCursor openCursor(String fileName, DataType dataType, Comparator<String> comparator,
+                                       long start, boolean reversed, Reporter fileReporter) {
+        try {
+            Path path = Path.of(fileName);
+            LineSource reader = reversed ? new ReverseLineReader(path) : LineReader.open(path, gzipBufferSize, start);
+            InputFileCursor cursor = InputFileCursor.open(reader, fileName, dataType, comparator,
+                    checkNaturalOrder, fileReporter);
+            if (!LineReader.isStream(fileName)) {
+                cursor.getStats().setBytes(Files.size(path));  // размер потока (канала) заранее неизвестен
+            }
+            fileReporter.addFileStats(cursor.getStats());
+            fileReporter.detail("""
+                    ==========================================================
+                    Проверка содержимого файла %s
+                    """, LineReader.isStandardStream(fileName) ? "стандартного ввода" : path.toAbsolutePath());
+            return cursor;
+        }
+        catch (NoSuchFileException e) {
+            fileReporter.error("""
+                    ==========================================================
+                    По пути %s не найден указанный в аргументах файл "%s".
+                    Сортировка будет выполнена без учета файла "%s".
+                    """, System.getProperty("user.dir"), fileName, fileName);
+        }
+        catch (IOException e) {
+            fileReporter.error("Ошибка при чтении входного файла %s: %s\n", fileName, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Метод возвращает пул потоков проверки входных файлов, создавая его при первом вызове.
+     */
+    private ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads, task -> {
+                Thread thread = new Thread(task, "input-validator");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Метод останавливает пул потоков проверки входных файлов.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Метод сообщает о начале проверки содержимого входных файлов.
+     * Итоги проверки каждого файла выводит метод Reporter.printSummary.
+     */
+    void printCheckStart() {
+        reporter.info("""
+                ==========================================================
+                Начинается построчная проверка содержимого входных файлов.
+                """);
+    }
+
+    /**
+     * Метод проверяет, можно ли из строки извлечь 64-битные целочисленные данные.
+     *
+     * @param fileLine строка файла
+     * @return результат проверки (можно / нельзя)
+     */
+    static boolean isLong(String fileLine) {
+        try {
+            Long.parseLong(fileLine);
+        }
+        catch (NumberFormatException e) {
+            return false;
+        }
+        return true;
     }
 
     /**
@@ -176,7 +436,7 @@ public class InputFilesAnalyzer {
      * @param fileLine строка файла
      * @return результат проверки (можно / нельзя)
      */
-    private static boolean isInteger(String fileLine) {
+    static boolean isInteger(String fileLine) {
         try {
             Integer.parseInt(fileLine);
         }
@@ -186,4 +446,13 @@ public class InputFilesAnalyzer {
         return true;
     }
 
+    /**
+     * Проверка одного входного файла: перенос валидных данных из курсора файла в результат.
+     * При ошибке чтения в результате остаются данные, прочитанные до нее.
+     */
+    @FunctionalInterface
+    private interface FileValidator<R> {
+        void validate(InputFileCursor cursor, R result) throws IOException;
+    }
+
 }
@@ -2,82 +2,218 @@ package cft.petrov;
 
 /**
  * В классе осуществляется сортировка слиянием массива целочисленных данных по возрастанию / убыванию.
+ * Массивы примитивные (int[] и long[]), чтобы не создавать по объекту-обертке на каждое число
+ * и не разыменовывать ссылки при каждом сравнении.
+ * Сортировка восходящая (bottom-up) и без рекурсии: сначала короткие серии по INSERTION_SORT_THRESHOLD эл-ов
+ * упорядочиваются вставками, затем серии попарно сливаются, и ширина серий удваивается на каждом проходе.
+ * Проходы по очереди пишут то в исходный массив, то в один заранее выделенный буфер того же размера,
+ * так что за всю сортировку выделяется память лишь под этот буфер.
  */
 public class IntegerMergeSort {
+    // длина серий, к-е упорядочиваются сортировкой вставками перед первым проходом слияния
+    static final int INSERTION_SORT_THRESHOLD = 32;
 
     /**
-     * Метод рекурсивно делит массив на 2 части, пока в каждом подмассиве не окажется только 1 эл-т,
-     * а затем запускается метод сортировки подмассивов со слиянием их воедино.
+     * Метод сортирует массив целых чисел.
      *
      * @param intArr   неотсортированный массив валидных строк вх. файлов
      * @param sortMode режим сортировки
      */
-    void divideIntArray(Integer[] intArr, SortMode sortMode) {
-        int arrLength = intArr.length;
+    void divideIntArray(int[] intArr, SortMode sortMode) {
+        divideIntArray(intArr, intArr.length, sortMode);
+    }
 
-        // если в intArr 1 эл-т - прекращается деление на подмассивы
-        if (arrLength == 1) {
-            return;
+    /**
+     * Метод сортирует первые length эл-ов массива целых чисел (н-р, неполную порцию внешней сортировки),
+     * не копируя их в массив точной длины.
+     */
+    void divideIntArray(int[] intArr, int length, SortMode sortMode) {
+        if (length > 1) {
+            sortRange(intArr, 0, length, new int[length], sortMode);
         }
+    }
 
-        int mid = arrLength / 2;                        // середина массива intArr
-        Integer[] left = new Integer[mid];              // подмассив с левой половиной эл-ов intArr
-        Integer[] right = new Integer[arrLength - mid]; // подмассив с правой половиной эл-ов intArr
+    /**
+     * Метод сортирует массив 64-битных целых чисел.
+     *
+     * @param longArr  неотсортированный массив валидных строк вх. файлов
+     * @param sortMode режим сортировки
+     */
+    void divideLongArray(long[] longArr, SortMode sortMode) {
+        divideLongArray(longArr, longArr.length, sortMode);
+    }
 
-        // копирование в подмассив left первом половины эл-ов intArr
-        System.arraycopy(intArr, 0, left, 0, mid);
-        // копирование в подмассив right второй половины эл-ов intArr
-        System.arraycopy(intArr, mid, right, 0, arrLength - mid);
+    /**
+     * Метод сортирует первые length эл-ов массива 64-битных целых чисел (см. divideIntArray(int[], int, SortMode)).
+     */
+    void divideLongArray(long[] longArr, int length, SortMode sortMode) {
+        if (length > 1) {
+            sortRange(longArr, 0, length, new long[length], sortMode);
+        }
+    }
 
-        // подмассивы left и right и дальше (рекурсивно) делятся пополам,
-        // пока в к-м новом не останется по 1 эл-ту, а массив из 1 эл-та - отсортирован:
-        divideIntArray(left, sortMode);
-        divideIntArray(right, sortMode);
+    /**
+     * Метод сортирует диапазон [from, to) массива, используя тот же диапазон буфера как рабочую память.
+     *
+     * @param intArr   сортируемый массив
+     * @param from     начало диапазона
+     * @param to       конец диапазона (не включая)
+     * @param buffer   буфер не короче to
+     * @param sortMode режим сортировки
+     */
+    static void sortRange(int[] intArr, int from, int to, int[] buffer, SortMode sortMode) {
+        // короткие серии упорядочиваются вставками прямо в исходном массиве
+        for (int runFrom = from; runFrom < to; runFrom += INSERTION_SORT_THRESHOLD) {
+            insertionSort(intArr, runFrom, Math.min(runFrom + INSERTION_SORT_THRESHOLD, to), sortMode);
+        }
+        int[] src = intArr;
+        int[] dst = buffer;
+        for (int width = INSERTION_SORT_THRESHOLD; width < to - from; width *= 2) {
+            // каждая пара соседних серий src сливается в одну серию двойной ширины в dst
+            for (int left = from; left < to; left += 2 * width) {
+                int mid = Math.min(left + width, to);
+                int right = Math.min(left + 2 * width, to);
+                sortArray(src, left, mid, src, mid, right, dst, left, sortMode);
+            }
+            int[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+        // если последний проход записал результат в буфер - результат возвращается в исходный массив
+        if (src != intArr) {
+            System.arraycopy(src, from, intArr, from, to - from);
+        }
+    }
 
-        // по окончанию деления подмассивы сливаются в один:
-        sortArray(intArr, left, right, sortMode);
+    /**
+     * Метод сортирует диапазон [from, to) массива 64-битных целых чисел (см. выше).
+     */
+    static void sortRange(long[] longArr, int from, int to, long[] buffer, SortMode sortMode) {
+        for (int runFrom = from; runFrom < to; runFrom += INSERTION_SORT_THRESHOLD) {
+            insertionSort(longArr, runFrom, Math.min(runFrom + INSERTION_SORT_THRESHOLD, to), sortMode);
+        }
+        long[] src = longArr;
+        long[] dst = buffer;
+        for (int width = INSERTION_SORT_THRESHOLD; width < to - from; width *= 2) {
+            for (int left = from; left < to; left += 2 * width) {
+                int mid = Math.min(left + width, to);
+                int right = Math.min(left + 2 * width, to);
+                sortArray(src, left, mid, src, mid, right, dst, left, sortMode);
+            }
+            long[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+        if (src != longArr) {
+            System.arraycopy(src, from, longArr, from, to - from);
+        }
+    }
+
+    /**
+     * Метод сортирует вставками короткий диапазон [from, to) массива.
+     * Эл-т сдвигается влево лишь мимо строго больших (при убывании - строго меньших) эл-ов,
+     * поэтому равные эл-ты сохраняют исходный порядок.
+     */
+    static void insertionSort(int[] intArr, int from, int to, SortMode sortMode) {
+        for (int i = from + 1; i < to; i++) {
+            int current = intArr[i];
+            int j = i - 1;
+            if (sortMode == SortMode.ASC) {
+                while (j >= from && intArr[j] > current) {
+                    intArr[j + 1] = intArr[j--];
+                }
+            }
+            else {
+                while (j >= from && intArr[j] < current) {
+                    intArr[j + 1] = intArr[j--];
+                }
+            }
+            intArr[j + 1] = current;
+        }
+    }
+
+    /**
+     * Метод сортирует вставками короткий диапазон массива 64-битных целых чисел (см. выше).
+     */
+    static void insertionSort(long[] longArr, int from, int to, SortMode sortMode) {
+        for (int i = from + 1; i < to; i++) {
+            long current = longArr[i];
+            int j = i - 1;
+            if (sortMode == SortMode.ASC) {
+                while (j >= from && longArr[j] > current) {
+                    longArr[j + 1] = longArr[j--];
+                }
+            }
+            else {
+                while (j >= from && longArr[j] < current) {
+                    longArr[j + 1] = longArr[j--];
+                }
+            }
+            longArr[j + 1] = current;
+        }
     }
 
     /**
      * Метод сортировки эл-ов подмассивов (по возрастанию или убыванию) и слияния их воедино.
+     * Подмассивы задаются диапазонами индексов, чтобы метод можно было применять и к частям массивов.
+     * При равенстве эл-ов первым берется эл-т left, поэтому сортировка устойчива.
      *
-     * @param intArr   исходный массив, куда сольются отсортированные подмассивы
      * @param left     "левый" подмассив
+     * @param i        начало диапазона left
+     * @param leftEnd  конец диапазона left (не включая)
      * @param right    "правый" подмассив
+     * @param j        начало диапазона right
+     * @param rightEnd конец диапазона right (не включая)
+     * @param intArr   массив, куда сольются отсортированные подмассивы
+     * @param indexArr индекс intArr, с к-го начинается запись
      * @param sortMode режим сортировки
      */
-    private static void sortArray(Integer[] intArr, Integer[] left, Integer[] right, SortMode sortMode) {
-        int leftLength = left.length;
-        int rightLength = right.length;
-        int i = 0, j = 0, indexArr = 0; // индексы эл-ов left, right и intArr
-
+    static void sortArray(int[] left, int i, int leftEnd, int[] right, int j, int rightEnd,
+                          int[] intArr, int indexArr, SortMode sortMode) {
         if (sortMode == SortMode.ASC) {
             // пока не прошлись до конца left И right
-            while (i < leftLength && j < rightLength) {
+            while (i < leftEnd && j < rightEnd) {
                 // в intArr всегда записывается мин. на текущий момент эл-т
-                intArr[indexArr++] = left[i] < right[j] ? left[i++] : right[j++];
+                intArr[indexArr++] = left[i] <= right[j] ? left[i++] : right[j++];
             }
         }
         else {
-            while (i < leftLength && j < rightLength) {
+            while (i < leftEnd && j < rightEnd) {
                 // в intArr записывается макс. на текущий момент эл-т
-                intArr[indexArr++] = left[i] > right[j] ? left[i++] : right[j++];
+                intArr[indexArr++] = left[i] >= right[j] ? left[i++] : right[j++];
             }
         }
-        // Поскольку у цикла два одновременных условия: i < leftLength && j < rightLength,
+        // Поскольку у цикла два одновременных условия: i < leftEnd && j < rightEnd,
         // могут остаться эл-ты, которые не сохранились в массив intArr.
-        // Если к примеру все эл-ты right < всех эл-ов left, то j++ быстро дойдет до конца (rightLength)
+        // Если к примеру все эл-ты right < всех эл-ов left, то j++ быстро дойдет до конца (rightEnd)
         // и while остановится. А эл-ты left НЕ сохранились, ибо все они > к-го эл-та right.
         // Ситуация м.б. обратной или же имеем комбо: сохранили часть left, часть right, часть left, right, ...
         // И по одному подмассиву прошли до конца, а по другому, опять-таки - нет.
-        // Чтобы "добить" массивы до конца, я использую доп. переменные indexLeft и indexRight,
-        // связанные с индексами эл-ов массивов i и j до которых НЕ дошли:
-        for (int indexLeft = i; indexLeft < leftLength; indexLeft++) {
-            intArr[indexArr++] = left[indexLeft];
+        // Чтобы "добить" массивы до конца, я копирую оставшиеся эл-ты, начиная с индексов i и j,
+        // до которых НЕ дошли:
+        System.arraycopy(left, i, intArr, indexArr, leftEnd - i);
+        indexArr += leftEnd - i;
+        System.arraycopy(right, j, intArr, indexArr, rightEnd - j);
+    }
+
+    /**
+     * Метод сортировки эл-ов подмассивов 64-битных целых чисел и слияния их воедино (см. выше).
+     */
+    static void sortArray(long[] left, int i, int leftEnd, long[] right, int j, int rightEnd,
+                          long[] longArr, int indexArr, SortMode sortMode) {
+        if (sortMode == SortMode.ASC) {
+            while (i < leftEnd && j < rightEnd) {
+                longArr[indexArr++] = left[i] <= right[j] ? left[i++] : right[j++];
+            }
         }
-        for (int indexRight = j; indexRight < rightLength; indexRight++) {
-            intArr[indexArr++] = right[indexRight];
+        else {
+            while (i < leftEnd && j < rightEnd) {
+                longArr[indexArr++] = left[i] >= right[j] ? left[i++] : right[j++];
+            }
         }
+        System.arraycopy(left, i, longArr, indexArr, leftEnd - i);
+        indexArr += leftEnd - i;
+        System.arraycopy(right, j, longArr, indexArr, rightEnd - j);
     }
 
 }
@@ -0,0 +1,138 @@
+package cft.petrov;
+
+/**
+ * В классе осуществляется поразрядная сортировка (LSD radix sort) массивов целых чисел.
+ * Числа раскладываются по "корзинам" побайтно, начиная с младшего байта: 4 прохода для int и 8 для long.
+ * Гистограммы всех байтов считаются за один предварительный проход, а проходы по байту,
+ * одинаковому у всех чисел, пропускаются (н-р, старшие байты небольших чисел).
+ * Знак учитывается инвертированием знакового бита, а убывание - инвертированием всех остальных битов,
+ * поэтому обратный порядок получается без дополнительного разворота массива.
+ * Проходы по очереди пишут то в исходный массив, то в один буфер того же размера.
+ */
+public class IntegerRadixSort {
+    private static final int RADIX = 256;
+
+    /**
+     * Метод сортирует массив целых чисел.
+     *
+     * @param intArr   неотсортированный массив валидных строк вх. файлов
+     * @param sortMode режим сортировки
+     */
+    void sortIntArray(int[] intArr, SortMode sortMode) {
+        sortIntArray(intArr, intArr.length, sortMode);
+    }
+
+    /**
+     * Метод сортирует первые length эл-ов массива целых чисел (н-р, неполную порцию внешней сортировки).
+     */
+    void sortIntArray(int[] intArr, int length, SortMode sortMode) {
+        if (length <= 1) {
+            return;
+        }
+        // по возрастанию инвертируется знаковый бит, по убыванию - все биты, кроме знакового
+        int flip = sortMode == SortMode.ASC ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+
+        int[][] count = new int[Integer.BYTES][RADIX];
+        for (int i = 0; i < length; i++) {
+            int key = intArr[i] ^ flip;
+            for (int pass = 0; pass < Integer.BYTES; pass++) {
+                count[pass][(key >>> (8 * pass)) & 0xFF]++;
+            }
+        }
+
+        int[] src = intArr;
+        int[] dst = new int[length];
+        for (int pass = 0; pass < Integer.BYTES; pass++) {
+            int[] passCount = count[pass];
+            if (isTrivialPass(passCount, length)) {
+                continue;
+            }
+            toStartPositions(passCount);
+            int shift = 8 * pass;
+            for (int i = 0; i < length; i++) {
+                int value = src[i];
+                dst[passCount[((value ^ flip) >>> shift) & 0xFF]++] = value;
+            }
+            int[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+        if (src != intArr) {
+            System.arraycopy(src, 0, intArr, 0, length);
+        }
+    }
+
+    /**
+     * Метод сортирует массив 64-битных целых чисел (см. sortIntArray).
+     *
+     * @param longArr  неотсортированный массив валидных строк вх. файлов
+     * @param sortMode режим сортировки
+     */
+    void sortLongArray(long[] longArr, SortMode sortMode) {
+        sortLongArray(longArr, longArr.length, sortMode);
+    }
+
+    /**
+     * Метод сортирует первые length эл-ов массива 64-битных целых чисел.
+     */
+    void sortLongArray(long[] longArr, int length, SortMode sortMode) {
+        if (length <= 1) {
+            return;
+        }
+        long flip = sortMode == SortMode.ASC ? Long.MIN_VALUE : Long.MAX_VALUE;
+
+        int[][] count = new int[Long.BYTES][RADIX];
+        for (int i = 0; i < length; i++) {
+            long key = longArr[i] ^ flip;
+            for (int pass = 0; pass < Long.BYTES; pass++) {
+                count[pass][(int) (key >>> (8 * pass)) & 0xFF]++;
+            }
+        }
+
+        long[] src = longArr;
+        long[] dst = new long[length];
+        for (int pass = 0; pass < Long.BYTES; pass++) {
+            int[] passCount = count[pass];
+            if (isTrivialPass(passCount, length)) {
+                continue;
+            }
+            toStartPositions(passCount);
+            int shift = 8 * pass;
+            for (int i = 0; i < length; i++) {
+                long value = src[i];
+                dst[passCount[(int) ((value ^ flip) >>> shift) & 0xFF]++] = value;
+            }
+            long[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+        if (src != longArr) {
+            System.arraycopy(src, 0, longArr, 0, length);
+        }
+    }
+
+    /**
+     * Метод проверяет, что все числа попадают в одну корзину, т.е. проход ничего не изменит.
+     */
+    private static boolean isTrivialPass(int[] passCount, int length) {
+        for (int bucketCount : passCount) {
+            if (bucketCount != 0) {
+                return bucketCount == length;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Метод превращает кол-ва чисел в корзинах в индексы начала корзин.
+     */
+    private static void toStartPositions(int[] passCount) {
+        int position = 0;
+        for (int bucket = 0; bucket < RADIX; bucket++) {
+            int bucketCount = passCount[bucket];
+            passCount[bucket] = position;
+            position += bucketCount;
+        }
+    }
+
+}
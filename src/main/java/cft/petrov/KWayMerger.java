@@ -0,0 +1,218 @@
+package cft.petrov;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * В классе осуществляется потоковое k-путевое слияние предварительно отсортированных входных файлов
+ * (или временных файлов-серий внешней сортировки, см. класс ExternalMergeSort).
+ * На каждый входной файл держится по одному курсору, а текущие строки курсоров сравниваются в дереве проигравших
+ * (турнирном дереве): на каждом шаге в выходной файл пишется строка курсора-победителя, курсор продвигается
+ * к своей следующей валидной строке, и турнир переигрывается только на пути от этого курсора к корню -
+ * log2(k) сравнений на строку вместо ~2*log2(k) у двоичной кучи, что заметно при тысячах входных файлов.
+ * Поэтому в памяти одновременно находится лишь по одной строке на входной файл, а не все данные целиком.
+ * Если файлов больше, чем можно открыть разом, они сначала сливаются группами (см. класс MultiPassMerger).
+ * Слияние можно ограничить первыми N строками (параметр --limit): тогда каждый входной файл
+ * дочитывается лишь до строки, к-я уже не попадает в результат.
+ * Через каждые N записанных строк состояние слияния можно передать объекту Checkpointer
+ * (контрольные точки долгого слияния, см. класс MergeCheckpoint).
+ */
+public class KWayMerger implements AutoCloseable {
+
+    private final List<? extends DataCursor> cursors;
+    private final DataType dataType;
+    private final boolean descending;
+    private final Comparator<String> comparator;
+    private final Reporter reporter;
+
+    // tree[0] - номер курсора-победителя, tree[1..k-1] - номера проигравших во внутренних узлах дерева;
+    // лист курсора i - узел k + i, родитель узла n - узел n / 2
+    private final int[] tree;
+    private final boolean[] exhausted;  // курсор дошел до конца файла (проигрывает любому другому)
+
+    /**
+     * @param cursors    курсоры входных файлов (еще не спозиционированные на первую строку)
+     * @param dataType   тип данных, с к-м работает программа
+     * @param sortMode   режим сортировки, в к-м упорядочены строки курсоров
+     * @param comparator компаратор строк
+     * @param reporter   объект, выводящий сообщения об ошибках
+     */
+    public KWayMerger(List<? extends DataCursor> cursors, DataType dataType, SortMode sortMode,
+                      Comparator<String> comparator, Reporter reporter) {
+        this.cursors = cursors;
+        this.dataType = dataType;
+        this.descending = sortMode == SortMode.DESC;
+        this.comparator = comparator;
+        this.reporter = reporter;
+        this.tree = new int[Math.max(1, cursors.size())];
+        this.exhausted = new boolean[cursors.size()];
+    }
+
+    /**
+     * Метод сливает валидные строки всех входных файлов в заданном порядке и пишет их в выходной поток.
+     *
+     * @param out выходной поток
+     * @return    кол-во записанных строк
+     * @throws IOException при ошибке чтения входного или записи выходного файла
+     */
+    public long mergeTo(LineWriter out) throws IOException {
+        return mergeTo(out, Long.MAX_VALUE);
+    }
+
+    /**
+     * Метод сливает не больше limit первых строк (см. mergeTo(LineWriter)).
+     * После limit-й строки курсоры больше не продвигаются, так что остаток файлов не читается.
+     *
+     * @param out   выходной поток
+     * @param limit наибольшее кол-во записываемых строк
+     * @return      кол-во записанных строк
+     * @throws IOException при ошибке чтения входного или записи выходного файла
+     */
+    public long mergeTo(LineWriter out, long limit) throws IOException {
+        return mergeTo(out, limit, 0, null);
+    }
+
+    /**
+     * Метод сливает не больше limit первых строк (см. mergeTo(LineWriter, long)),
+     * сохраняя состояние слияния через каждые checkpointInterval записанных строк.
+     *
+     * @param out                выходной поток
+     * @param limit              наибольшее кол-во записываемых строк
+     * @param checkpointInterval через сколько строк сохраняется состояние (0 - не сохраняется)
+     * @param checkpointer       объект, сохраняющий состояние слияния
+     * @return                   кол-во записанных строк
+     * @throws IOException при ошибке чтения входного или записи выходного файла (или сохранения состояния)
+     */
+    public long mergeTo(LineWriter out, long limit, long checkpointInterval, Checkpointer checkpointer)
+            throws IOException {
+        int k = cursors.size();
+        if (k == 0) {
+            return 0;
+        }
+        for (int i = 0; i < k; i++) {
+            exhausted[i] = !cursors.get(i).next();
+        }
+        buildTree();
+
+        long written = 0;
+        long nextCheckpoint = checkpointInterval > 0 ? checkpointInterval : Long.MAX_VALUE;
+        while (written < limit && !exhausted[tree[0]]) {
+            if (written == nextCheckpoint) {
+                checkpoint(checkpointer, written);
+                nextCheckpoint += checkpointInterval;
+            }
+            int winner = tree[0];
+            DataCursor cursor = cursors.get(winner);
+            // целые числа пишутся в том же виде, что и при сортировке в памяти (н-р, "+5" -> "5")
+            if (dataType.isNumeric()) {
+                out.writeLine(cursor.currentNumber());
+            }
+            else {
+                out.writeLine(cursor.current());
+            }
+            written++;
+            if (written == limit) {
+                break;
+            }
+            // курсор продвигается к своей следующей строке и заново играет с проигравшими на пути к корню
+            exhausted[winner] = !cursor.next();
+            replay(winner);
+        }
+        return written;
+    }
+
+    /**
+     * Метод проводит начальный турнир: в каждом внутреннем узле остается проигравший,
+     * а победитель поднимается к родителю.
+     */
+    private void buildTree() {
+        int k = cursors.size();
+        int[] winners = new int[2 * k];
+        for (int i = 0; i < k; i++) {
+            winners[k + i] = i;
+        }
+        for (int node = k - 1; node >= 1; node--) {
+            int left = winners[2 * node];
+            int right = winners[2 * node + 1];
+            boolean leftWins = precedes(left, right);
+            winners[node] = leftWins ? left : right;
+            tree[node] = leftWins ? right : left;
+        }
+        tree[0] = k == 1 ? 0 : winners[1];
+    }
+
+    /**
+     * Метод переигрывает турнир после продвижения курсора-победителя: курсор сравнивается только
+     * с проигравшими в узлах на пути от своего листа к корню.
+     */
+    private void replay(int cursor) {
+        int winner = cursor;
+        for (int node = (cursors.size() + cursor) / 2; node >= 1; node /= 2) {
+            if (precedes(tree[node], winner)) {
+                int loser = winner;
+                winner = tree[node];
+                tree[node] = loser;
+            }
+        }
+        tree[0] = winner;
+    }
+
+    /**
+     * Метод проверяет, должна ли текущая строка курсора a идти в выходной файл раньше текущей строки курсора b.
+     * При равенстве строк первым идет курсор файла, указанного в аргументах раньше.
+     */
+    private boolean precedes(int a, int b) {
+        if (exhausted[a] || exhausted[b]) {
+            return !exhausted[a] || (exhausted[b] && a < b);
+        }
+        int order = dataType.isNumeric()
+                ? Long.compare(cursors.get(a).currentNumber(), cursors.get(b).currentNumber())
+                : comparator.compare(cursors.get(a).current(), cursors.get(b).current());
+        if (descending) {
+            order = -order;
+        }
+        return order < 0 || (order == 0 && a < b);
+    }
+
+    /**
+     * Метод передает состояние слияния объекту Checkpointer: все текущие строки курсоров еще не записаны.
+     */
+    private void checkpoint(Checkpointer checkpointer, long written) throws IOException {
+        boolean[] pending = new boolean[cursors.size()];
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = !exhausted[i];
+        }
+        checkpointer.save(cursors, pending, written);
+    }
+
+    /**
+     * Метод закрывает все входные файлы.
+     */
+    @Override
+    public void close() {
+        for (DataCursor cursor : cursors) {
+            try {
+                cursor.close();
+            }
+            catch (IOException e) {
+                reporter.error("Ошибка при закрытии входного файла %s: %s\n", cursor.getFileName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Объект, сохраняющий состояние слияния (контрольную точку).
+     */
+    public interface Checkpointer {
+
+        /**
+         * @param cursors курсоры входных файлов в порядке слияния
+         * @param pending есть ли у курсора текущая, еще не записанная строка (false - файл слит целиком)
+         * @param written кол-во уже записанных строк
+         * @throws IOException если состояние не удалось сохранить
+         */
+        void save(List<? extends DataCursor> cursors, boolean[] pending, long written) throws IOException;
+    }
+
+}
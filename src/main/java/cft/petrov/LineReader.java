@@ -0,0 +1,226 @@
+package cft.petrov;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Построчное чтение файла без декодирования строк в String.
+ * Байты файла находятся в буфере (отображенном в память окне файла или прочитанной порции потока),
+ * а текущая строка задается диапазоном [lineStart(), lineEnd()) этого буфера.
+ * Строки разделяются так же, как в BufferedReader.readLine: "\n", "\r" или "\r\n".
+ * String создается только по запросу (метод lineString), поэтому отброшенные строки
+ * и строки с целыми числами проверяются без создания объектов.
+ */
+public abstract class LineReader implements LineSource {
+    // имя "-" вместо имени файла: стандартный ввод (для выходного файла - стандартный вывод)
+    public static final String STANDARD_STREAM = "-";
+
+    protected ByteBuffer buffer;  // байты текущего окна / порции файла
+    private int position;         // начало следующей строки в буфере
+    private int lineStart;        // начало текущей строки в буфере
+    private int lineEnd;          // конец текущей строки в буфере (не включая разделитель)
+    private byte[] decodeBuffer = new byte[256];
+
+    /**
+     * Метод открывает файл на чтение (см. open(Path, int)) с буфером распаковки размера по умолчанию.
+     *
+     * @param path путь к файлу
+     * @return     объект построчного чтения файла
+     * @throws IOException если файл не удалось открыть
+     */
+    public static LineReader open(Path path) throws IOException {
+        return open(path, StreamLineReader.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Метод открывает файл на чтение. Обычный файл отображается в память,
+     * а сжатый (".gz") читается потоком: распаковка идет в отдельном потоке выполнения
+     * (см. ReadAheadInputStream), а LineReader разбирает уже распакованные порции.
+     * Так же, с чтением заранее в отдельном потоке, читаются стандартный ввод ("-") и именованный канал (FIFO):
+     * их нельзя отобразить в память, а размер заранее неизвестен. Сжаты ли их данные, узнается по сигнатуре gzip.
+     *
+     * @param path           путь к файлу
+     * @param gzipBufferSize размер буфера распаковки (и порций распакованных данных) в байтах
+     * @return               объект построчного чтения файла
+     * @throws IOException если файл не удалось открыть или он не в формате gzip
+     */
+    public static LineReader open(Path path, int gzipBufferSize) throws IOException {
+        return open(path, gzipBufferSize, 0);
+    }
+
+    /**
+     * Метод открывает файл на чтение (см. open(Path, int)), начиная со строки по смещению start.
+     * Несжатый файл отображается в память сразу с этого места, а у сжатого - распакованные данные
+     * до смещения start пропускаются (перейти к нему без распаковки нельзя).
+     *
+     * @param path           путь к файлу
+     * @param gzipBufferSize размер буфера распаковки (и порций распакованных данных) в байтах
+     * @param start          смещение начала строки от начала (распакованных) данных файла
+     * @return               объект построчного чтения файла
+     * @throws IOException если файл не удалось открыть или он не в формате gzip
+     */
+    public static LineReader open(Path path, int gzipBufferSize, long start) throws IOException {
+        String fileName = path.toString();
+        boolean gzip = isGzip(fileName);
+        if (!gzip && !isStandardStream(fileName) && Files.isRegularFile(path)) {
+            return new MappedLineReader(path, start);
+        }
+        // поток из Files.newInputStream считает доступные байты через позицию в файле, а у канала ее нет
+        InputStream file = isStandardStream(fileName) ? System.in
+                : isStream(fileName) ? new FileInputStream(path.toFile())
+                : Files.newInputStream(path);
+        try {
+            if (!gzip) {
+                // у потока нет расширения ".gz", поэтому сжатие узнается по первым байтам данных
+                file = new BufferedInputStream(file, gzipBufferSize);
+                gzip = hasGzipMagic(file);
+            }
+            InputStream in = gzip ? new GZIPInputStream(file, gzipBufferSize) : file;
+            in.skipNBytes(start);
+            return new StreamLineReader(new ReadAheadInputStream(in, gzipBufferSize,
+                    (gzip ? "gzip-reader " : "stream-reader ") + path.getFileName()), gzipBufferSize, start);
+        }
+        catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Метод проверяет, начинается ли поток с сигнатуры gzip, не сдвигая позицию потока.
+     */
+    private static boolean hasGzipMagic(InputStream in) throws IOException {
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        return first == (GZIPInputStream.GZIP_MAGIC & 0xff) && second == (GZIPInputStream.GZIP_MAGIC >>> 8);
+    }
+
+    /**
+     * Метод проверяет, обозначает ли имя файла стандартный ввод / вывод ("-").
+     */
+    public static boolean isStandardStream(String fileName) {
+        return STANDARD_STREAM.equals(fileName);
+    }
+
+    /**
+     * Метод проверяет, является ли файл потоком, к-й читается (пишется) только последовательно и только один раз:
+     * стандартным вводом / выводом ("-") или существующим именованным каналом (FIFO), н-р, "/dev/fd/63"
+     * из подстановки процесса "<(команда)" в bash. Переходить к смещению в таком файле и узнавать его размер нельзя.
+     */
+    public static boolean isStream(String fileName) {
+        if (isStandardStream(fileName)) {
+            return true;
+        }
+        try {
+            Path path = Path.of(fileName);
+            return Files.exists(path) && !Files.isRegularFile(path) && !Files.isDirectory(path);
+        }
+        catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Метод проверяет, сжат ли файл gzip (по расширению ".gz").
+     */
+    public static boolean isGzip(String fileName) {
+        return fileName.regionMatches(true, fileName.length() - 3, ".gz", 0, 3);
+    }
+
+    /**
+     * Метод перемещается на следующую строку файла.
+     *
+     * @return true, если строка прочитана; false, если файл дочитан до конца
+     * @throws IOException при ошибке чтения файла
+     */
+    @Override
+    public boolean next() throws IOException {
+        while (true) {
+            int limit = buffer.limit();
+            int i = position;
+            byte b = 0;
+            while (i < limit && (b = buffer.get(i)) != '\n' && b != '\r') {
+                i++;
+            }
+            // строка не закончилась в буфере (или после "\r" может идти "\n") - нужны следующие байты
+            if ((i == limit || b == '\r' && i + 1 == limit) && !isLastChunk()) {
+                position = refill(position);
+                continue;
+            }
+            if (position == limit) {
+                return false;
+            }
+            lineStart = position;
+            lineEnd = i;
+            if (i < limit) {
+                i++;
+                if (b == '\r' && i < limit && buffer.get(i) == '\n') {
+                    i++;
+                }
+            }
+            position = i;
+            return true;
+        }
+    }
+
+    @Override
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    @Override
+    public int lineStart() {
+        return lineStart;
+    }
+
+    @Override
+    public int lineEnd() {
+        return lineEnd;
+    }
+
+    @Override
+    public long lineOffset() {
+        return bufferOffset() + lineStart;
+    }
+
+    @Override
+    public String lineString() {
+        int length = lineEnd - lineStart;
+        if (decodeBuffer.length < length) {
+            decodeBuffer = new byte[Math.max(length, 2 * decodeBuffer.length)];
+        }
+        buffer.get(lineStart, decodeBuffer, 0, length);
+        return new String(decodeBuffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Смещение начала буфера от начала (распакованных) данных файла.
+     */
+    protected abstract long bufferOffset();
+
+    /**
+     * Метод проверяет, что в буфере находится последняя порция файла.
+     */
+    protected abstract boolean isLastChunk();
+
+    /**
+     * Метод дочитывает файл в буфер, сохраняя в нем байты, начиная с keepFrom (начало недочитанной строки).
+     * Если недочитанная строка занимает весь буфер, буфер должен увеличиться.
+     *
+     * @param keepFrom начало недочитанной строки в текущем буфере
+     * @return         начало этой строки в новом буфере
+     * @throws IOException при ошибке чтения файла
+     */
+    protected abstract int refill(int keepFrom) throws IOException;
+
+}
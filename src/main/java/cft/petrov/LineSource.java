@@ -0,0 +1,41 @@
+package cft.petrov;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Источник строк файла без декодирования строк в String (см. класс InputFileCursor).
+ * Текущая строка задается диапазоном [lineStart(), lineEnd()) буфера buffer().
+ * Файл читается с начала (см. класс LineReader) или с конца (см. класс ReverseLineReader).
+ */
+public interface LineSource extends Closeable {
+
+    /**
+     * Метод перемещается на очередную строку файла.
+     *
+     * @return true, если строка прочитана; false, если файл прочитан целиком
+     * @throws IOException при ошибке чтения файла
+     */
+    boolean next() throws IOException;
+
+    /**
+     * Буфер, в к-м находится текущая строка.
+     */
+    ByteBuffer buffer();
+
+    int lineStart();
+
+    int lineEnd();
+
+    /**
+     * Смещение начала текущей строки от начала (распакованных) данных файла.
+     */
+    long lineOffset();
+
+    /**
+     * Метод декодирует текущую строку из UTF-8 в String.
+     */
+    String lineString();
+
+}
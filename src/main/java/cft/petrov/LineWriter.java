@@ -0,0 +1,27 @@
+package cft.petrov;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Построчная запись результата: в один выходной файл (см. ChannelLineWriter)
+ * или в несколько файлов-сегментов (см. ShardedLineWriter).
+ */
+public interface LineWriter extends Closeable {
+
+    /**
+     * Метод пишет в выход целое число отдельной строкой.
+     */
+    void writeLine(int value) throws IOException;
+
+    /**
+     * Метод пишет в выход 64-битное целое число отдельной строкой.
+     */
+    void writeLine(long value) throws IOException;
+
+    /**
+     * Метод пишет в выход строку.
+     */
+    void writeLine(String line) throws IOException;
+
+}
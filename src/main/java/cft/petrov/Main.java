@@ -1,48 +1,298 @@
 package cft.petrov;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
 import java.util.Comparator;
 import java.util.List;
 
 public class Main {
+    // коды завершения задания
+    static final int EXIT_OK = 0;
+    static final int EXIT_INVALID_ARGS = 1;
+    static final int EXIT_ERRORS = 2;
+
     // -d -i out.txt int.txt int3.txt s.txt e.txt int2.txt q.txt empty.txt s2.txt
     // -s NUL.txt COM.txt com0.txt PRN.txt PRN1.txt LPT5.txt LPT.txt f:.txt ;@.txt *.txt <h>.txt .txt а,2п.ап.txt
     public static void main(String[] args) {
+        if (args.length > 0 && MergeDaemon.isDaemonOption(args[0])) {
+            // JVM остается запущенной и выполняет задания клиентов (см. класс MergeDaemon)
+            MergeDaemon.serve(args);
+            return;
+        }
+        if (args.length > 0 && MergeClient.isClientOption(args[0])) {
+            System.exit(MergeClient.submit(args));
+        }
+        if (args.length > 0 && BatchRunner.isBatchOption(args[0])) {
+            // задания манифеста выполняются одновременно в одной JVM (см. класс BatchRunner)
+            System.exit(BatchRunner.run(args));
+        }
+        System.exit(runJob(args, System.out, System.err));
+    }
+
+    /**
+     * Метод выполняет одно задание сортировки: разбирает аргументы командной строки, сортирует
+     * валидные данные входных файлов и пишет результат. Задание не пользуется общим состоянием,
+     * поэтому демон (см. класс MergeDaemon) выполняет несколько заданий одновременно.
+     *
+     * @param args аргументы командной строки задания
+     * @param out  поток сообщений о ходе работы
+     * @param err  поток сообщений об ошибках в аргументах
+     * @return     код завершения: EXIT_OK, EXIT_INVALID_ARGS или EXIT_ERRORS (были сообщения об ошибках)
+     */
+    static int runJob(String[] args, PrintStream out, PrintStream err) {
+        // статистика запуска (параметр --stats) учитывает и время разбора аргументов
+        RunStats runStats = new RunStats();
+        runStats.start(Phase.ARGS);
 
         ArgsManager argsManager = new ArgsManager(args);
-        ArgsValidator argsValidator = new ArgsValidator(args);
+        ArgsValidator argsValidator = new ArgsValidator(args, err);
 
         if (!argsValidator.isValidArgs()) {
             argsValidator.printArgsHint();
-            return;
+            return EXIT_INVALID_ARGS;
         }
 
         List<String> inputFileNames = argsManager.findAndGetInputFileNames();
-        DataType dataType = argsManager.findAndGetDataType();
-        Comparator<String> comparator = new CustomComparator();
-        InputFilesAnalyzer inputFilesAnalyzer = new InputFilesAnalyzer();
-        List<String> dataToSort = inputFilesAnalyzer.selectValidData(inputFileNames, dataType, comparator);
+        RunOptions runOptions = argsManager.findAndGetRunOptions();
+        String outputFileName = argsManager.findAndGetOutputFileName();
+        runStats.stop(Phase.ARGS);
 
-        if (dataToSort.isEmpty()) {
-            System.out.println("""
-                    ==========================================================
-                    Общий список валидных данных всех входных файлов пуст!
-                    Сортировать нечего!
-                    """);
+        // если результат пишется в стандартный вывод ("-"), сообщения не должны в него попасть
+        PrintStream messages = LineReader.isStandardStream(outputFileName) ? err : out;
+        try (Reporter reporter = new Reporter(runOptions.getReportLevel(), messages,
+                runOptions.getRejectsFileName(), runStats)) {
+            reporter.info("Все аргументы командной строки соответствуют требованиям.\n");
+            DataType dataType = argsManager.findAndGetDataType(reporter);
+            Comparator<String> comparator = new CustomComparator();
+
+            SortMode sortMode = argsManager.findAndGetSortType(reporter);
+
+            try (InputFilesAnalyzer inputFilesAnalyzer = new InputFilesAnalyzer(runOptions, reporter)) {
+                run(inputFileNames, outputFileName, dataType, sortMode, comparator, runOptions,
+                        inputFilesAnalyzer, reporter);
+            }
+            reporter.printSummary();
+            if (runOptions.getStatsFileName() != null) {
+                reporter.writeStats(runOptions.getStatsFileName());
+            }
+            reporter.info("Программа завершила свою работу.\n");
+            return reporter.hasErrors() ? EXIT_ERRORS : EXIT_OK;
+        }
+    }
+
+    /**
+     * Метод выбирает способ сортировки по параметрам запуска и сортирует валидные данные входных файлов.
+     */
+    private static void run(List<String> inputFileNames, String outputFileName, DataType dataType,
+                            SortMode sortMode, Comparator<String> comparator, RunOptions runOptions,
+                            InputFilesAnalyzer inputFilesAnalyzer, Reporter reporter) {
+        // по убыванию файлы сливаются потоком, только если их упорядоченность гарантирована (--presorted):
+        // иначе строки, нарушающие порядок, при чтении с конца отбрасывались бы не те же, что при чтении с начала
+        boolean reversible = sortMode == SortMode.DESC && runOptions.isPresorted()
+                && inputFileNames.stream().allMatch(ReverseLineReader::canRead);
+        boolean streamingMerge = !runOptions.isRangeQuery() && !runOptions.isUnsorted()
+                && (sortMode == SortMode.ASC || reversible)
+                && (runOptions.isStreaming() || runOptions.getLimit() > 0);
+        if (runOptions.getCheckpointInterval() > 0 && !(streamingMerge && sortMode == SortMode.ASC)) {
+            reporter.info("Контрольные точки сохраняются только при потоковом слиянии по возрастанию (--stream).\n");
+        }
+        if (runOptions.getShards() > 1 && LineReader.isStream(outputFileName)) {
+            // сегменты - отдельные файлы рядом с выходным, у потока (канала) их нет
+            reporter.info("При записи в стандартный поток (канал) результат на сегменты не разбивается.\n");
+            runOptions.setShards(1);
+        }
+
+        if (runOptions.isRangeQuery()) {
+            // из упорядоченных файлов читается только диапазон [from, to]
+            new RangeQuery(dataType, sortMode, comparator, runOptions, reporter)
+                    .extractAndWrite(inputFileNames, inputFilesAnalyzer, outputFileName);
+            return;
+        }
+
+        if (runOptions.getLimit() > 0) {
+            if (streamingMerge) {
+                // упорядоченные файлы сливаются потоком и читаются лишь до N-й строки результата
+                mergeStreaming(inputFileNames, outputFileName, dataType, sortMode, comparator, runOptions,
+                        inputFilesAnalyzer, reporter);
+            }
+            else {
+                // в памяти хранятся только N первых в порядке вывода строк
+                new TopNSelector(dataType, sortMode, comparator, runOptions, reporter)
+                        .selectAndWrite(inputFileNames, inputFilesAnalyzer, outputFileName);
+            }
+            return;
+        }
+
+        if (runOptions.isUnsorted()) {
+            // неупорядоченные данные сортируются порциями в пределах бюджета памяти
+            new ExternalMergeSort(dataType, sortMode, comparator, runOptions, reporter)
+                    .sortAndWrite(inputFileNames, inputFilesAnalyzer, outputFileName);
+            return;
+        }
+
+        if (runOptions.isStreaming()) {
+            if (streamingMerge) {
+                mergeStreaming(inputFileNames, outputFileName, dataType, sortMode, comparator, runOptions,
+                        inputFilesAnalyzer, reporter);
+                return;
+            }
+            // входные файлы упорядочены по возрастанию, поэтому по убыванию их можно слить потоком лишь с конца
+            reporter.info(runOptions.isPresorted()
+                    ? "Сжатые файлы и стандартный ввод нельзя читать с конца, данные будут отсортированы по убыванию в памяти.\n"
+                    : "Потоковое слияние по убыванию выполняется только с параметром --presorted, "
+                    + "данные будут отсортированы в памяти.\n");
+        }
+
+        ValidDataManager validDataManager = new ValidDataManager(reporter);
+        if (dataType.isNumeric()) {
+            // целые числа собираются сразу в массив, без промежуточного списка строк
+            reporter.getRunStats().start(Phase.VALIDATE);
+            NumberList numbersToSort = inputFilesAnalyzer.selectValidNumbers(inputFileNames, dataType, comparator);
+            reporter.getRunStats().stop(Phase.VALIDATE);
+            if (reportSelected(numbersToSort.size(), reporter)) {
+                validDataManager.sortAndWriteNumbers(numbersToSort, sortMode, outputFileName, runOptions);
+            }
         }
         else {
-            System.out.printf("""
+            reporter.getRunStats().start(Phase.VALIDATE);
+            List<String> dataToSort = inputFilesAnalyzer.selectValidData(inputFileNames, dataType, comparator);
+            reporter.getRunStats().stop(Phase.VALIDATE);
+            if (reportSelected(dataToSort.size(), reporter)) {
+                validDataManager.sortAndWrite(dataToSort, sortMode, dataType, outputFileName, comparator, runOptions);
+            }
+        }
+    }
+
+    /**
+     * Метод сливает упорядоченные по возрастанию входные файлы потоком, сразу в выходной файл.
+     * По убыванию (с параметром --presorted) файлы читаются с конца (см. класс ReverseLineReader),
+     * контрольные точки при этом не сохраняются.
+     * Если файлов больше, чем сливается за один проход (--fan-in), слияние идет в несколько проходов
+     * (см. класс MultiPassMerger) - тоже без контрольных точек: они описывают позиции во входных файлах.
+     */
+    private static void mergeStreaming(List<String> inputFileNames, String outputFileName, DataType dataType,
+                                       SortMode sortMode, Comparator<String> comparator, RunOptions runOptions,
+                                       InputFilesAnalyzer inputFilesAnalyzer, Reporter reporter) {
+        boolean multiPass = inputFileNames.size() > MultiPassMerger.fanIn(runOptions);
+        MergeCheckpoint checkpoint = null;
+        if (runOptions.getCheckpointInterval() > 0 && sortMode == SortMode.ASC && multiPass) {
+            reporter.info("При слиянии в несколько проходов контрольные точки не сохраняются.\n");
+        }
+        else if (runOptions.getCheckpointInterval() > 0 && sortMode == SortMode.ASC) {
+            try {
+                checkpoint = prepareCheckpoint(inputFileNames, outputFileName, dataType, runOptions, reporter);
+            }
+            catch (IOException e) {
+                reporter.error("Слияние нельзя продолжить с контрольной точки: %s\n", e.getMessage());
+                return;
+            }
+        }
+
+        ShardedLineWriter.Split split = null;
+        if (runOptions.getShards() > 1) {
+            // с --limit число строк результата известно заранее, иначе точки разбиения выбираются по выборке ключей
+            split = runOptions.getLimit() > 0
+                    ? ShardedLineWriter.Split.byCount(runOptions.getLimit(), runOptions.getShards())
+                    : new ShardSampler(dataType, comparator, reporter).sample(inputFileNames, runOptions.getShards());
+            // без выборки ключей (split == null) результат пишется в один файл (см. writeMergedToFile)
+            if (split != null && sortMode == SortMode.DESC) {
+                split = split.reversed();
+            }
+        }
+        try (MultiPassMerger multiPassMerger = new MultiPassMerger(dataType, sortMode, comparator, runOptions, reporter)) {
+            List<DataCursor> cursors;
+            if (multiPass) {
+                // группы входных файлов сливаются во временные файлы, и каждая - лишь до N-й строки (--limit)
+                boolean reversed = sortMode == SortMode.DESC;
+                inputFilesAnalyzer.printCheckStart();
+                cursors = multiPassMerger.reduce(inputFileNames,
+                        fileName -> inputFilesAnalyzer.openCursor(fileName, dataType, comparator, reversed),
+                        runOptions.getLimit() > 0 ? runOptions.getLimit() : Long.MAX_VALUE);
+            }
+            else if (sortMode == SortMode.DESC) {
+                cursors = inputFilesAnalyzer.openReversedCursors(inputFileNames, dataType, comparator);
+            }
+            else if (checkpoint != null && checkpoint.isResumed()) {
+                cursors = inputFilesAnalyzer.resumeCursors(dataType, comparator, checkpoint);
+            }
+            else {
+                cursors = inputFilesAnalyzer.openCursors(inputFileNames, dataType, comparator);
+            }
+            try (KWayMerger merger = new KWayMerger(cursors, dataType, sortMode, comparator, reporter)) {
+                OutputFileWriter outputFileWriter = new OutputFileWriter(reporter, runOptions);
+                if (split != null) {
+                    outputFileWriter.writeMergedToShards(merger, outputFileName, split);
+                }
+                else {
+                    outputFileWriter.writeMergedToFile(merger, outputFileName, checkpoint);
+                }
+            }
+        }
+        catch (IOException e) {
+            reporter.error("""
+                    Ошибка слияния входных файлов во временный файл: %s
+                    Слияние прервано, выходной файл не записан.
+                    """, e.getMessage());
+        }
+    }
+
+    /**
+     * Метод готовит контрольную точку потокового слияния: с параметром --resume читает точку прерванного слияния,
+     * иначе (или если точки нет) - создает новую.
+     *
+     * @return контрольная точка или null, если для выходного файла точки не сохраняются
+     * @throws IOException если точку прерванного слияния не удалось прочитать или по ней нельзя продолжить
+     */
+    private static MergeCheckpoint prepareCheckpoint(List<String> inputFileNames, String outputFileName,
+                                                     DataType dataType, RunOptions runOptions,
+                                                     Reporter reporter) throws IOException {
+        if (LineReader.isGzip(outputFileName)) {
+            // в сжатый файл нельзя дописывать с середины
+            reporter.info("Для сжатого выходного файла контрольные точки не сохраняются.\n");
+            return null;
+        }
+        if (runOptions.getShards() > 1) {
+            reporter.info("При разбиении результата на сегменты (--shards) контрольные точки не сохраняются.\n");
+            return null;
+        }
+        if (LineReader.isStream(outputFileName) || inputFileNames.stream().anyMatch(LineReader::isStream)) {
+            // стандартный ввод / вывод и именованный канал нельзя прочитать или переписать повторно
+            reporter.info("При чтении или записи стандартного потока (канала) контрольные точки не сохраняются.\n");
+            return null;
+        }
+        Path outputPath = Path.of(outputFileName).toAbsolutePath();
+        if (runOptions.isResume()) {
+            MergeCheckpoint checkpoint = MergeCheckpoint.load(outputPath, inputFileNames, dataType);
+            if (checkpoint != null) {
+                return checkpoint;
+            }
+            reporter.info("Контрольная точка не найдена, слияние начинается сначала.\n");
+        }
+        return new MergeCheckpoint(outputPath, inputFileNames, dataType);
+    }
+
+    /**
+     * Метод сообщает, сколько валидных данных отобрано на сортировку.
+     * Сами данные не выводятся: на больших входных файлах это заняло бы больше времени, чем сортировка.
+     *
+     * @return есть ли что сортировать
+     */
+    private static boolean reportSelected(int selectedCount, Reporter reporter) {
+        if (selectedCount == 0) {
+            reporter.info("""
                     ==========================================================
-                    Отобранные на сортировку слиянием данные входных файлов:
-                    %s
-                    """, dataToSort);
-            // Есть что сортировать ? - Достаю режим сортировки и вых. файл
-            SortMode sortMode = argsManager.findAndGetSortType();
-            String outputFileName = argsManager.findAndGetOutputFileName();
+                    Общий список валидных данных всех входных файлов пуст!
+                    Сортировать нечего!
 
-            ValidDataManager validDataManager = new ValidDataManager();
-            validDataManager.sortAndWrite(dataToSort, sortMode, dataType, outputFileName, comparator);
+                    """);
+            return false;
         }
-        System.out.println("Программа завершила свою работу.");
+        reporter.info("""
+                ==========================================================
+                Отобрано на сортировку слиянием строк входных файлов: %d
+                """, selectedCount);
+        return true;
     }
 
 }
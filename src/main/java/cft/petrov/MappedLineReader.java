@@ -0,0 +1,82 @@
+package cft.petrov;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Построчное чтение файла, отображенного в память (FileChannel.map).
+ * Файл отображается окнами по WINDOW_SIZE байт: строки разбираются прямо в отображенной памяти
+ * без копирования в промежуточный буфер символов. Строка, не поместившаяся в окно,
+ * становится началом следующего окна, а строка длиннее окна увеличивает его.
+ */
+public class MappedLineReader extends LineReader {
+    static final int WINDOW_SIZE = 1 << 26;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private long windowStart;  // смещение текущего окна от начала файла
+
+    public MappedLineReader(Path path) throws IOException {
+        this(path, 0);
+    }
+
+    /**
+     * @param path  путь к файлу
+     * @param start смещение от начала файла, с к-го читаются строки (должно быть началом строки)
+     * @throws IOException если файл не удалось открыть
+     */
+    public MappedLineReader(Path path, long start) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.fileSize = channel.size();
+            if (start >= fileSize) {
+                this.windowStart = fileSize;
+                this.buffer = ByteBuffer.allocate(0);
+            }
+            else {
+                this.buffer = map(start, WINDOW_SIZE);
+            }
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    protected long bufferOffset() {
+        return windowStart;
+    }
+
+    @Override
+    protected boolean isLastChunk() {
+        return windowStart + buffer.limit() >= fileSize;
+    }
+
+    @Override
+    protected int refill(int keepFrom) throws IOException {
+        long size = keepFrom == 0 ? 2L * buffer.limit() : WINDOW_SIZE;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Строка файла длиннее " + Integer.MAX_VALUE + " байт");
+        }
+        buffer = map(windowStart + keepFrom, (int) size);
+        return 0;
+    }
+
+    /**
+     * Метод отображает в память окно файла, начиная с позиции start (не дальше конца файла).
+     */
+    private ByteBuffer map(long start, int size) throws IOException {
+        windowStart = start;
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size, fileSize - start));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -0,0 +1,275 @@
+package cft.petrov;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Контрольная точка потокового слияния (параметры --checkpoint и --resume): сколько байт и строк
+ * выходного файла уже записано, а по каждому входному файлу - смещение и номер его текущей,
+ * еще не записанной строки, сама эта строка (последняя принятая курсором), размер и время изменения файла.
+ * Точка сохраняется в текстовый файл "ВЫХФАЙЛ.ckpt" рядом с выходным файлом: сперва выходной файл
+ * сбрасывается на диск (fsync), затем точка пишется во временный файл и атомарно заменяет предыдущую.
+ * Поэтому после сбоя в любой момент точка описывает уже надежно записанную часть выходного файла.
+ * При продолжении выходной файл обрезается до записанной части, курсоры входных файлов открываются
+ * с сохраненных смещений, и слияние дает тот же результат, что и без перерыва.
+ * После успешного окончания слияния файл точки удаляется.
+ */
+public class MergeCheckpoint {
+    static final long DEFAULT_INTERVAL = 1_000_000;
+    private static final String SUFFIX = ".ckpt";
+    private static final String HEADER = "# merge-checkpoint";
+
+    private final Path path;
+    private final List<String> inputFileNames;
+    private final DataType dataType;
+    private final List<FileState> files = new ArrayList<>();
+    private long outputBytes;
+    private long outputLines;
+    private boolean resumed;  // точка прочитана с диска (слияние продолжается)
+
+    /**
+     * Состояние входного файла в контрольной точке.
+     *
+     * @param fileName   имя файла
+     * @param size       размер файла
+     * @param modified   время изменения файла (мс)
+     * @param offset     смещение текущей строки (-1 - файл слит целиком)
+     * @param lineNumber номер текущей строки
+     * @param last       текущая строка - последняя принятая курсором и еще не записанная
+     */
+    record FileState(String fileName, long size, long modified, long offset, long lineNumber, String last) {
+
+        boolean isFinished() {
+            return offset < 0;
+        }
+    }
+
+    /**
+     * Метод возвращает путь к контрольной точке выходного файла ("ВЫХФАЙЛ.ckpt" в том же каталоге).
+     */
+    static Path pathFor(Path outputPath) {
+        return outputPath.resolveSibling(outputPath.getFileName() + SUFFIX);
+    }
+
+    /**
+     * @param outputPath     путь к выходному файлу
+     * @param inputFileNames список имен входных файлов
+     * @param dataType       тип данных, с к-м работает программа
+     */
+    public MergeCheckpoint(Path outputPath, List<String> inputFileNames, DataType dataType) {
+        this.path = pathFor(outputPath);
+        this.inputFileNames = List.copyOf(inputFileNames);
+        this.dataType = dataType;
+    }
+
+    /**
+     * Метод читает контрольную точку прерванного слияния и проверяет, что она относится к тем же
+     * входным файлам и типу данных, а входные файлы с тех пор не изменились.
+     *
+     * @param outputPath     путь к выходному файлу
+     * @param inputFileNames список имен входных файлов
+     * @param dataType       тип данных, с к-м работает программа
+     * @return               контрольная точка или null, если ее нет
+     * @throws IOException если точку не удалось прочитать или слияние по ней продолжить нельзя
+     */
+    public static MergeCheckpoint load(Path outputPath, List<String> inputFileNames, DataType dataType)
+            throws IOException {
+        MergeCheckpoint checkpoint = new MergeCheckpoint(outputPath, inputFileNames, dataType);
+        if (!Files.exists(checkpoint.path)) {
+            return null;
+        }
+        List<String> savedInputs = new ArrayList<>();
+        String savedType = null;
+        try (BufferedReader in = Files.newBufferedReader(checkpoint.path, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(in.readLine())) {
+                throw new IOException("нет заголовка контрольной точки");
+            }
+            String line;
+            while ((line = in.readLine()) != null) {
+                int eq = line.indexOf('=');
+                String key = eq < 0 ? line : line.substring(0, eq);
+                String value = eq < 0 ? "" : line.substring(eq + 1);
+                switch (key) {
+                    case "type" -> savedType = value;
+                    case "output.bytes" -> checkpoint.outputBytes = Long.parseLong(value);
+                    case "output.lines" -> checkpoint.outputLines = Long.parseLong(value);
+                    case "input" -> savedInputs.add(value);
+                    case "file" -> checkpoint.files.add(new FileState(value, Long.parseLong(in.readLine()),
+                            Long.parseLong(in.readLine()), Long.parseLong(in.readLine()),
+                            Long.parseLong(in.readLine()), in.readLine()));
+                    default -> throw new IOException("неизвестная строка контрольной точки: " + line);
+                }
+            }
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("контрольная точка повреждена");
+        }
+        if (!dataType.name().equals(savedType) || !savedInputs.equals(inputFileNames)) {
+            throw new IOException("точка записана для других входных файлов или типа данных");
+        }
+        for (FileState state : checkpoint.files) {
+            Path input = Path.of(state.fileName());
+            if (Files.size(input) != state.size() || Files.getLastModifiedTime(input).toMillis() != state.modified()) {
+                throw new IOException("входной файл " + state.fileName() + " изменился после контрольной точки");
+            }
+        }
+        checkpoint.resumed = true;
+        return checkpoint;
+    }
+
+    /**
+     * Метод сохраняет состояние слияния. Выходной файл к этому моменту должен быть сброшен на диск.
+     *
+     * @param cursors     курсоры входных файлов в порядке слияния
+     * @param pending     есть ли у курсора текущая, еще не записанная строка
+     * @param outputBytes сколько байт выходного файла записано
+     * @param outputLines сколько строк выходного файла записано
+     * @throws IOException если точку не удалось записать
+     */
+    public void save(List<? extends DataCursor> cursors, boolean[] pending, long outputBytes, long outputLines)
+            throws IOException {
+        files.clear();
+        for (int i = 0; i < cursors.size(); i++) {
+            DataCursor cursor = cursors.get(i);
+            Path input = Path.of(cursor.getFileName());
+            files.add(pending[i]
+                    ? new FileState(cursor.getFileName(), Files.size(input),
+                            Files.getLastModifiedTime(input).toMillis(), cursor.currentOffset(),
+                            cursor.currentLineNumber(), cursor.current())
+                    : new FileState(cursor.getFileName(), Files.size(input),
+                            Files.getLastModifiedTime(input).toMillis(), -1, 0, ""));
+        }
+        this.outputBytes = outputBytes;
+        this.outputLines = outputLines;
+
+        StringBuilder text = new StringBuilder(HEADER).append('\n');
+        text.append("type=").append(dataType.name()).append('\n');
+        text.append("output.bytes=").append(outputBytes).append('\n');
+        text.append("output.lines=").append(outputLines).append('\n');
+        for (String inputFileName : inputFileNames) {
+            text.append("input=").append(inputFileName).append('\n');
+        }
+        for (FileState state : files) {
+            // значения состояния файла - по одному на строку: сама строка файла может содержать "="
+            text.append("file=").append(state.fileName()).append('\n')
+                    .append(state.size()).append('\n')
+                    .append(state.modified()).append('\n')
+                    .append(state.offset()).append('\n')
+                    .append(state.lineNumber()).append('\n')
+                    .append(state.last()).append('\n');
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Метод удаляет файл контрольной точки (слияние завершено).
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Метод оборачивает курсор, открытый с сохраненного смещения: первая его строка должна совпасть
+     * с сохраненной текущей строкой файла, иначе смещение не указывает на начало этой строки.
+     */
+    static DataCursor verifying(DataCursor cursor, FileState state) {
+        return new VerifyingCursor(cursor, state);
+    }
+
+    public List<FileState> getFiles() {
+        return files;
+    }
+
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    public long getOutputLines() {
+        return outputLines;
+    }
+
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Курсор, сверяющий свою первую строку с сохраненной в контрольной точке.
+     */
+    private static final class VerifyingCursor implements DataCursor {
+        private final DataCursor cursor;
+        private final FileState state;
+        private boolean verified;
+
+        VerifyingCursor(DataCursor cursor, FileState state) {
+            this.cursor = cursor;
+            this.state = state;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            boolean hasNext = cursor.next();
+            if (!verified) {
+                if (!hasNext || !cursor.current().equals(state.last())) {
+                    throw new IOException("строка " + state.lineNumber() + " файла " + state.fileName()
+                            + " не совпадает с контрольной точкой");
+                }
+                verified = true;
+            }
+            return hasNext;
+        }
+
+        @Override
+        public String current() {
+            return cursor.current();
+        }
+
+        @Override
+        public long currentNumber() {
+            return cursor.currentNumber();
+        }
+
+        @Override
+        public long currentOffset() {
+            return cursor.currentOffset();
+        }
+
+        @Override
+        public long currentLineNumber() {
+            return cursor.currentLineNumber();
+        }
+
+        @Override
+        public String getFileName() {
+            return cursor.getFileName();
+        }
+
+        @Override
+        public void close() throws IOException {
+            cursor.close();
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package cft.petrov;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Клиент демона сортировки (параметр --client): передает задание - остальные аргументы командной строки -
+ * запущенному демону (см. класс MergeDaemon), выводит его сообщения и завершается с кодом завершения задания.
+ * Если демон не запущен, задание выполняется в JVM самого клиента.
+ * Демону, слушающему порт, передается токен из его файла MergeDaemon.TOKEN_FILE в рабочем каталоге.
+ */
+public class MergeClient {
+    static final String OPTION = "--client";
+
+    /**
+     * Метод проверяет, запускает ли аргумент клиента ("--client" или "--client=АДРЕС").
+     */
+    static boolean isClientOption(String arg) {
+        return arg.equals(OPTION) || arg.startsWith(OPTION + "=");
+    }
+
+    /**
+     * Метод читает токен заданий демона, слушающего порт (см. MergeDaemon.createToken).
+     */
+    private static String readToken() throws IOException {
+        return Files.readString(Path.of(MergeDaemon.TOKEN_FILE)).strip();
+    }
+
+    /**
+     * Метод передает задание демону и ждет его завершения.
+     *
+     * @param args аргументы командной строки: "--client[=АДРЕС]" и аргументы задания
+     * @return     код завершения задания (см. Main.runJob)
+     */
+    static int submit(String[] args) {
+        SocketAddress address = MergeDaemon.address(args[0]);
+        String[] jobArgs = Arrays.copyOfRange(args, 1, args.length);
+
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(address);
+        }
+        catch (IOException e) {
+            System.err.printf("Демон сортировки (%s) не запущен, задание выполняется без него.%n", address);
+            return Main.runJob(jobArgs, System.out, System.err);
+        }
+
+        try (channel;
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)))) {
+            out.writeUTF(address instanceof InetSocketAddress ? readToken() : "");
+            out.writeUTF(Path.of("").toAbsolutePath().toString());
+            out.writeInt(jobArgs.length);
+            for (String arg : jobArgs) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+
+            while (true) {
+                byte type = in.readByte();
+                if (type == MergeDaemon.FRAME_EXIT) {
+                    return in.readInt();
+                }
+                byte[] message = new byte[in.readInt()];
+                in.readFully(message);
+                // сообщения выводятся в кодировке консоли клиента
+                (type == MergeDaemon.FRAME_ERR ? System.err : System.out)
+                        .print(new String(message, StandardCharsets.UTF_8));
+            }
+        }
+        catch (NoSuchFileException e) {
+            System.err.printf("Нет файла токена демона %s: демон запущен в другом каталоге или не через порт.%n",
+                    e.getFile());
+            return Main.EXIT_INVALID_ARGS;
+        }
+        catch (EOFException e) {
+            System.err.println("Демон сортировки закрыл соединение, не завершив задание.");
+            return Main.EXIT_ERRORS;
+        }
+        catch (IOException e) {
+            System.err.println("Связь с демоном сортировки прервана: " + e.getMessage());
+            return Main.EXIT_ERRORS;
+        }
+    }
+
+}
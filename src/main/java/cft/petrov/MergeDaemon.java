@@ -0,0 +1,392 @@
+package cft.petrov;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Демон сортировки (параметр --daemon): JVM остается запущенной и выполняет задания клиентов
+ * (см. класс MergeClient), поэтому задания не тратят время на запуск JVM и на прогрев JIT-компилятора.
+ * Демон слушает Unix-сокет (по умолчанию файл ".merge-sort.sock" в рабочем каталоге) или порт на localhost.
+ * Задание - те же аргументы командной строки, что и при обычном запуске (см. Main.runJob).
+ * Задания выполняются одновременно, в пуле из --jobs=N потоков (по умолчанию - по числу процессоров).
+ * У каждого задания свои потоки сообщений, к-е передаются клиенту, и свои файлы, как и у заданий пакета
+ * (см. класс BatchRunner): задание, к-е пишет файл, к-й читает или пишет другое выполняемое задание,
+ * или читает файл, к-й другое задание пишет, отклоняется.
+ * <p>
+ * Задания выполняются с правами пользователя демона, поэтому задания принимаются только от него же.
+ * Файл Unix-сокета доступен только владельцу. Порт на localhost открыт всем локальным пользователям,
+ * поэтому в этом режиме демон создает случайный токен в файле ".merge-sort.token" рабочего каталога,
+ * доступном только владельцу, и отклоняет задания без этого токена.
+ * <p>
+ * Протокол (DataInputStream / DataOutputStream): клиент передает токен (writeUTF, для Unix-сокета - пустой),
+ * рабочий каталог (writeUTF),
+ * кол-во аргументов (writeInt) и сами аргументы (writeUTF); демон отвечает кадрами "тип (byte), длина (int),
+ * байты сообщения в UTF-8" и последним кадром EXIT с кодом завершения задания (int) вместо длины.
+ */
+public class MergeDaemon {
+    static final String OPTION = "--daemon";
+    static final String DEFAULT_SOCKET = ".merge-sort.sock";
+    static final String TOKEN_FILE = ".merge-sort.token";
+    private static final int TOKEN_BYTES = 32;
+    private static final String JOBS_OPTION = "--jobs=";
+    private static final int MAX_ARGS = 1 << 16;
+
+    // типы кадров ответа демона
+    static final byte FRAME_EXIT = 0;
+    static final byte FRAME_OUT = 1;
+    static final byte FRAME_ERR = 2;
+
+    private final SocketAddress address;
+    private final Path workingDir = Path.of("").toAbsolutePath();
+    // выходные файлы выполняемых заданий
+    private final List<BatchRunner.JobFiles> activeJobs = new ArrayList<>();  // файлы выполняемых заданий
+    private final AtomicLong jobCounter = new AtomicLong();
+    private String token;  // токен заданий при работе через порт (null - Unix-сокет)
+
+    private MergeDaemon(SocketAddress address) {
+        this.address = address;
+    }
+
+    /**
+     * Метод проверяет, запускает ли аргумент демона ("--daemon" или "--daemon=АДРЕС").
+     */
+    static boolean isDaemonOption(String arg) {
+        return arg.equals(OPTION) || arg.startsWith(OPTION + "=");
+    }
+
+    /**
+     * Метод возвращает адрес демона по значению параметра --daemon или --client:
+     * номер порта - порт на localhost, иначе путь к Unix-сокету (по умолчанию DEFAULT_SOCKET).
+     */
+    static SocketAddress address(String option) {
+        int eq = option.indexOf('=');
+        String value = eq < 0 ? "" : option.substring(eq + 1);
+        if (value.isEmpty()) {
+            return UnixDomainSocketAddress.of(DEFAULT_SOCKET);
+        }
+        if (value.matches("^[1-9]\\d{0,4}$")) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(value));
+        }
+        return UnixDomainSocketAddress.of(value);
+    }
+
+    /**
+     * Метод запускает демон и выполняет задания клиентов, пока процесс не будет остановлен.
+     *
+     * @param args аргументы командной строки: "--daemon[=АДРЕС]" и, необязательно, "--jobs=N"
+     */
+    static void serve(String[] args) {
+        int jobs = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].matches("^" + JOBS_OPTION + "[1-9]\\d{0,3}$")) {
+                jobs = Integer.parseInt(args[i].substring(JOBS_OPTION.length()));
+            }
+            else {
+                System.err.println("Недопустимый параметр демона " + args[i] + " ! Допустимы --daemon[=АДРЕС] и --jobs=N");
+                return;
+            }
+        }
+        try {
+            new MergeDaemon(address(args[0])).acceptJobs(jobs);
+        }
+        catch (IOException e) {
+            System.err.println("Демон не запущен: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Метод принимает подключения клиентов и передает их задания пулу потоков.
+     */
+    private void acceptJobs(int jobs) throws IOException {
+        ServerSocketChannel server;
+        if (address instanceof UnixDomainSocketAddress socket) {
+            removeStaleSocket(socket.getPath());
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            // файл сокета удаляется при остановке демона
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(socket.getPath());
+                }
+                catch (IOException e) {
+                    // JVM и так завершается
+                }
+            }));
+        }
+        else {
+            server = ServerSocketChannel.open();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(jobs, task -> {
+            Thread thread = new Thread(task, "merge-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (server) {
+            server.bind(address);
+            // токен создается после bind: демон, не занявший порт, не заменяет токен работающего
+            if (address instanceof UnixDomainSocketAddress socket) {
+                setOwnerOnly(socket.getPath());
+            }
+            else {
+                token = createToken();
+            }
+            System.out.printf("Демон сортировки слушает %s (каталог %s, одновременных заданий: %d).%n",
+                    address, workingDir, jobs);
+            while (true) {
+                SocketChannel client = server.accept();
+                executor.execute(() -> handle(client));
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Метод удаляет файл сокета, оставшийся от остановленного демона.
+     *
+     * @throws IOException если по этому сокету уже работает другой демон
+     */
+    private static void removeStaleSocket(Path socket) throws IOException {
+        if (!Files.exists(socket)) {
+            return;
+        }
+        boolean alive;
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+            alive = true;
+        }
+        catch (IOException e) {
+            alive = false;
+        }
+        if (alive) {
+            throw new IOException("по сокету " + socket + " уже работает другой демон");
+        }
+        Files.delete(socket);
+    }
+
+    /**
+     * Метод создает файл со случайным токеном заданий, доступный только владельцу
+     * (файл удаляется при остановке демона).
+     *
+     * @return токен
+     */
+    private static String createToken() throws IOException {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        String token = HexFormat.of().formatHex(bytes);
+
+        Path tokenFile = Path.of(TOKEN_FILE);
+        Files.deleteIfExists(tokenFile);
+        try {
+            Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        catch (UnsupportedOperationException e) {
+            // в файловой системе без прав POSIX (Windows) доступ к файлу определяют права каталога
+            Files.createFile(tokenFile);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                Files.deleteIfExists(tokenFile);
+            }
+            catch (IOException e) {
+                // JVM и так завершается
+            }
+        }));
+        Files.writeString(tokenFile, token);
+        return token;
+    }
+
+    /**
+     * Метод делает файл сокета доступным только владельцу.
+     */
+    private static void setOwnerOnly(Path socket) throws IOException {
+        try {
+            Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+        }
+        catch (UnsupportedOperationException e) {
+            // в файловой системе без прав POSIX доступ к сокету определяют права каталога
+        }
+    }
+
+    /**
+     * Метод читает задание клиента, выполняет его и передает клиенту сообщения и код завершения.
+     */
+    private void handle(SocketChannel client) {
+        long job = jobCounter.incrementAndGet();
+        try (client;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)))) {
+            String clientToken = in.readUTF();
+            String clientDir = in.readUTF();
+            int count = in.readInt();
+            if (count < 0 || count > MAX_ARGS) {
+                throw new IOException("неверное кол-во аргументов " + count);
+            }
+            String[] args = new String[count];
+            for (int i = 0; i < count; i++) {
+                args[i] = in.readUTF();
+            }
+
+            int status;
+            try (PrintStream jobOut = new PrintStream(new FrameOutputStream(out, FRAME_OUT), true, StandardCharsets.UTF_8);
+                 PrintStream jobErr = new PrintStream(new FrameOutputStream(out, FRAME_ERR), true, StandardCharsets.UTF_8)) {
+                try {
+                    status = isAuthorized(clientToken)
+                            ? runJob(clientDir, args, jobOut, jobErr)
+                            : reject(jobErr);
+                }
+                catch (RuntimeException | OutOfMemoryError e) {
+                    // сбой одного задания не останавливает демон и другие задания
+                    jobErr.println("Задание прервано из-за непредвиденной ошибки: " + e);
+                    status = Main.EXIT_ERRORS;
+                }
+            }
+            synchronized (out) {
+                out.writeByte(FRAME_EXIT);
+                out.writeInt(status);
+                out.flush();
+            }
+            System.out.printf("Задание %d %s: код завершения %d%n", job, Arrays.toString(args), status);
+        }
+        catch (EOFException e) {
+            // клиент отключился, не передав задание (н-р, сокет проверял другой запускаемый демон)
+        }
+        catch (IOException e) {
+            System.err.printf("Задание %d: связь с клиентом прервана: %s%n", job, e.getMessage());
+        }
+    }
+
+    /**
+     * Метод проверяет токен задания (при работе через Unix-сокет токен не нужен).
+     */
+    private boolean isAuthorized(String clientToken) {
+        return token == null || MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                clientToken.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Метод отклоняет задание без верного токена.
+     */
+    private int reject(PrintStream err) {
+        err.printf("Задание отклонено: неверный токен (файл %s в каталоге демона %s) !%n", TOKEN_FILE, workingDir);
+        return Main.EXIT_INVALID_ARGS;
+    }
+
+    /**
+     * Метод проверяет, что задание можно выполнить в этом демоне, и выполняет его.
+     */
+    private int runJob(String clientDir, String[] args, PrintStream out, PrintStream err) {
+        // имена файлов задания - относительно рабочего каталога, а он у JVM один
+        if (!workingDir.equals(Path.of(clientDir).toAbsolutePath())) {
+            err.printf("Демон обслуживает каталог %s, а задание отправлено из %s !%n", workingDir, clientDir);
+            return Main.EXIT_INVALID_ARGS;
+        }
+        for (String arg : ArgsManager.withoutOptions(args)) {
+            // стандартные потоки и дескрипторы /dev/fd/N - у процесса клиента, а не демона
+            if (LineReader.isStandardStream(arg) || arg.startsWith("/dev/fd/") || arg.startsWith("/proc/self/")) {
+                err.println("Стандартные потоки и дескрипторы клиента (" + arg + ") демону недоступны !");
+                return Main.EXIT_INVALID_ARGS;
+            }
+        }
+        if (!new ArgsValidator(args, new PrintStream(OutputStream.nullOutputStream())).isValidArgs()) {
+            // ошибки в аргументах и справку выводит само задание
+            return Main.runJob(args, out, err);
+        }
+
+        BatchRunner.JobFiles files = BatchRunner.files(0, String.join(" ", args), args);
+        Path shared = reserve(files);
+        if (shared != null) {
+            err.println("Файл " + shared + " пишет или читает другое задание, задания демона должны быть независимы !");
+            return Main.EXIT_INVALID_ARGS;
+        }
+        try {
+            return Main.runJob(args, out, err);
+        }
+        finally {
+            synchronized (activeJobs) {
+                activeJobs.remove(files);
+            }
+        }
+    }
+
+    /**
+     * Метод занимает файлы задания, если их не пишет и не читает ни одно выполняемое задание
+     * (проверка и занятие атомарны).
+     *
+     * @return файл, общий с выполняемым заданием, или null, если файлы заняты
+     */
+    private Path reserve(BatchRunner.JobFiles files) {
+        synchronized (activeJobs) {
+            for (BatchRunner.JobFiles active : activeJobs) {
+                Path shared = files.sharedWith(active);
+                if (shared != null) {
+                    return shared;
+                }
+            }
+            activeJobs.add(files);
+            return null;
+        }
+    }
+
+    /**
+     * Поток, передающий каждую порцию записанных в него байт клиенту отдельным кадром.
+     * PrintStream кодирует сообщения целыми строками, поэтому кадр содержит только целые символы.
+     */
+    private static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte type;
+
+        FrameOutputStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            // кадры обоих потоков сообщений пишутся в одно соединение
+            synchronized (out) {
+                out.writeByte(type);
+                out.writeInt(len);
+                out.write(b, off, len);
+                out.flush();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,218 @@
+package cft.petrov;
+
+import com.sun.management.UnixOperatingSystemMXBean;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * В классе осуществляется многопроходное слияние: если упорядоченных файлов больше, чем сливается за один проход
+ * (параметр --fan-in, но не больше, чем процесс еще может открыть файлов), соседние файлы сливаются группами
+ * во временные файлы, пока для последнего прохода (см. класс KWayMerger) их не останется не больше fan-in.
+ * Так одновременно открыто не больше fan-in входных файлов, а сравнений на строку - log2(fan-in) на каждом проходе.
+ * <p>
+ * Последний промежуточный проход сливает лишь столько групп, сколько нужно, чтобы в последний проход вошло
+ * ровно fan-in файлов: остальные файлы не переписываются лишний раз.
+ * Группы - соседние по порядку аргументов файлы, поэтому равные строки (н-р, "a1" и "a01") идут в том же порядке,
+ * что и при слиянии за один проход.
+ * Промежуточные файлы удаляются, как только слиты в следующий, и при закрытии объекта.
+ */
+public class MultiPassMerger implements AutoCloseable {
+    static final int DEFAULT_FAN_IN = 512;
+    static final int MIN_FAN_IN = 2;
+    // дескрипторы, оставляемые под выходной файл, индекс, сегменты, сообщения и пр.
+    private static final int RESERVED_FILES = 32;
+
+    private final DataType dataType;
+    private final SortMode sortMode;
+    private final Comparator<String> comparator;
+    private final RunOptions runOptions;
+    private final Reporter reporter;
+
+    private Path tempDir;               // каталог промежуточных файлов (создается при первом проходе)
+    private final List<Path> tempFiles = new ArrayList<>();
+
+    /**
+     * Объект, открывающий курсор исходного файла слияния (н-р, входного файла с проверкой его строк).
+     */
+    @FunctionalInterface
+    public interface Opener {
+
+        /**
+         * @return курсор или null, если файл не удалось открыть (ошибка уже выведена)
+         * @throws IOException если без этого файла результат был бы неполным
+         */
+        DataCursor open(String fileName) throws IOException;
+    }
+
+    /**
+     * Исходный или промежуточный файл слияния.
+     */
+    private record Source(String fileName, boolean temp) {
+    }
+
+    /**
+     * @param dataType   тип данных, с к-м работает программа
+     * @param sortMode   режим сортировки, в к-м упорядочены сливаемые файлы
+     * @param comparator компаратор строк
+     * @param runOptions дополнительные параметры запуска (fan-in, каталог временных файлов и др.)
+     * @param reporter   объект, выводящий сообщения о ходе слияния
+     */
+    public MultiPassMerger(DataType dataType, SortMode sortMode, Comparator<String> comparator,
+                           RunOptions runOptions, Reporter reporter) {
+        this.dataType = dataType;
+        this.sortMode = sortMode;
+        this.comparator = comparator;
+        this.runOptions = runOptions;
+        this.reporter = reporter;
+    }
+
+    /**
+     * Метод возвращает наибольшее кол-во файлов, сливаемых за один проход: значение параметра --fan-in,
+     * но не больше числа дескрипторов, к-е процесс еще может открыть (если JVM его сообщает).
+     */
+    public static int fanIn(RunOptions runOptions) {
+        int fanIn = runOptions.getFanIn();
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof UnixOperatingSystemMXBean os) {
+            long available = os.getMaxFileDescriptorCount() - os.getOpenFileDescriptorCount() - RESERVED_FILES;
+            fanIn = (int) Math.max(MIN_FAN_IN, Math.min(fanIn, available));
+        }
+        return fanIn;
+    }
+
+    /**
+     * Метод сливает файлы группами во временные файлы, пока их не останется не больше fan-in,
+     * и открывает курсоры оставшихся файлов для последнего прохода слияния.
+     *
+     * @param fileNames имена упорядоченных файлов в порядке аргументов
+     * @param opener    объект, открывающий курсоры исходных файлов
+     * @param limit     сколько первых строк результата нужно (Long.MAX_VALUE - все): каждая группа
+     *                  сливается лишь до limit строк, ведь остальные ее строки в результат не попадут
+     * @return          курсоры файлов последнего прохода (в порядке аргументов)
+     * @throws IOException при ошибке чтения или записи промежуточного файла
+     */
+    public List<DataCursor> reduce(List<String> fileNames, Opener opener, long limit) throws IOException {
+        int fanIn = fanIn(runOptions);
+        List<Source> sources = new ArrayList<>();
+        for (String fileName : fileNames) {
+            sources.add(new Source(fileName, false));
+        }
+        if (sources.size() > fanIn) {
+            reporter.info("Файлов для слияния (%d) больше, чем сливается за один проход (%d): "
+                    + "сначала они сливаются группами во временные файлы.\n", sources.size(), fanIn);
+        }
+
+        int pass = 0;
+        while (sources.size() > fanIn) {
+            pass++;
+            List<Source> merged = new ArrayList<>();
+            int i = 0;
+            while (i < sources.size()) {
+                // сколько файлов войдет в следующий проход, если дальше ничего не сливать
+                int remaining = merged.size() + sources.size() - i;
+                if (remaining <= fanIn) {
+                    merged.addAll(sources.subList(i, sources.size()));
+                    break;
+                }
+                // слияние группы из g файлов уменьшает их число на g - 1
+                int group = Math.min(fanIn, Math.min(sources.size() - i, remaining - fanIn + 1));
+                if (group == 1) {
+                    merged.add(sources.get(i++));
+                    continue;
+                }
+                merged.add(mergeGroup(sources.subList(i, i + group), opener, limit, pass));
+                i += group;
+            }
+            sources = merged;
+        }
+        if (pass > 0) {
+            reporter.info("Промежуточных проходов слияния: %d, в последний проход входит файлов: %d.\n",
+                    pass, sources.size());
+        }
+        return openAll(sources, opener);
+    }
+
+    /**
+     * Метод сливает группу файлов в новый промежуточный файл и удаляет слитые промежуточные файлы группы.
+     */
+    private Source mergeGroup(List<Source> group, Opener opener, long limit, int pass) throws IOException {
+        if (tempDir == null) {
+            tempDir = ExternalMergeSort.createTempDirectory(runOptions);
+        }
+        Path tempFile = tempDir.resolve("pass-" + pass + "-" + tempFiles.size() + ".txt");
+        tempFiles.add(tempFile);
+
+        long written;
+        reporter.getRunStats().start(Phase.MERGE);
+        try (KWayMerger merger = new KWayMerger(openAll(group, opener), dataType, sortMode, comparator, reporter);
+             ChannelLineWriter out = ChannelLineWriter.open(tempFile, runOptions)) {
+            written = merger.mergeTo(out, limit);
+        }
+        finally {
+            reporter.getRunStats().stop(Phase.MERGE);
+        }
+        for (Source source : group) {
+            if (source.temp()) {
+                Files.deleteIfExists(Path.of(source.fileName()));
+            }
+        }
+        reporter.detail("Проход %d: файлы %s ... %s (%d шт.) слиты во временный файл %s (%d строк)\n",
+                pass, group.get(0).fileName(), group.get(group.size() - 1).fileName(), group.size(),
+                tempFile, written);
+        return new Source(tempFile.toString(), true);
+    }
+
+    /**
+     * Метод открывает курсоры файлов; если какой-то файл открыть не удалось, уже открытые закрываются.
+     */
+    private List<DataCursor> openAll(List<Source> sources, Opener opener) throws IOException {
+        List<DataCursor> cursors = new ArrayList<>();
+        try {
+            for (Source source : sources) {
+                DataCursor cursor = source.temp() ? openTemp(source.fileName()) : opener.open(source.fileName());
+                if (cursor != null) {
+                    cursors.add(cursor);
+                }
+            }
+        }
+        catch (IOException e) {
+            new KWayMerger(cursors, dataType, sortMode, comparator, reporter).close();
+            throw e;
+        }
+        return cursors;
+    }
+
+    /**
+     * Метод открывает курсор промежуточного файла: он содержит только валидные строки,
+     * упорядоченные в режиме sortMode, поэтому порядок в нем не проверяется.
+     */
+    private DataCursor openTemp(String fileName) throws IOException {
+        // файл читается потоком, как и серии внешней сортировки (см. ExternalMergeSort.openRun)
+        LineReader reader = new StreamLineReader(Files.newInputStream(Path.of(fileName)));
+        return InputFileCursor.open(reader, fileName, dataType, comparator, false, reporter);
+    }
+
+    /**
+     * Метод удаляет промежуточные файлы и их каталог.
+     */
+    @Override
+    public void close() {
+        try {
+            for (Path tempFile : tempFiles) {
+                Files.deleteIfExists(tempFile);
+            }
+            if (tempDir != null) {
+                Files.deleteIfExists(tempDir);
+            }
+        }
+        catch (IOException e) {
+            reporter.error("Не удалось удалить временные файлы из каталога %s: %s\n", tempDir, e);
+        }
+    }
+
+}
@@ -0,0 +1,297 @@
+package cft.petrov;
+
+import java.util.Comparator;
+
+/**
+ * В классе осуществляется естественная (адаптивная) сортировка слиянием: массив не делится до отдельных эл-ов,
+ * а сливаются уже упорядоченные серии, найденные в самом массиве (как в TimSort).
+ * Массив на сортировку в памяти - склейка упорядоченных по возрастанию входных файлов, поэтому
+ * для k файлов сортировка делает лишь log2(k) проходов слияния - O(n log k), а для одного файла - O(n)
+ * без выделения буфера.
+ * <p>
+ * Серия - участок массива, упорядоченный по возрастанию или по убыванию. Серия в обратном режиму сортировки
+ * порядке разворачивается на месте, так что по убыванию упорядоченные по возрастанию файлы не пересортировываются.
+ * Серии короче MIN_RUN дополняются до MIN_RUN эл-ов сортировкой вставками (н-р, в неупорядоченных данных).
+ * Затем соседние серии попарно сливаются (см. IntegerMergeSort.sortArray), а если серии уже идут
+ * в нужном порядке, они просто копируются.
+ * Сортировка устойчива: при развороте серии строк равные эл-ты возвращаются в исходный порядок.
+ */
+public class NaturalMergeSort {
+    // мин. длина серии перед слиянием
+    static final int MIN_RUN = IntegerMergeSort.INSERTION_SORT_THRESHOLD;
+
+    /**
+     * Метод сортирует массив целых чисел.
+     *
+     * @param intArr   массив валидных строк вх. файлов
+     * @param sortMode режим сортировки
+     */
+    void sortIntArray(int[] intArr, SortMode sortMode) {
+        sortIntArray(intArr, intArr.length, sortMode);
+    }
+
+    /**
+     * Метод сортирует первые length эл-ов массива целых чисел (н-р, неполную порцию внешней сортировки).
+     */
+    void sortIntArray(int[] intArr, int length, SortMode sortMode) {
+        if (length < 2) {
+            return;
+        }
+        // границы серий: серия r - [bounds[r], bounds[r + 1]), все серии кроме последней не короче MIN_RUN
+        int[] bounds = new int[length / MIN_RUN + 2];
+        int runs = 0;
+        for (int start = 0; start < length; ) {
+            int end = start + 1;
+            if (end < length) {
+                boolean ascending = intArr[start] <= intArr[end];
+                while (end < length && (ascending ? intArr[end - 1] <= intArr[end] : intArr[end - 1] >= intArr[end])) {
+                    end++;
+                }
+                if (ascending != (sortMode == SortMode.ASC)) {
+                    // равные числа неразличимы, поэтому серию можно развернуть целиком
+                    reverse(intArr, start, end);
+                }
+            }
+            if (end - start < MIN_RUN) {
+                end = Math.min(start + MIN_RUN, length);
+                IntegerMergeSort.insertionSort(intArr, start, end, sortMode);
+            }
+            bounds[runs++] = start;
+            start = end;
+        }
+        bounds[runs] = length;
+        if (runs == 1) {
+            return;
+        }
+
+        int[] src = intArr;
+        int[] dst = new int[length];
+        while (runs > 1) {
+            int merged = 0;
+            for (int r = 0; r < runs; r += 2) {
+                int left = bounds[r];
+                int mid = bounds[r + 1];
+                int right = r + 2 <= runs ? bounds[r + 2] : mid;
+                if (mid == right || (sortMode == SortMode.ASC ? src[mid - 1] <= src[mid] : src[mid - 1] >= src[mid])) {
+                    // последняя непарная серия или две серии, уже идущие в нужном порядке
+                    System.arraycopy(src, left, dst, left, right - left);
+                }
+                else {
+                    IntegerMergeSort.sortArray(src, left, mid, src, mid, right, dst, left, sortMode);
+                }
+                bounds[merged++] = left;
+            }
+            bounds[merged] = length;
+            runs = merged;
+            int[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+        if (src != intArr) {
+            System.arraycopy(src, 0, intArr, 0, length);
+        }
+    }
+
+    /**
+     * Метод сортирует массив 64-битных целых чисел (см. sortIntArray).
+     */
+    void sortLongArray(long[] longArr, SortMode sortMode) {
+        sortLongArray(longArr, longArr.length, sortMode);
+    }
+
+    /**
+     * Метод сортирует первые length эл-ов массива 64-битных целых чисел.
+     */
+    void sortLongArray(long[] longArr, int length, SortMode sortMode) {
+        if (length < 2) {
+            return;
+        }
+        int[] bounds = new int[length / MIN_RUN + 2];
+        int runs = 0;
+        for (int start = 0; start < length; ) {
+            int end = start + 1;
+            if (end < length) {
+                boolean ascending = longArr[start] <= longArr[end];
+                while (end < length
+                        && (ascending ? longArr[end - 1] <= longArr[end] : longArr[end - 1] >= longArr[end])) {
+                    end++;
+                }
+                if (ascending != (sortMode == SortMode.ASC)) {
+                    reverse(longArr, start, end);
+                }
+            }
+            if (end - start < MIN_RUN) {
+                end = Math.min(start + MIN_RUN, length);
+                IntegerMergeSort.insertionSort(longArr, start, end, sortMode);
+            }
+            bounds[runs++] = start;
+            start = end;
+        }
+        bounds[runs] = length;
+        if (runs == 1) {
+            return;
+        }
+
+        long[] src = longArr;
+        long[] dst = new long[length];
+        while (runs > 1) {
+            int merged = 0;
+            for (int r = 0; r < runs; r += 2) {
+                int left = bounds[r];
+                int mid = bounds[r + 1];
+                int right = r + 2 <= runs ? bounds[r + 2] : mid;
+                if (mid == right || (sortMode == SortMode.ASC ? src[mid - 1] <= src[mid] : src[mid - 1] >= src[mid])) {
+                    System.arraycopy(src, left, dst, left, right - left);
+                }
+                else {
+                    IntegerMergeSort.sortArray(src, left, mid, src, mid, right, dst, left, sortMode);
+                }
+                bounds[merged++] = left;
+            }
+            bounds[merged] = length;
+            runs = merged;
+            long[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+        if (src != longArr) {
+            System.arraycopy(src, 0, longArr, 0, length);
+        }
+    }
+
+    /**
+     * Метод сортирует массив строк (см. sortIntArray).
+     *
+     * @param stringArr  массив валидных строк вх. файлов
+     * @param sortMode   режим сортировки
+     * @param comparator компаратор строк
+     */
+    void sortStringArray(String[] stringArr, SortMode sortMode, Comparator<String> comparator) {
+        int length = stringArr.length;
+        if (length < 2) {
+            return;
+        }
+        int[] bounds = new int[length / MIN_RUN + 2];
+        int runs = 0;
+        for (int start = 0; start < length; ) {
+            int end = start + 1;
+            if (end < length) {
+                boolean ascending = comparator.compare(stringArr[start], stringArr[end]) <= 0;
+                while (end < length) {
+                    int order = comparator.compare(stringArr[end - 1], stringArr[end]);
+                    if (ascending ? order > 0 : order < 0) {
+                        break;
+                    }
+                    end++;
+                }
+                if (ascending != (sortMode == SortMode.ASC)) {
+                    reverseStable(stringArr, start, end, comparator);
+                }
+            }
+            if (end - start < MIN_RUN) {
+                end = Math.min(start + MIN_RUN, length);
+                StringMergeSort.insertionSort(stringArr, start, end, sortMode, comparator);
+            }
+            bounds[runs++] = start;
+            start = end;
+        }
+        bounds[runs] = length;
+        if (runs == 1) {
+            return;
+        }
+
+        String[] src = stringArr;
+        String[] dst = new String[length];
+        while (runs > 1) {
+            int merged = 0;
+            for (int r = 0; r < runs; r += 2) {
+                int left = bounds[r];
+                int mid = bounds[r + 1];
+                int right = r + 2 <= runs ? bounds[r + 2] : mid;
+                int order = mid == right ? 0 : comparator.compare(src[mid - 1], src[mid]);
+                if (mid == right || (sortMode == SortMode.ASC ? order <= 0 : order >= 0)) {
+                    System.arraycopy(src, left, dst, left, right - left);
+                }
+                else {
+                    StringMergeSort.sortArray(src, left, mid, src, mid, right, dst, left, sortMode, comparator);
+                }
+                bounds[merged++] = left;
+            }
+            bounds[merged] = length;
+            runs = merged;
+            String[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+        if (src != stringArr) {
+            System.arraycopy(src, 0, stringArr, 0, length);
+        }
+    }
+
+    /**
+     * Метод проверяет, что первые length эл-ов массива - не больше maxRuns серий, упорядоченных по возрастанию
+     * (так устроена склейка упорядоченных входных файлов). Просмотр прекращается, как только серий становится больше.
+     */
+    static boolean hasAtMostRuns(int[] intArr, int length, int maxRuns) {
+        int runs = 1;
+        for (int i = 1; i < length; i++) {
+            if (intArr[i] < intArr[i - 1] && ++runs > maxRuns) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Метод проверяет, что первые length эл-ов массива - не больше maxRuns серий (см. hasAtMostRuns(int[], ...)).
+     */
+    static boolean hasAtMostRuns(long[] longArr, int length, int maxRuns) {
+        int runs = 1;
+        for (int i = 1; i < length; i++) {
+            if (longArr[i] < longArr[i - 1] && ++runs > maxRuns) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void reverse(int[] intArr, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int swap = intArr[i];
+            intArr[i] = intArr[j];
+            intArr[j] = swap;
+        }
+    }
+
+    private static void reverse(long[] longArr, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            long swap = longArr[i];
+            longArr[i] = longArr[j];
+            longArr[j] = swap;
+        }
+    }
+
+    private static void reverse(String[] stringArr, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            String swap = stringArr[i];
+            stringArr[i] = stringArr[j];
+            stringArr[j] = swap;
+        }
+    }
+
+    /**
+     * Метод разворачивает серию строк, сохраняя исходный порядок равных строк (н-р, "a1" и "a01"):
+     * после разворота серии каждая группа равных строк разворачивается обратно.
+     */
+    private static void reverseStable(String[] stringArr, int from, int to, Comparator<String> comparator) {
+        reverse(stringArr, from, to);
+        int groupStart = from;
+        for (int i = from + 1; i <= to; i++) {
+            if (i == to || comparator.compare(stringArr[i - 1], stringArr[i]) != 0) {
+                reverse(stringArr, groupStart, i);
+                groupStart = i;
+            }
+        }
+    }
+
+}
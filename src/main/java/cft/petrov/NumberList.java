@@ -0,0 +1,101 @@
+package cft.petrov;
+
+import java.util.Arrays;
+
+/**
+ * Растущий массив валидных чисел входных файлов (см. InputFilesAnalyzer.selectValidNumbers).
+ * Числа типа INTEGER хранятся в массиве int[], а не long[], - вдвое меньше памяти.
+ * Массив сортируется и пишется в выходной файл на месте, по первым size() эл-там (см. ValidDataManager),
+ * поэтому копия точной длины не создается.
+ */
+public class NumberList {
+    // начальная емкость массива (дальше она удваивается)
+    static final int INITIAL_CAPACITY = 1 << 10;
+
+    private final DataType dataType;
+    private int[] ints;    // числа типа INTEGER
+    private long[] longs;  // числа типа LONG
+    private int size;
+
+    public NumberList(DataType dataType) {
+        this(dataType, INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param dataType целочисленный тип данных
+     * @param capacity начальная емкость массива
+     */
+    public NumberList(DataType dataType, int capacity) {
+        this.dataType = dataType;
+        if (dataType == DataType.INTEGER) {
+            ints = new int[capacity];
+        }
+        else {
+            longs = new long[capacity];
+        }
+    }
+
+    public void add(long value) {
+        if (size == capacity()) {
+            grow(Math.max(2 * size, 1));
+        }
+        if (ints != null) {
+            ints[size++] = (int) value;  // курсор отбирает для INTEGER только числа в пределах int
+        }
+        else {
+            longs[size++] = value;
+        }
+    }
+
+    /**
+     * Метод дописывает в конец массива числа другого массива того же типа.
+     */
+    public void addAll(NumberList other) {
+        if (capacity() - size < other.size) {
+            grow(Math.addExact(size, other.size));
+        }
+        if (ints != null) {
+            System.arraycopy(other.ints, 0, ints, size, other.size);
+        }
+        else {
+            System.arraycopy(other.longs, 0, longs, size, other.size);
+        }
+        size += other.size;
+    }
+
+    private int capacity() {
+        return ints != null ? ints.length : longs.length;
+    }
+
+    private void grow(int capacity) {
+        if (ints != null) {
+            ints = Arrays.copyOf(ints, capacity);
+        }
+        else {
+            longs = Arrays.copyOf(longs, capacity);
+        }
+    }
+
+    public DataType getDataType() {
+        return dataType;
+    }
+
+    /**
+     * Массив чисел типа INTEGER (заполнены первые size() эл-ов) или null для типа LONG.
+     */
+    public int[] getInts() {
+        return ints;
+    }
+
+    /**
+     * Массив чисел типа LONG (заполнены первые size() эл-ов) или null для типа INTEGER.
+     */
+    public long[] getLongs() {
+        return longs;
+    }
+
+    public int size() {
+        return size;
+    }
+
+}
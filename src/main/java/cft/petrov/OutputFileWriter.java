@@ -1,41 +1,518 @@
 package cft.petrov;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InterruptedIOException;
 import java.nio.file.AccessDeniedException;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
 
 /**
  * В классе осуществляется запись отсортированного массива валидных данных в выходной файл.
+ * Запись идет через ChannelLineWriter: числа форматируются прямо в байты, без создания строк.
+ * С параметром --index рядом с выходным файлом пишется его разреженный индекс (см. класс SparseIndex).
+ * С параметром --shards результат пишется в N файлов-сегментов с непересекающимися диапазонами ключей
+ * и манифест сегментов (см. классы ShardManifest и ShardedLineWriter).
  */
 public class OutputFileWriter {
 
+    private final Reporter reporter;
+    private final RunOptions runOptions;
+
+    /**
+     * @param reporter   объект, выводящий сообщения о записи
+     * @param runOptions дополнительные параметры запуска (размер буфера и режим записи)
+     */
+    public OutputFileWriter(Reporter reporter, RunOptions runOptions) {
+        this.reporter = reporter;
+        this.runOptions = runOptions;
+    }
+
     public <T> void writeArrayToFile(T[] arrayToWrite, String outputFileName) {
-        Path path = Path.of(outputFileName).toAbsolutePath();
+        if (runOptions.getShards() > 1) {
+            // строки с равными ключами ("a1" и "a01") не разделяются между сегментами
+            Comparator<String> comparator = new CustomComparator();
+            writeShards(outputFileName, arrayToWrite.length,
+                    i -> comparator.compare(arrayToWrite[i - 1].toString(), arrayToWrite[i].toString()) == 0,
+                    i -> arrayToWrite[i].toString(), (out, from, to) -> writeLines(out, arrayToWrite, from, to));
+            return;
+        }
+        Path path = outputPath(outputFileName);
 
-        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
-            for (T i : arrayToWrite) {
-                out.write(i.toString());
-                out.newLine();
-            }
+        reporter.getRunStats().start(Phase.WRITE);
+        try (ChannelLineWriter out = openOutput(path)) {
+            writeLines(out, arrayToWrite, arrayToWrite.length);
+            reporter.getRunStats().countOutput(outputFileName, arrayToWrite.length);
 
-            System.out.printf("""
+            reporter.info("""
                     Элементы массива записаны в файл %s
 
                     """, path);
+            reportIndex(out);
+        }
+        catch (IOException e) {
+            printWriteError(e, outputFileName);
+        }
+        finally {
+            reporter.getRunStats().stop(Phase.WRITE);
+        }
+    }
+
+    /**
+     * Метод пишет в выходной файл массив целых чисел, не создавая для них объектов-оберток.
+     *
+     * @param arrayToWrite   отсортированный массив
+     * @param outputFileName имя выходного файла
+     */
+    public void writeIntArrayToFile(int[] arrayToWrite, String outputFileName) {
+        writeIntArrayToFile(arrayToWrite, arrayToWrite.length, outputFileName);
+    }
+
+    /**
+     * Метод пишет в выходной файл первые length эл-ов массива (н-р, неполную порцию внешней сортировки).
+     */
+    public void writeIntArrayToFile(int[] arrayToWrite, int length, String outputFileName) {
+        if (runOptions.getShards() > 1) {
+            writeShards(outputFileName, length, i -> arrayToWrite[i - 1] == arrayToWrite[i],
+                    i -> Integer.toString(arrayToWrite[i]), (out, from, to) -> writeLines(out, arrayToWrite, from, to));
+            return;
+        }
+        Path path = outputPath(outputFileName);
+
+        reporter.getRunStats().start(Phase.WRITE);
+        try (ChannelLineWriter out = openOutput(path)) {
+            writeLines(out, arrayToWrite, length);
+            reporter.getRunStats().countOutput(outputFileName, length);
+
+            reporter.info("""
+                    Элементы массива записаны в файл %s
+
+                    """, path);
+            reportIndex(out);
+        }
+        catch (IOException e) {
+            printWriteError(e, outputFileName);
+        }
+        finally {
+            reporter.getRunStats().stop(Phase.WRITE);
+        }
+    }
+
+    /**
+     * Метод пишет в выходной файл массив 64-битных целых чисел.
+     *
+     * @param arrayToWrite   отсортированный массив
+     * @param outputFileName имя выходного файла
+     */
+    public void writeLongArrayToFile(long[] arrayToWrite, String outputFileName) {
+        writeLongArrayToFile(arrayToWrite, arrayToWrite.length, outputFileName);
+    }
+
+    /**
+     * Метод пишет в выходной файл первые length эл-ов массива (см. writeIntArrayToFile(int[], int, String)).
+     */
+    public void writeLongArrayToFile(long[] arrayToWrite, int length, String outputFileName) {
+        if (runOptions.getShards() > 1) {
+            writeShards(outputFileName, length, i -> arrayToWrite[i - 1] == arrayToWrite[i],
+                    i -> Long.toString(arrayToWrite[i]), (out, from, to) -> writeLines(out, arrayToWrite, from, to));
+            return;
+        }
+        Path path = outputPath(outputFileName);
+
+        reporter.getRunStats().start(Phase.WRITE);
+        try (ChannelLineWriter out = openOutput(path)) {
+            writeLines(out, arrayToWrite, length);
+            reporter.getRunStats().countOutput(outputFileName, length);
+
+            reporter.info("""
+                    Элементы массива записаны в файл %s
+
+                    """, path);
+            reportIndex(out);
+        }
+        catch (IOException e) {
+            printWriteError(e, outputFileName);
+        }
+        finally {
+            reporter.getRunStats().stop(Phase.WRITE);
+        }
+    }
+
+    /**
+     * Метод пишет в выходной файл результат потокового слияния входных файлов
+     * (не больше первых N строк, если задан параметр --limit).
+     *
+     * @param merger         объект, сливающий валидные строки входных файлов
+     * @param outputFileName имя выходного файла
+     */
+    public void writeMergedToFile(KWayMerger merger, String outputFileName) {
+        writeMergedToFile(merger, outputFileName, null);
+    }
+
+    /**
+     * Метод пишет в выходной файл результат потокового слияния, сохраняя контрольные точки
+     * через каждые N строк (параметр --checkpoint). Если точка прочитана с диска (параметр --resume),
+     * выходной файл дописывается с нее. После успешного слияния файл точки удаляется.
+     *
+     * @param merger         объект, сливающий валидные строки входных файлов
+     * @param outputFileName имя выходного файла
+     * @param checkpoint     контрольная точка (null - точки не сохраняются)
+     */
+    public void writeMergedToFile(KWayMerger merger, String outputFileName, MergeCheckpoint checkpoint) {
+        if (runOptions.getShards() > 1) {
+            reporter.info("Точки разбиения на сегменты не выбрать заранее: результат записывается в один файл.\n");
+        }
+        Path path = outputPath(outputFileName);
+        boolean resumed = checkpoint != null && checkpoint.isResumed();
+        long writtenBefore = resumed ? checkpoint.getOutputLines() : 0;
+        boolean completed = false;
+
+        reporter.getRunStats().start(Phase.MERGE);
+        try (ChannelLineWriter out = resumed
+                ? ChannelLineWriter.openAt(path, runOptions, checkpoint.getOutputBytes())
+                : openOutput(path)) {
+            if (resumed) {
+                reporter.info("Слияние продолжается с контрольной точки: в выходном файле уже %d строк.\n",
+                        writtenBefore);
+                if (runOptions.getIndexInterval() > 0) {
+                    reporter.info("При продолжении слияния разреженный индекс не записывается.\n");
+                }
+            }
+            long limit = runOptions.getLimit() > 0
+                    ? Math.max(0, runOptions.getLimit() - writtenBefore)
+                    : Long.MAX_VALUE;
+            long written = writtenBefore + (checkpoint == null
+                    ? merger.mergeTo(out, limit)
+                    : merger.mergeTo(out, limit, runOptions.getCheckpointInterval(), (cursors, pending, lines) -> {
+                        reporter.getRunStats().start(Phase.CHECKPOINT);
+                        try {
+                            // точка описывает только ту часть выходного файла, к-я уже надежно записана
+                            out.sync();
+                            checkpoint.save(cursors, pending, out.position(), writtenBefore + lines);
+                        }
+                        finally {
+                            reporter.getRunStats().stop(Phase.CHECKPOINT);
+                        }
+                    }));
+            reporter.getRunStats().countOutput(outputFileName, written);
+
+            reporter.info("""
+                    Слитые строки входных файлов (%d шт.) записаны в файл %s
+
+                    """, written, path);
+            if (written == runOptions.getLimit()) {
+                reporter.info("Достигнут предел --limit=%d: дальше входные файлы не читались.\n", written);
+            }
+            reportIndex(out);
+            completed = true;
+        }
+        catch (IOException e) {
+            printWriteError(e, outputFileName);
+            if (checkpoint != null) {
+                reporter.error("Слияние можно продолжить с последней контрольной точки (параметр --resume).\n");
+            }
+        }
+        finally {
+            reporter.getRunStats().stop(Phase.MERGE);
+        }
+        if (completed && checkpoint != null) {
+            try {
+                checkpoint.delete();
+            }
+            catch (IOException e) {
+                reporter.error("Не удалось удалить файл контрольной точки %s: %s\n", checkpoint.getPath(),
+                        e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Метод пишет результат потокового слияния в N файлов-сегментов (параметр --shards)
+     * и их манифест (не больше первых N строк, если задан параметр --limit).
+     *
+     * @param merger         объект, сливающий валидные строки входных файлов
+     * @param outputFileName имя выходного файла (по нему строятся имена сегментов)
+     * @param split          точки разбиения на сегменты
+     */
+    public void writeMergedToShards(KWayMerger merger, String outputFileName, ShardedLineWriter.Split split) {
+        Path path = outputPath(outputFileName);
+        ShardedLineWriter out = new ShardedLineWriter(path, runOptions.getShards(), split, this::openOutput);
+
+        reporter.getRunStats().start(Phase.MERGE);
+        try {
+            long written = runOptions.getLimit() > 0
+                    ? merger.mergeTo(out, runOptions.getLimit())
+                    : merger.mergeTo(out);
+            out.close();
+            reporter.getRunStats().countOutput(outputFileName, written);
+            reportShards(written, path);
+            if (written == runOptions.getLimit()) {
+                reporter.info("Достигнут предел --limit=%d: дальше входные файлы не читались.\n", written);
+            }
+        }
+        catch (IOException e) {
+            try {
+                out.abort();
+            }
+            catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            printWriteError(e, outputFileName);
+        }
+        finally {
+            reporter.getRunStats().stop(Phase.MERGE);
+        }
+    }
+
+    /**
+     * Метод пишет отсортированный массив в N файлов-сегментов (параметр --shards) и их манифест.
+     * Массив делится по точному числу эл-ов на N частей (граница части сдвигается за эл-ты с тем же ключом,
+     * чтобы диапазоны сегментов не пересекались), и каждая часть пишется в свой сегмент в отдельном потоке.
+     *
+     * @param outputFileName    имя выходного файла (по нему строятся имена сегментов)
+     * @param length            длина массива
+     * @param sameKeyAsPrevious равен ли ключ эл-та с индексом i ключу предыдущего эл-та
+     * @param keyAt             ключ эл-та с индексом i (для манифеста)
+     * @param slices            запись части массива в сегмент
+     */
+    private void writeShards(String outputFileName, int length, IntPredicate sameKeyAsPrevious,
+                             IntFunction<String> keyAt, SliceWriter slices) {
+        Path path = outputPath(outputFileName);
+        int shards = runOptions.getShards();
+        int[] bounds = new int[shards + 1];
+        bounds[shards] = length;
+        for (int shard = 1; shard < shards; shard++) {
+            int bound = Math.max(bounds[shard - 1], (int) ((long) length * shard / shards));
+            while (bound > 0 && bound < length && sameKeyAsPrevious.test(bound)) {
+                bound++;
+            }
+            bounds[shard] = bound;
+        }
+
+        reporter.getRunStats().start(Phase.WRITE);
+        ExecutorService executor = Executors.newFixedThreadPool(shards, task -> {
+            Thread thread = new Thread(task, "shard-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // сегменты открываются по очереди (сообщения об индексах не перемешиваются), а пишутся параллельно
+            List<ChannelLineWriter> outs = new ArrayList<>();
+            try {
+                for (int shard = 0; shard < shards; shard++) {
+                    outs.add(openOutput(ShardManifest.shardPath(path, shard, shards)));
+                }
+            }
+            catch (IOException e) {
+                for (ChannelLineWriter out : outs) {
+                    try {
+                        out.close();
+                    }
+                    catch (IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                }
+                throw e;
+            }
+            List<Future<?>> writes = new ArrayList<>();
+            for (int shard = 0; shard < shards; shard++) {
+                ChannelLineWriter shardOut = outs.get(shard);
+                int from = bounds[shard];
+                int to = bounds[shard + 1];
+                writes.add(executor.submit(() -> {
+                    try (shardOut) {
+                        slices.write(shardOut, from, to);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> write : writes) {
+                await(write);
+            }
+
+            ShardManifest manifest = new ShardManifest();
+            for (int shard = 0; shard < shards; shard++) {
+                int from = bounds[shard];
+                int to = bounds[shard + 1];
+                manifest.add(ShardManifest.shardPath(path, shard, shards), to - from,
+                        from < to ? keyAt.apply(from) : null, from < to ? keyAt.apply(to - 1) : null);
+            }
+            manifest.write(ShardManifest.pathFor(path));
+            reporter.getRunStats().countOutput(outputFileName, length);
+            reportShards(length, path);
         }
-        catch (AccessDeniedException e) {
-            System.out.printf("""
+        catch (IOException e) {
+            printWriteError(e, outputFileName);
+        }
+        finally {
+            executor.shutdownNow();
+            reporter.getRunStats().stop(Phase.WRITE);
+        }
+    }
+
+    /**
+     * Метод ждет окончания записи сегмента и пробрасывает ее ошибку.
+     */
+    private static void await(Future<?> write) throws IOException {
+        try {
+            write.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Запись сегментов прервана");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Ошибка при записи сегмента", e.getCause());
+        }
+    }
+
+    /**
+     * Метод сообщает о записанных сегментах и их манифесте.
+     */
+    private void reportShards(long written, Path path) {
+        int shards = runOptions.getShards();
+        reporter.info("""
+                Строки результата (%d шт.) записаны в файлы-сегменты (%d шт.): %s ... %s
+                Границы ключей сегментов перечислены в манифесте %s
+
+                """, written, shards, ShardManifest.shardPath(path, 0, shards).getFileName(),
+                ShardManifest.shardPath(path, shards - 1, shards).getFileName(), ShardManifest.pathFor(path));
+    }
+
+    /**
+     * Метод открывает выходной файл на запись и, если задан параметр --index, подключает к нему разреженный индекс.
+     * Смещения строк сжатого файла не позволяют перейти к строке без распаковки, поэтому для него индекс не пишется
+     * (как и для стандартного вывода или именованного канала: их нельзя читать повторно).
+     */
+    private ChannelLineWriter openOutput(Path path) throws IOException {
+        ChannelLineWriter out = ChannelLineWriter.open(path, runOptions);
+        if (runOptions.getIndexInterval() > 0) {
+            if (LineReader.isGzip(path.toString())) {
+                reporter.info("Для сжатого выходного файла разреженный индекс не записывается.\n");
+            }
+            else if (LineReader.isStream(path.toString())) {
+                reporter.info("Для стандартного вывода и именованного канала разреженный индекс не записывается.\n");
+            }
+            else {
+                try {
+                    out.setIndex(new SparseIndexWriter(SparseIndex.pathFor(path), runOptions.getIndexInterval()));
+                }
+                catch (IOException e) {
+                    out.close();
+                    throw e;
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Метод возвращает путь к выходному файлу: абсолютный путь или "-" для стандартного вывода.
+     */
+    static Path outputPath(String outputFileName) {
+        Path path = Path.of(outputFileName);
+        return LineReader.isStandardStream(outputFileName) ? path : path.toAbsolutePath();
+    }
+
+    /**
+     * Метод сообщает, записан ли разреженный индекс выходного файла.
+     */
+    private void reportIndex(ChannelLineWriter out) {
+        SparseIndexWriter index = out.getIndex();
+        if (index == null) {
+            return;
+        }
+        if (index.isAscending()) {
+            reporter.info("""
+                    Разреженный индекс (каждая %d-я строка) записан в файл %s
+
+                    """, index.getInterval(), index.getPath());
+        }
+        else {
+            reporter.info("Выходной файл не упорядочен по возрастанию: разреженный индекс не записан.\n");
+        }
+    }
+
+    /**
+     * Метод пишет первые length эл-ов массива в выходной поток, по одному эл-ту на строку.
+     */
+    static <T> void writeLines(LineWriter out, T[] arrayToWrite, int length) throws IOException {
+        writeLines(out, arrayToWrite, 0, length);
+    }
+
+    /**
+     * Метод пишет эл-ты массива с индексами [from, to) в выходной поток, по одному эл-ту на строку.
+     */
+    static <T> void writeLines(LineWriter out, T[] arrayToWrite, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            out.writeLine(arrayToWrite[i].toString());
+        }
+    }
+
+    /**
+     * Метод пишет первые length целых чисел массива в выходной поток, по одному числу на строку.
+     */
+    static void writeLines(LineWriter out, int[] arrayToWrite, int length) throws IOException {
+        writeLines(out, arrayToWrite, 0, length);
+    }
+
+    /**
+     * Метод пишет целые числа массива с индексами [from, to) в выходной поток, по одному числу на строку.
+     */
+    static void writeLines(LineWriter out, int[] arrayToWrite, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            out.writeLine(arrayToWrite[i]);
+        }
+    }
+
+    /**
+     * Метод пишет первые length 64-битных целых чисел массива в выходной поток, по одному числу на строку.
+     */
+    static void writeLines(LineWriter out, long[] arrayToWrite, int length) throws IOException {
+        writeLines(out, arrayToWrite, 0, length);
+    }
+
+    /**
+     * Метод пишет 64-битные целые числа массива с индексами [from, to) в выходной поток, по одному числу на строку.
+     */
+    static void writeLines(LineWriter out, long[] arrayToWrite, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            out.writeLine(arrayToWrite[i]);
+        }
+    }
+
+    /**
+     * Запись части массива [from, to) в сегмент.
+     */
+    @FunctionalInterface
+    private interface SliceWriter {
+        void write(LineWriter out, int from, int to) throws IOException;
+    }
+
+    /**
+     * Метод сообщает пользователю об ошибке записи в выходной файл.
+     */
+    void printWriteError(IOException e, String outputFileName) {
+        if (e instanceof AccessDeniedException) {
+            reporter.error("""
                     Увы, у Вашей учетной записи нет права на запись в файл %s !
                     Необходимо изменить или разрешения на файл, или путь к файлу на директорию,
                     в которой у Вас есть право на запись.
                     Вы также можете попробовать запустить программу от имени администратора.
                     """, outputFileName);
         }
-        catch (IOException e) {
-            System.out.printf("Непредвиденная ошибка записи в файл " + outputFileName, e);
+        else {
+            reporter.error("Непредвиденная ошибка записи в файл %s: %s\n", outputFileName, e.getMessage());
         }
     }
 
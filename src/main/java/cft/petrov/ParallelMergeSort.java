@@ -0,0 +1,259 @@
+package cft.petrov;
+
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * В классе осуществляется параллельная сортировка слиянием на пуле ForkJoinPool.
+ * Массив рекурсивно делится пополам: половины длиннее порога сортируются параллельно,
+ * а подмассивы не длиннее порога - последовательным методом sortRange в своем диапазоне общего буфера.
+ * Верхние (самые длинные) слияния тоже распараллеливаются: слияние двух подмассивов делится на два
+ * независимых слияния по середине большего подмассива и найденной бинарным поиском позиции в меньшем.
+ * Правило выбора эл-та при слиянии то же, что в методах sortArray, т.е. сортировка устойчива,
+ * поэтому порядок результата совпадает с последовательной сортировкой,
+ * в т.ч. при убывании и для строк с CustomComparator.
+ */
+public class ParallelMergeSort {
+    // порог длины подмассива по умолчанию, ниже к-го сортировка и слияние идут в одном потоке
+    static final int DEFAULT_THRESHOLD = 1 << 13;
+
+    private final int parallelism;
+    private final int threshold;
+
+    /**
+     * @param parallelism уровень параллелизма (кол-во потоков пула)
+     * @param threshold   порог длины подмассива для деления задачи
+     */
+    public ParallelMergeSort(int parallelism, int threshold) {
+        this.parallelism = parallelism;
+        this.threshold = Math.max(2, threshold);
+    }
+
+    /**
+     * Метод параллельно сортирует массив целых чисел.
+     */
+    void sortIntArray(int[] intArr, SortMode sortMode) {
+        sortIntArray(intArr, intArr.length, sortMode);
+    }
+
+    /**
+     * Метод параллельно сортирует первые length эл-ов массива целых чисел.
+     */
+    void sortIntArray(int[] intArr, int length, SortMode sortMode) {
+        sort(intArr, new int[length], length, new Kernel<>() {
+            @Override
+            public void sort(int[] arr, int from, int to, int[] buffer) {
+                IntegerMergeSort.sortRange(arr, from, to, buffer, sortMode);
+            }
+
+            @Override
+            public void merge(int[] left, int i, int leftEnd, int[] right, int j, int rightEnd, int[] dst, int k) {
+                IntegerMergeSort.sortArray(left, i, leftEnd, right, j, rightEnd, dst, k, sortMode);
+            }
+
+            @Override
+            public boolean takesLeft(int[] left, int i, int[] right, int j) {
+                return sortMode == SortMode.ASC ? left[i] <= right[j] : left[i] >= right[j];
+            }
+        });
+    }
+
+    /**
+     * Метод параллельно сортирует массив 64-битных целых чисел.
+     */
+    void sortLongArray(long[] longArr, SortMode sortMode) {
+        sortLongArray(longArr, longArr.length, sortMode);
+    }
+
+    /**
+     * Метод параллельно сортирует первые length эл-ов массива 64-битных целых чисел.
+     */
+    void sortLongArray(long[] longArr, int length, SortMode sortMode) {
+        sort(longArr, new long[length], length, new Kernel<>() {
+            @Override
+            public void sort(long[] arr, int from, int to, long[] buffer) {
+                IntegerMergeSort.sortRange(arr, from, to, buffer, sortMode);
+            }
+
+            @Override
+            public void merge(long[] left, int i, int leftEnd, long[] right, int j, int rightEnd, long[] dst, int k) {
+                IntegerMergeSort.sortArray(left, i, leftEnd, right, j, rightEnd, dst, k, sortMode);
+            }
+
+            @Override
+            public boolean takesLeft(long[] left, int i, long[] right, int j) {
+                return sortMode == SortMode.ASC ? left[i] <= right[j] : left[i] >= right[j];
+            }
+        });
+    }
+
+    /**
+     * Метод параллельно сортирует массив строк.
+     */
+    void sortStringArray(String[] stringArr, SortMode sortMode, Comparator<String> comparator) {
+        sort(stringArr, new String[stringArr.length], stringArr.length, new Kernel<>() {
+            @Override
+            public void sort(String[] arr, int from, int to, String[] buffer) {
+                StringMergeSort.sortRange(arr, from, to, buffer, sortMode, comparator);
+            }
+
+            @Override
+            public void merge(String[] left, int i, int leftEnd, String[] right, int j, int rightEnd,
+                              String[] dst, int k) {
+                StringMergeSort.sortArray(left, i, leftEnd, right, j, rightEnd, dst, k, sortMode, comparator);
+            }
+
+            @Override
+            public boolean takesLeft(String[] left, int i, String[] right, int j) {
+                int compareResult = comparator.compare(left[i], right[j]);
+                return sortMode == SortMode.ASC ? compareResult <= 0 : compareResult >= 0;
+            }
+        });
+    }
+
+    /**
+     * Метод запускает сортировку массива на отдельном пуле потоков и дожидается ее окончания.
+     */
+    private <A> void sort(A arr, A buffer, int length, Kernel<A> kernel) {
+        if (length <= 1) {
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new SortTask<>(arr, buffer, 0, length, kernel));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Последовательные операции над массивом конкретного типа, из которых собирается параллельная сортировка.
+     *
+     * @param <A> тип массива (int[], long[] или String[])
+     */
+    private interface Kernel<A> {
+        // последовательная сортировка диапазона [from, to) массива с тем же диапазоном буфера как рабочей памятью
+        void sort(A arr, int from, int to, A buffer);
+
+        // последовательное слияние left[i, leftEnd) и right[j, rightEnd) в dst начиная с индекса k
+        void merge(A left, int i, int leftEnd, A right, int j, int rightEnd, A dst, int k);
+
+        // берет ли метод sortArray при слиянии left[i] раньше, чем right[j]
+        boolean takesLeft(A left, int i, A right, int j);
+    }
+
+    /**
+     * Задача сортировки диапазона [from, to) массива arr с использованием буфера того же размера.
+     */
+    @SuppressWarnings("serial")  // задачи пула не сериализуются
+    private class SortTask<A> extends RecursiveAction {
+        private final A arr;
+        private final A buffer;
+        private final int from;
+        private final int to;
+        private final Kernel<A> kernel;
+
+        SortTask(A arr, A buffer, int from, int to, Kernel<A> kernel) {
+            this.arr = arr;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.kernel = kernel;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                kernel.sort(arr, from, to, buffer);
+                return;
+            }
+            int mid = from + (to - from) / 2;
+            invokeAll(new SortTask<>(arr, buffer, from, mid, kernel),
+                    new SortTask<>(arr, buffer, mid, to, kernel));
+            // отсортированные половины сливаются в буфер и возвращаются в исходный массив
+            new MergeTask<>(arr, from, mid, arr, mid, to, buffer, from, kernel).invoke();
+            System.arraycopy(buffer, from, arr, from, to - from);
+        }
+    }
+
+    /**
+     * Задача слияния left[leftFrom, leftTo) и right[rightFrom, rightTo) в dst начиная с индекса dstFrom.
+     */
+    @SuppressWarnings("serial")  // задачи пула не сериализуются
+    private class MergeTask<A> extends RecursiveAction {
+        private final A left;
+        private final int leftFrom;
+        private final int leftTo;
+        private final A right;
+        private final int rightFrom;
+        private final int rightTo;
+        private final A dst;
+        private final int dstFrom;
+        private final Kernel<A> kernel;
+
+        MergeTask(A left, int leftFrom, int leftTo, A right, int rightFrom, int rightTo,
+                  A dst, int dstFrom, Kernel<A> kernel) {
+            this.left = left;
+            this.leftFrom = leftFrom;
+            this.leftTo = leftTo;
+            this.right = right;
+            this.rightFrom = rightFrom;
+            this.rightTo = rightTo;
+            this.dst = dst;
+            this.dstFrom = dstFrom;
+            this.kernel = kernel;
+        }
+
+        @Override
+        protected void compute() {
+            int leftLength = leftTo - leftFrom;
+            int rightLength = rightTo - rightFrom;
+            if (leftLength + rightLength <= threshold || leftLength == 0 || rightLength == 0) {
+                kernel.merge(left, leftFrom, leftTo, right, rightFrom, rightTo, dst, dstFrom);
+                return;
+            }
+            int leftMid;
+            int rightMid;
+            if (leftLength >= rightLength) {
+                // эл-т left[leftMid] уходит во вторую половину вместе со всеми эл-ми right,
+                // к-е sortArray не поставил бы раньше него
+                leftMid = leftFrom + leftLength / 2;
+                int lo = rightFrom;
+                int hi = rightTo;
+                while (lo < hi) {
+                    int m = (lo + hi) >>> 1;
+                    if (kernel.takesLeft(left, leftMid, right, m)) {
+                        hi = m;
+                    }
+                    else {
+                        lo = m + 1;
+                    }
+                }
+                rightMid = lo;
+            }
+            else {
+                // эл-т right[rightMid] уходит во вторую половину вместе со всеми эл-ми left,
+                // к-е sortArray не взял бы раньше него
+                rightMid = rightFrom + rightLength / 2;
+                int lo = leftFrom;
+                int hi = leftTo;
+                while (lo < hi) {
+                    int m = (lo + hi) >>> 1;
+                    if (kernel.takesLeft(left, m, right, rightMid)) {
+                        lo = m + 1;
+                    }
+                    else {
+                        hi = m;
+                    }
+                }
+                leftMid = lo;
+            }
+            int dstMid = dstFrom + (leftMid - leftFrom) + (rightMid - rightFrom);
+            invokeAll(new MergeTask<>(left, leftFrom, leftMid, right, rightFrom, rightMid, dst, dstFrom, kernel),
+                    new MergeTask<>(left, leftMid, leftTo, right, rightMid, rightTo, dst, dstMid, kernel));
+        }
+    }
+
+}
@@ -0,0 +1,15 @@
+package cft.petrov;
+
+/**
+ * Этап работы программы, время к-го учитывает RunStats (параметр --stats).
+ */
+public enum Phase {
+    ARGS,      // проверка и разбор аргументов командной строки
+    VALIDATE,  // чтение и проверка входных файлов (с накоплением валидных данных в памяти)
+    SORT,      // сортировка массива в памяти (в т.ч. порций внешней сортировки)
+    SPILL,     // запись отсортированных порций во временные файлы-серии
+    MERGE,     // потоковое слияние (входных файлов или серий) с записью выходного файла
+    WRITE,     // запись отсортированного массива в выходной файл
+    SEARCH,    // поиск начала диапазона во входных файлах (параметры --from / --to)
+    CHECKPOINT // сброс выходного файла на диск и сохранение контрольной точки слияния (параметр --checkpoint)
+}
@@ -0,0 +1,208 @@
+package cft.petrov;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Курсор, к-й проверяет входной файл заранее, в потоке пула, пока программа занята другими файлами.
+ * Валидные данные переносятся из курсора InputFileCursor порциями по BATCH_SIZE штук,
+ * и в очереди курсора держится не больше MAX_READY_BATCHES порций, поэтому память на файл ограничена.
+ * Задача пула читает одну порцию и завершается, а следующая ставится в пул только при свободном месте в очереди.
+ * Поэтому поток пула никогда не ждет потребителя, и пул меньшего размера, чем число файлов,
+ * не может "застрять" при потоковом слиянии, к-е берет строки из всех курсоров вперемешку.
+ * Сообщения о проверке файла копятся в отдельном объекте Reporter и выводятся при закрытии курсора,
+ * т.е. в порядке следования входных файлов, а не в порядке работы потоков.
+ */
+public class PrefetchingCursor implements DataCursor {
+    static final int BATCH_SIZE = 4096;
+    static final int MAX_READY_BATCHES = 4;
+
+    private final InputFileCursor source;
+    private final Reporter fileReporter;
+    private final boolean numeric;
+    private final Executor executor;
+
+    // состояние, общее для потребителя и задачи пула (защищено монитором курсора)
+    private final ArrayDeque<Batch> ready = new ArrayDeque<>();
+    private boolean producing;   // задача чтения порции поставлена в пул или выполняется
+    private boolean exhausted;   // последняя порция (конец файла или ошибка) уже в очереди
+    private boolean closed;
+
+    // текущая порция потребителя
+    private Batch batch;
+    private int index;
+    private boolean finished;
+
+    /**
+     * @param source       курсор входного файла
+     * @param fileReporter объект, копящий сообщения о проверке файла (выводятся при закрытии курсора)
+     * @param dataType     тип данных, с к-м работает программа
+     * @param executor     пул потоков, в к-м проверяется файл
+     */
+    public PrefetchingCursor(InputFileCursor source, Reporter fileReporter, DataType dataType, Executor executor) {
+        this.source = source;
+        this.fileReporter = fileReporter;
+        this.numeric = dataType.isNumeric();
+        this.executor = executor;
+        synchronized (this) {
+            schedule();
+        }
+    }
+
+    /**
+     * Метод ставит в пул задачу чтения следующей порции (вызывается под монитором курсора).
+     */
+    private void schedule() {
+        producing = true;
+        executor.execute(this::produceBatch);
+    }
+
+    /**
+     * Задача пула: читает из курсора входного файла одну порцию валидных данных.
+     */
+    private void produceBatch() {
+        Batch next = numeric ? new Batch(new long[BATCH_SIZE], null) : new Batch(null, new String[BATCH_SIZE]);
+        try {
+            while (next.size < BATCH_SIZE && source.next()) {
+                if (numeric) {
+                    next.numbers[next.size] = source.currentNumber();
+                }
+                else {
+                    next.strings[next.size] = source.current();
+                }
+                next.offsets[next.size] = source.currentOffset();
+                next.lineNumbers[next.size++] = source.currentLineNumber();
+            }
+        }
+        catch (IOException e) {
+            next.error = e;
+        }
+        next.last = next.size < BATCH_SIZE || next.error != null;
+        synchronized (this) {
+            producing = false;
+            exhausted = next.last;
+            ready.add(next);
+            if (!exhausted && !closed && ready.size() < MAX_READY_BATCHES) {
+                schedule();
+            }
+            notifyAll();
+        }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (finished) {
+            return false;
+        }
+        if (batch != null) {
+            if (++index < batch.size) {
+                return true;
+            }
+            if (batch.last) {
+                return finish();
+            }
+        }
+        synchronized (this) {
+            try {
+                while (ready.isEmpty()) {
+                    wait();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Чтение файла " + getFileName() + " прервано");
+            }
+            batch = ready.poll();
+            if (!producing && !exhausted) {
+                schedule();
+            }
+        }
+        index = 0;
+        return batch.size > 0 || finish();
+    }
+
+    /**
+     * Метод отмечает, что данные файла закончились; если их прервала ошибка чтения, пробрасывает ее.
+     */
+    private boolean finish() throws IOException {
+        finished = true;
+        if (batch.error != null) {
+            throw batch.error;
+        }
+        return false;
+    }
+
+    @Override
+    public String current() {
+        return numeric ? Long.toString(batch.numbers[index]) : batch.strings[index];
+    }
+
+    @Override
+    public long currentNumber() {
+        return batch.numbers[index];
+    }
+
+    @Override
+    public long currentOffset() {
+        return batch.offsets[index];
+    }
+
+    @Override
+    public long currentLineNumber() {
+        return batch.lineNumbers[index];
+    }
+
+    @Override
+    public String getFileName() {
+        return source.getFileName();
+    }
+
+    /**
+     * Метод дожидается окончания задачи пула, закрывает входной файл и выводит накопленные сообщения о нем.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            boolean interrupted = false;
+            while (producing) {
+                try {
+                    wait();
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            source.close();
+        }
+        finally {
+            fileReporter.close();
+        }
+    }
+
+    /**
+     * Порция валидных данных файла: числа или строки (с их местом в файле), либо ошибка чтения.
+     */
+    private static final class Batch {
+        final long[] numbers;
+        final String[] strings;
+        final long[] offsets = new long[BATCH_SIZE];
+        final long[] lineNumbers = new long[BATCH_SIZE];
+        int size;
+        IOException error;
+        boolean last;  // последняя порция файла
+
+        Batch(long[] numbers, String[] strings) {
+            this.numbers = numbers;
+            this.strings = strings;
+        }
+    }
+
+}
@@ -0,0 +1,293 @@
+package cft.petrov;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * В классе осуществляется извлечение диапазона ключей [from, to] (параметры --from / --to)
+ * из упорядоченных по возрастанию входных файлов, н-р, из результатов прошлых запусков программы.
+ * Файлы не читаются с начала: смещение первой строки диапазона ищется двоичным поиском
+ * по разреженному индексу файла (см. класс SparseIndex), а если индекса нет или он устарел -
+ * двоичным поиском по самому файлу (в файле читаются лишь несколько строк около середин отрезков).
+ * Курсор файла открывается прямо с найденного смещения и останавливается на первой строке за границей to,
+ * а диапазоны всех файлов сливаются потоком (см. класс KWayMerger).
+ * Сжатые файлы не позволяют перейти к смещению без распаковки и читаются с начала,
+ * как и стандартный ввод и именованные каналы.
+ */
+public class RangeQuery {
+    private final DataType dataType;
+    private final SortMode sortMode;
+    private final Comparator<String> comparator;
+    private final RunOptions runOptions;
+    private final Reporter reporter;
+    private final String from;    // нижняя граница диапазона (null - не задана)
+    private final String to;      // верхняя граница диапазона (null - не задана)
+    private long fromNumber = Long.MIN_VALUE;
+    private long toNumber = Long.MAX_VALUE;
+
+    /**
+     * @param dataType   тип данных, с к-м работает программа
+     * @param sortMode   режим сортировки результата (входные файлы упорядочены по возрастанию)
+     * @param comparator компаратор строк
+     * @param runOptions дополнительные параметры запуска (в т.ч. границы диапазона)
+     * @param reporter   объект, выводящий сообщения о ходе поиска
+     */
+    public RangeQuery(DataType dataType, SortMode sortMode, Comparator<String> comparator,
+                      RunOptions runOptions, Reporter reporter) {
+        this.dataType = dataType;
+        this.sortMode = sortMode;
+        this.comparator = comparator;
+        this.runOptions = runOptions;
+        this.reporter = reporter;
+        this.from = runOptions.getRangeFrom();
+        this.to = runOptions.getRangeTo();
+    }
+
+    /**
+     * Метод извлекает строки диапазона из всех входных файлов и пишет их в выходной файл в режиме сортировки.
+     *
+     * @param inputFileNames     список имен входных файлов
+     * @param inputFilesAnalyzer объект, открывающий курсоры по валидным строкам входных файлов
+     * @param outputFileName     имя выходного файла
+     */
+    public void extractAndWrite(List<String> inputFileNames, InputFilesAnalyzer inputFilesAnalyzer,
+                                String outputFileName) {
+        if (runOptions.isUnsorted()) {
+            reporter.error("Диапазон можно извлечь только из упорядоченных входных файлов (без --unsorted).\n");
+            return;
+        }
+        if (!parseBounds()) {
+            return;
+        }
+        reporter.info("Извлекаются строки диапазона [%s, %s].\n",
+                from == null ? "-" : from, to == null ? "-" : to);
+
+        List<DataCursor> cursors = new ArrayList<>();
+        inputFilesAnalyzer.printCheckStart();
+        for (String fileName : inputFileNames) {
+            DataCursor cursor = inputFilesAnalyzer.openCursor(fileName, dataType, comparator, findStart(fileName));
+            if (cursor != null) {
+                cursors.add(new RangeCursor(cursor));
+            }
+        }
+
+        if (sortMode == SortMode.ASC) {
+            try (KWayMerger merger = new KWayMerger(cursors, dataType, SortMode.ASC, comparator, reporter)) {
+                new OutputFileWriter(reporter, runOptions).writeMergedToFile(merger, outputFileName);
+            }
+            return;
+        }
+        // входные файлы упорядочены по возрастанию, поэтому по убыванию диапазон упорядочивается в памяти
+        reporter.info("Строки диапазона будут упорядочены по убыванию в памяти.\n");
+        new TopNSelector(dataType, sortMode, comparator, runOptions, reporter).selectAndWrite(cursors, outputFileName);
+    }
+
+    /**
+     * Метод проверяет, что границы диапазона подходят к типу данных, и разбирает числовые границы.
+     *
+     * @return результат проверки (границы корректны / некорректны)
+     */
+    private boolean parseBounds() {
+        if (dataType.isNumeric()) {
+            for (String bound : new String[] {from, to}) {
+                if (bound != null && !(dataType == DataType.INTEGER
+                        ? InputFilesAnalyzer.isInteger(bound) : InputFilesAnalyzer.isLong(bound))) {
+                    reporter.error("Граница диапазона %s не подходит к типу данных %s!\n", bound, dataType);
+                    return false;
+                }
+            }
+            fromNumber = from == null ? Long.MIN_VALUE : Long.parseLong(from);
+            toNumber = to == null ? Long.MAX_VALUE : Long.parseLong(to);
+        }
+        boolean empty = dataType.isNumeric()
+                ? fromNumber > toNumber
+                : from != null && to != null && comparator.compare(from, to) > 0;
+        if (empty) {
+            reporter.info("Граница --from больше границы --to: диапазон пуст.\n");
+        }
+        return true;
+    }
+
+    /**
+     * Метод ищет во входном файле смещение, с к-го начинаются строки диапазона:
+     * по разреженному индексу файла, а без него - двоичным поиском по самому файлу.
+     *
+     * @return смещение начала строки (0 - файл читается с начала)
+     */
+    private long findStart(String fileName) {
+        if (from == null) {
+            return 0;
+        }
+        if (LineReader.isGzip(fileName)) {
+            reporter.detail("Сжатый файл %s читается с начала.\n", fileName);
+            return 0;
+        }
+        if (LineReader.isStream(fileName)) {
+            reporter.detail("Поток %s читается с начала.\n", fileName);
+            return 0;
+        }
+        Path path = Path.of(fileName);
+        reporter.getRunStats().start(Phase.SEARCH);
+        try {
+            try {
+                SparseIndex index = SparseIndex.load(path, dataType, comparator);
+                if (index != null) {
+                    long start = dataType.isNumeric() ? index.startOffset(fromNumber) : index.startOffset(from);
+                    reporter.detail("Начало диапазона в файле %s найдено по индексу (%d ключей): смещение %d\n",
+                            fileName, index.size(), start);
+                    return start;
+                }
+            }
+            catch (NoSuchFileException e) {
+                return 0;  // об отсутствии файла сообщит открытие курсора
+            }
+            catch (IOException e) {
+                reporter.info("Индекс файла %s не используется: %s.\n", fileName, e.getMessage());
+            }
+
+            try (FileProbe file = new FileProbe(path)) {
+                long start = searchFile(file);
+                reporter.detail("Начало диапазона в файле %s найдено двоичным поиском: смещение %d\n",
+                        fileName, start);
+                return start;
+            }
+            catch (NoSuchFileException e) {
+                return 0;
+            }
+            catch (IOException e) {
+                reporter.error("Ошибка при чтении входного файла %s: %s\n", fileName, e.getMessage());
+                return 0;
+            }
+        }
+        finally {
+            reporter.getRunStats().stop(Phase.SEARCH);
+        }
+    }
+
+    /**
+     * Метод ищет двоичным поиском по байтам файла начало строки, с к-го можно читать строки с ключами не меньше from.
+     * Середина отрезка [low, high) сдвигается к началу следующей строки, и первая валидная строка с этого места
+     * сужает отрезок: все валидные строки до low меньше from, а строки с high и дальше можно не смотреть.
+     * Невалидные строки (к-е отбросит курсор) пропускаются.
+     */
+    private long searchFile(FileProbe file) throws IOException {
+        long low = 0;
+        long high = file.size();
+        while (low < high) {
+            long mid = low + (high - low) / 2;
+            long lineStart = file.nextLineStart(mid);
+            int result = 0;
+            while (lineStart < high) {
+                String line = file.readLine(lineStart);
+                result = compareWithFrom(line);
+                if (result != 0) {
+                    break;
+                }
+                lineStart = file.nextLineStart(lineStart + 1);
+            }
+            if (result < 0) {
+                low = file.nextLineStart(lineStart + 1);
+            }
+            else if (result > 0) {
+                high = lineStart;
+            }
+            else {
+                // с середины до high нет валидных строк: первая подходящая строка начинается раньше
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Метод сравнивает ключ строки файла с нижней границей диапазона.
+     *
+     * @return -1, если ключ меньше from; 1, если не меньше; 0, если строка невалидна
+     */
+    private int compareWithFrom(String line) {
+        if (line.isEmpty() || line.indexOf(' ') >= 0) {
+            return 0;
+        }
+        if (dataType.isNumeric()) {
+            if (!(dataType == DataType.INTEGER ? InputFilesAnalyzer.isInteger(line) : InputFilesAnalyzer.isLong(line))) {
+                return 0;
+            }
+            return Long.parseLong(line) < fromNumber ? -1 : 1;
+        }
+        if (InputFilesAnalyzer.isInteger(line)) {
+            return 0;
+        }
+        return comparator.compare(line, from) < 0 ? -1 : 1;
+    }
+
+    /**
+     * Курсор по строкам диапазона входного файла: строки меньше from пропускаются,
+     * а первая строка больше to завершает чтение файла.
+     */
+    private final class RangeCursor implements DataCursor {
+        private final DataCursor cursor;
+        private boolean finished;
+
+        RangeCursor(DataCursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            while (!finished && cursor.next()) {
+                if (dataType.isNumeric()) {
+                    long number = cursor.currentNumber();
+                    if (number < fromNumber) {
+                        continue;
+                    }
+                    finished = number > toNumber;
+                }
+                else {
+                    String line = cursor.current();
+                    if (from != null && comparator.compare(line, from) < 0) {
+                        continue;
+                    }
+                    finished = to != null && comparator.compare(line, to) > 0;
+                }
+                return !finished;
+            }
+            finished = true;
+            return false;
+        }
+
+        @Override
+        public String current() {
+            return cursor.current();
+        }
+
+        @Override
+        public long currentNumber() {
+            return cursor.currentNumber();
+        }
+
+        @Override
+        public long currentOffset() {
+            return cursor.currentOffset();
+        }
+
+        @Override
+        public long currentLineNumber() {
+            return cursor.currentLineNumber();
+        }
+
+        @Override
+        public String getFileName() {
+            return cursor.getFileName();
+        }
+
+        @Override
+        public void close() throws IOException {
+            cursor.close();
+        }
+    }
+
+}
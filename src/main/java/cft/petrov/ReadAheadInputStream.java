@@ -0,0 +1,176 @@
+package cft.petrov;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Поток байт, к-й читает исходный поток заранее в отдельном потоке выполнения.
+ * Применяется для сжатых входных файлов: распаковка GZIPInputStream идет в своем потоке,
+ * пока потребитель (проверка строк, слияние) разбирает уже распакованные порции.
+ * Порции передаются через очередь из CHUNKS буферов, поэтому распаковка опережает потребителя
+ * не больше, чем на CHUNKS порций.
+ * Исходный поток закрывает сам поток чтения, когда заканчивает работу (см. close).
+ */
+public class ReadAheadInputStream extends InputStream {
+    private static final int CHUNKS = 4;
+
+    /**
+     * Прочитанная порция: length < 0 - исходный поток закончился, error != null - ошибка чтения.
+     */
+    private record Chunk(byte[] bytes, int length, IOException error) { }
+
+    private final InputStream source;
+    private final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(CHUNKS + 1);
+    private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(CHUNKS);
+    private final Thread reader;
+    private Chunk current;     // порция, из к-й сейчас читает потребитель
+    private int position;      // позиция потребителя в текущей порции
+    private volatile boolean closed;
+
+    /**
+     * @param source    исходный поток (н-р, GZIPInputStream)
+     * @param chunkSize размер порции в байтах
+     * @param name      имя потока чтения (для отладки)
+     */
+    public ReadAheadInputStream(InputStream source, int chunkSize, String name) {
+        this.source = source;
+        for (int i = 0; i < CHUNKS; i++) {
+            free.add(new byte[chunkSize]);
+        }
+        this.reader = new Thread(this::readAhead, name);
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Цикл потока чтения: заполняет свободные буферы, пока исходный поток не закончится.
+     */
+    private void readAhead() {
+        try {
+            while (!closed) {
+                byte[] bytes = free.take();
+                int length = 0;
+                boolean end = false;
+                try {
+                    while (length < bytes.length) {
+                        int read = source.read(bytes, length, bytes.length - length);
+                        if (read < 0) {
+                            end = true;
+                            break;
+                        }
+                        length += read;
+                        // канал (стандартный ввод, FIFO) отдает данные по мере их записи источником:
+                        // порция передается, не дожидаясь заполнения, иначе первые строки ждали бы
+                        // следующих (с --limit программа не завершилась бы, пока источник пишет)
+                        if (source.available() == 0) {
+                            break;
+                        }
+                    }
+                }
+                catch (IOException e) {
+                    // байты, распакованные до ошибки (н-р, обрезанного архива), передаются потребителю
+                    if (length > 0) {
+                        filled.put(new Chunk(bytes, length, null));
+                    }
+                    if (!closed) {
+                        filled.put(new Chunk(null, -1, e));
+                    }
+                    return;
+                }
+                if (length > 0) {
+                    filled.put(new Chunk(bytes, length, null));
+                }
+                if (end) {
+                    filled.put(new Chunk(null, -1, null));
+                    return;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            // поток закрыт потребителем
+        }
+        finally {
+            try {
+                source.close();
+            }
+            catch (IOException e) {
+                // данные потока больше не нужны
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (current == null || position >= current.length()) {
+            if (!nextChunk()) {
+                return -1;
+            }
+        }
+        int count = Math.min(length, current.length() - position);
+        System.arraycopy(current.bytes(), position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Байты текущей порции, к-е можно прочитать без ожидания потока чтения.
+     */
+    @Override
+    public int available() {
+        return current == null || current.length() < 0 ? 0 : current.length() - position;
+    }
+
+    /**
+     * Метод возвращает прочитанный буфер потоку чтения и берет следующую порцию.
+     *
+     * @return false, если исходный поток закончился
+     */
+    private boolean nextChunk() throws IOException {
+        if (current != null && current.length() < 0) {
+            return false;
+        }
+        if (current != null) {
+            free.add(current.bytes());
+        }
+        try {
+            current = filled.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Чтение файла прервано");
+        }
+        position = 0;
+        if (current.error() != null) {
+            throw current.error();
+        }
+        return current.length() >= 0;
+    }
+
+    /**
+     * Метод останавливает поток чтения, не дожидаясь его: исходный поток поток чтения закроет сам,
+     * выйдя из текущего read. Чтение из канала (стандартного ввода, FIFO) блокируется до новых данных
+     * от источника и не прерывается, поэтому ожидание могло бы длиться, пока источник не закроет канал
+     * (н-р, "tail -f" - никогда). Поток чтения - демон и не мешает завершению программы.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        reader.interrupt();
+    }
+
+}
@@ -0,0 +1,21 @@
+package cft.petrov;
+
+/**
+ * Причина, по к-й строка входного файла не войдет в выходной файл.
+ */
+public enum RejectReason {
+    BLANK("пустая"),
+    WHITESPACE("содержит пробел(-ы)"),
+    WRONG_TYPE("не соответствует выбранному типу данных"),
+    OUT_OF_ORDER("нарушает естественный порядок сортировки");
+
+    private final String description;
+
+    RejectReason(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
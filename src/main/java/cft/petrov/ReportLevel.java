@@ -0,0 +1,10 @@
+package cft.petrov;
+
+/**
+ * Уровень подробности сообщений программы (см. класс Reporter).
+ */
+public enum ReportLevel {
+    QUIET,    // только ошибки
+    SUMMARY,  // ход работы и итоговые счетчики по каждому входному файлу
+    VERBOSE   // то же и сообщение о каждой отброшенной строке
+}
@@ -0,0 +1,298 @@
+package cft.petrov;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Класс выводит сообщения программы с учетом выбранного уровня подробности (параметр --log):
+ * - ошибки выводятся всегда;
+ * - ход работы и итоговые счетчики строк по каждому входному файлу - начиная с уровня summary (по умолчанию);
+ * - сообщения о каждой отброшенной строке - только на уровне verbose.
+ * Вывод буферизуется: сообщения об отдельных строках копятся в буфере, а на консоль он сбрасывается
+ * после сообщений о ходе работы и ошибок. Поэтому даже большой поток отброшенных строк не тормозит программу.
+ * Подробности об отброшенных строках (файл, номер строки, причина, сама строка) можно сохранить
+ * в отдельный файл (параметр --rejects) независимо от уровня подробности.
+ * При параллельной проверке входных файлов (параметр --threads) каждый файл получает собственный
+ * объект Reporter (см. newFileReporter), к-й копит сообщения и выводит их разом при закрытии,
+ * поэтому сообщения разных файлов не перемешиваются.
+ */
+public class Reporter implements AutoCloseable {
+    private static final int SINK_BUFFER_SIZE = 1 << 16;
+
+    private final ReportLevel level;
+    private final PrintWriter out;
+    private BufferedWriter rejectsOut;  // файл отброшенных строк (null - не ведется)
+    private final List<FileStats> fileStats = new ArrayList<>();
+    private final RunStats runStats;
+    private boolean errors;             // были ли сообщения об ошибках
+
+    // для объекта отдельного входного файла: объект, к-му передаются накопленные сообщения
+    private final Reporter parent;
+    private final StringWriter messages;
+    private final StringWriter rejects;
+
+    /**
+     * @param level           уровень подробности сообщений
+     * @param sink            поток, в к-й выводятся сообщения (н-р, System.out)
+     * @param rejectsFileName имя файла отброшенных строк (null - файл не ведется)
+     */
+    public Reporter(ReportLevel level, PrintStream sink, String rejectsFileName) {
+        this(level, sink, rejectsFileName, new RunStats());
+    }
+
+    /**
+     * @param level           уровень подробности сообщений
+     * @param sink            поток, в к-й выводятся сообщения (н-р, System.out)
+     * @param rejectsFileName имя файла отброшенных строк (null - файл не ведется)
+     * @param runStats        статистика запуска, к-ю дополняют классы, получающие этот объект
+     */
+    public Reporter(ReportLevel level, PrintStream sink, String rejectsFileName, RunStats runStats) {
+        this.level = level;
+        this.runStats = runStats;
+        this.out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(sink, sink.charset()),
+                SINK_BUFFER_SIZE));
+        this.parent = null;
+        this.messages = null;
+        this.rejects = null;
+        if (rejectsFileName != null) {
+            try {
+                rejectsOut = Files.newBufferedWriter(Path.of(rejectsFileName), StandardCharsets.UTF_8);
+            }
+            catch (IOException e) {
+                // то же, что error(), но без вызова переопределяемого метода из конструктора
+                errors = true;
+                out.printf("Не удалось создать файл отброшенных строк %s: %s\n", rejectsFileName, e.getMessage());
+                out.flush();
+            }
+        }
+    }
+
+    private Reporter(Reporter parent) {
+        this.level = parent.level;
+        this.runStats = parent.runStats;
+        this.parent = parent;
+        this.messages = new StringWriter();
+        this.out = new PrintWriter(messages);
+        this.rejects = parent.rejectsOut != null ? new StringWriter() : null;
+        this.rejectsOut = rejects != null ? new BufferedWriter(rejects) : null;
+    }
+
+    /**
+     * Метод создает объект для сообщений об одном входном файле, проверяемом в отдельном потоке.
+     * Объект копит сообщения, отброшенные строки и счетчики файла в памяти
+     * и передает их этому объекту при закрытии (метод close).
+     * Закрывать объекты файлов нужно в том потоке, к-й работает с этим объектом, и в порядке файлов.
+     */
+    public Reporter newFileReporter() {
+        return new Reporter(this);
+    }
+
+    /**
+     * Метод выводит сообщение о ходе работы программы (уровни summary и verbose).
+     */
+    public void info(String format, Object... args) {
+        if (level != ReportLevel.QUIET) {
+            out.printf(format, args);
+            out.flush();
+        }
+    }
+
+    /**
+     * Метод выводит подробное сообщение (только уровень verbose). Сообщение остается в буфере.
+     */
+    public void detail(String format, Object... args) {
+        if (level == ReportLevel.VERBOSE) {
+            out.printf(format, args);
+        }
+    }
+
+    /**
+     * Метод выводит сообщение об ошибке (на любом уровне).
+     */
+    public void error(String format, Object... args) {
+        errors = true;
+        out.printf(format, args);
+        out.flush();
+    }
+
+    /**
+     * Были ли сообщения об ошибках (в т.ч. у объектов входных файлов, уже переданные этому объекту).
+     */
+    public boolean hasErrors() {
+        return errors;
+    }
+
+    /**
+     * Статистика запуска программы (время этапов и др., см. параметр --stats).
+     * Этапы работы отмечаются только в основном потоке.
+     */
+    public RunStats getRunStats() {
+        return runStats;
+    }
+
+    /**
+     * Метод берет на учет счетчики входного файла, чтобы вывести их в итоговой сводке.
+     */
+    public void addFileStats(FileStats stats) {
+        fileStats.add(stats);
+    }
+
+    /**
+     * Метод проверяет, нужен ли текст отброшенных строк (ведется ли файл отброшенных строк).
+     * Если нет, курсор передает в метод rejected вместо строки null, не декодируя ее.
+     */
+    public boolean needsRejectedLines() {
+        return rejectsOut != null;
+    }
+
+    /**
+     * Метод учитывает отброшенную строку входного файла.
+     *
+     * @param stats      счетчики входного файла
+     * @param lineNumber номер строки в файле (отрицательный - номер с конца файла, -1 - последняя строка)
+     * @param fileLine   сама строка (может быть null, если needsRejectedLines() == false)
+     * @param reason     причина, по к-й строка отброшена
+     */
+    public void rejected(FileStats stats, long lineNumber, String fileLine, RejectReason reason) {
+        stats.countRejected(reason);
+        if (level == ReportLevel.VERBOSE) {
+            out.printf("Строка %s файла %s %s и будет отброшена.\n",
+                    lineNumber < 0 ? -lineNumber + " с конца" : lineNumber, stats.getFileName(),
+                    reason.getDescription());
+        }
+        if (rejectsOut != null) {
+            try {
+                rejectsOut.write(stats.getFileName() + ":" + lineNumber + ": " + reason.getDescription()
+                        + ": " + fileLine);
+                rejectsOut.newLine();
+            }
+            catch (IOException e) {
+                error("Ошибка записи в файл отброшенных строк: %s\n", e.getMessage());
+                closeRejects();
+            }
+        }
+    }
+
+    /**
+     * Метод выводит итоговые счетчики строк по каждому входному файлу и по всем файлам вместе.
+     */
+    public void printSummary() {
+        if (level == ReportLevel.QUIET || fileStats.isEmpty()) {
+            return;
+        }
+        out.print("==========================================================\n");
+        long read = 0, accepted = 0;
+        long[] rejected = new long[RejectReason.values().length];
+        for (FileStats stats : fileStats) {
+            if (stats.getRead() == 0) {
+                out.printf("Файл \"%s\" пуст.\n", stats.getFileName());
+                continue;
+            }
+            out.printf("Файл \"%s\": %s\n", stats.getFileName(),
+                    formatCounters(stats.getRead(), stats.getAccepted(), stats::getRejected));
+            read += stats.getRead();
+            accepted += stats.getAccepted();
+            for (RejectReason reason : RejectReason.values()) {
+                rejected[reason.ordinal()] += stats.getRejected(reason);
+            }
+        }
+        if (fileStats.size() > 1) {
+            out.printf("Всего: %s\n", formatCounters(read, accepted, reason -> rejected[reason.ordinal()]));
+        }
+        out.flush();
+    }
+
+    /**
+     * Метод записывает статистику запуска вместе со счетчиками входных файлов в файл отчета JSON.
+     */
+    public void writeStats(String statsFileName) {
+        try {
+            runStats.writeJson(Path.of(statsFileName), fileStats);
+        }
+        catch (IOException e) {
+            error("Не удалось записать файл статистики %s: %s\n", statsFileName, e.getMessage());
+        }
+    }
+
+    /**
+     * Метод формирует строку счетчиков: прочитано, отброшено по каждой причине, принято.
+     */
+    private static String formatCounters(long read, long accepted, ToLongFunction<RejectReason> rejected) {
+        return String.format("прочитано строк %d, пустых %d, с пробелами %d, неверного типа %d, "
+                        + "нарушающих порядок %d, принято %d.",
+                read, rejected.applyAsLong(RejectReason.BLANK), rejected.applyAsLong(RejectReason.WHITESPACE),
+                rejected.applyAsLong(RejectReason.WRONG_TYPE), rejected.applyAsLong(RejectReason.OUT_OF_ORDER),
+                accepted);
+    }
+
+    /**
+     * Метод сбрасывает буфер сообщений и закрывает файл отброшенных строк.
+     * Сам поток сообщений (н-р, System.out) не закрывается.
+     * Объект входного файла (см. newFileReporter) вместо этого передает накопленное родительскому объекту.
+     */
+    @Override
+    public void close() {
+        if (parent == null) {
+            closeRejects();
+            out.flush();
+            return;
+        }
+        out.flush();
+        parent.errors |= errors;
+        parent.out.write(messages.toString());
+        parent.out.flush();
+        messages.getBuffer().setLength(0);
+        if (rejectsOut != null) {
+            try {
+                rejectsOut.flush();
+                parent.writeRejects(rejects.toString());
+            }
+            catch (IOException e) {
+                // запись в StringWriter не бросает IOException
+            }
+            rejects.getBuffer().setLength(0);
+        }
+        parent.fileStats.addAll(fileStats);
+        fileStats.clear();
+    }
+
+    /**
+     * Метод дописывает в файл отброшенных строк строки, накопленные объектом входного файла.
+     */
+    private void writeRejects(String text) {
+        if (rejectsOut == null) {
+            return;
+        }
+        try {
+            rejectsOut.write(text);
+        }
+        catch (IOException e) {
+            error("Ошибка записи в файл отброшенных строк: %s\n", e.getMessage());
+            closeRejects();
+        }
+    }
+
+    private void closeRejects() {
+        if (rejectsOut == null) {
+            return;
+        }
+        try {
+            rejectsOut.close();
+        }
+        catch (IOException e) {
+            error("Ошибка записи в файл отброшенных строк: %s\n", e.getMessage());
+        }
+        rejectsOut = null;
+    }
+
+}
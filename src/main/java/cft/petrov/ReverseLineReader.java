@@ -0,0 +1,181 @@
+package cft.petrov;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Построчное чтение несжатого файла с конца: строки возвращаются в обратном порядке, от последней к первой.
+ * Так упорядоченный по возрастанию файл читается по убыванию - для потокового слияния по убыванию
+ * без загрузки файлов в память (параметр --presorted, см. Main.mergeStreaming).
+ * <p>
+ * Файл читается блоками по BLOCK_SIZE байт от конца к началу (позиционным чтением FileChannel),
+ * очередной блок дописывается в буфер перед еще не разобранными байтами. В памяти находится один блок
+ * и недочитанная строка: строка длиннее блока увеличивает буфер.
+ * Строки разделяются так же, как в LineReader.next ("\n", "\r" или "\r\n"), поэтому набор строк совпадает
+ * с прочитанным с начала: разделитель в конце файла не порождает пустой строки, а "\r\n" на границе блоков -
+ * один разделитель. Разделители - однобайтные символы ASCII, к-е не встречаются внутри многобайтных символов
+ * UTF-8, поэтому граница блока может разрезать символ, но не строку: строка декодируется целиком из буфера.
+ */
+public class ReverseLineReader implements LineSource {
+    static final int BLOCK_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final int blockSize;
+    private ByteBuffer buffer;       // прочитанные блоки файла (массив в куче)
+    private int lineStart;           // начало текущей строки в буфере
+    private int lineEnd;             // конец текущей строки в буфере (не включая разделитель)
+    private long blockStart;         // смещение начала буфера от начала файла
+    private int end;                 // конец неразобранных байт буфера: [0, end) еще не прочитаны
+    private int scanned;             // байты [scanned, end) уже просмотрены и разделителя не содержат
+    private boolean afterLineFeed;   // перед end стоял "\n": если перед ним "\r", это один разделитель "\r\n"
+    private boolean finished;        // первая строка файла уже прочитана
+
+    public ReverseLineReader(Path path) throws IOException {
+        this(path, BLOCK_SIZE);
+    }
+
+    /**
+     * @param path      путь к несжатому файлу
+     * @param blockSize размер блока, читаемого за раз
+     * @throws IOException если файл не удалось открыть или прочитать
+     */
+    ReverseLineReader(Path path, int blockSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.blockSize = blockSize;
+        try {
+            long fileSize = channel.size();
+            this.blockStart = fileSize;
+            this.buffer = ByteBuffer.allocate(0);
+            this.finished = fileSize == 0;
+            if (!finished) {
+                readBlock();
+                // разделитель в конце файла завершает последнюю строку, а не начинает пустую
+                byte last = buffer.get(end - 1);
+                if (last == '\n' || last == '\r') {
+                    end--;
+                    afterLineFeed = last == '\n';
+                }
+            }
+            scanned = end;
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Метод проверяет, можно ли читать файл с конца: сжатый файл и поток (канал) читаются только с начала.
+     */
+    public static boolean canRead(String fileName) {
+        return !LineReader.isGzip(fileName) && !LineReader.isStream(fileName);
+    }
+
+    /**
+     * Метод перемещается на предыдущую строку файла.
+     *
+     * @return true, если строка прочитана; false, если прочитана уже и первая строка файла
+     * @throws IOException при ошибке чтения файла
+     */
+    @Override
+    public boolean next() throws IOException {
+        if (finished) {
+            return false;
+        }
+        if (afterLineFeed) {
+            if (end == 0 && blockStart > 0) {
+                readBlock();
+            }
+            if (end > 0 && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+            afterLineFeed = false;
+            scanned = end;
+        }
+        while (true) {
+            int i = scanned - 1;
+            byte b = 0;
+            while (i >= 0 && (b = buffer.get(i)) != '\n' && b != '\r') {
+                i--;
+            }
+            if (i >= 0) {
+                lineStart = i + 1;
+                lineEnd = end;
+                end = i;
+                scanned = i;
+                afterLineFeed = b == '\n';
+                return true;
+            }
+            if (blockStart == 0) {
+                // первая строка файла
+                lineStart = 0;
+                lineEnd = end;
+                finished = true;
+                return true;
+            }
+            // в буфере нет начала строки - нужен предыдущий блок файла
+            scanned = readBlock();
+        }
+    }
+
+    /**
+     * Метод читает предыдущий блок файла в начало буфера, сдвигая неразобранные байты [0, end) за него.
+     *
+     * @return начало сдвинутых байт в новом буфере (до него - байты нового блока)
+     */
+    private int readBlock() throws IOException {
+        int read = (int) Math.min(blockSize, blockStart);
+        if ((long) read + end > Integer.MAX_VALUE) {
+            throw new IOException("Строка файла длиннее " + Integer.MAX_VALUE + " байт");
+        }
+        ByteBuffer target = buffer.capacity() >= read + end ? buffer
+                : ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE, Math.max((long) read + end, 2L * buffer.capacity())));
+        System.arraycopy(buffer.array(), 0, target.array(), read, end);
+        buffer = target;
+        blockStart -= read;
+        ByteBuffer block = buffer.duplicate().clear().limit(read);
+        while (block.hasRemaining()) {
+            if (channel.read(block, blockStart + block.position()) < 0) {
+                throw new IOException("Файл укоротился во время чтения");
+            }
+        }
+        end += read;
+        buffer.limit(end);
+        return read;
+    }
+
+    @Override
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    @Override
+    public int lineStart() {
+        return lineStart;
+    }
+
+    @Override
+    public int lineEnd() {
+        return lineEnd;
+    }
+
+    @Override
+    public long lineOffset() {
+        return blockStart + lineStart;
+    }
+
+    @Override
+    public String lineString() {
+        return new String(buffer.array(), lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
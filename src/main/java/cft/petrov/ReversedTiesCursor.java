@@ -0,0 +1,143 @@
+package cft.petrov;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Курсор по строкам файла, читаемого с конца (см. класс ReverseLineReader), к-й возвращает равные строки
+ * в порядке файла. С конца серия равных по компаратору, но разных строк (н-р, "a1", "a01", "a001")
+ * читается от последней к первой, а устойчивая сортировка по убыванию оставляет ее в порядке файла.
+ * Поэтому курсор дочитывает серию до первой неравной строки и отдает ее строки в обратном порядке.
+ * Подряд идущие одинаковые строки хранятся один раз со счетчиком, так что в памяти - лишь различные строки
+ * одной серии. Для целых чисел курсор не нужен: равные числа записываются в выходной файл одинаково.
+ */
+public class ReversedTiesCursor implements DataCursor {
+
+    private final DataCursor source;
+    private final DataType dataType;
+    private final Comparator<String> comparator;
+    private final List<Tie> run = new ArrayList<>();  // серия равных строк в порядке чтения (с конца файла)
+    private Tie current;
+    private Tie lookahead;         // первая строка следующей серии (уже прочитана из source)
+    private boolean finished;      // source дочитан до конца
+
+    /**
+     * Одинаковые строки серии: строка, смещение и номер первой из них в порядке чтения, кол-во повторов.
+     */
+    private static final class Tie {
+        private final String line;
+        private final long number;
+        private final long offset;
+        private final long lineNumber;
+        private long count = 1;
+
+        private Tie(String line, long number, long offset, long lineNumber) {
+            this.line = line;
+            this.number = number;
+            this.offset = offset;
+            this.lineNumber = lineNumber;
+        }
+    }
+
+    /**
+     * @param source     курсор строк файла, читаемого с конца
+     * @param dataType   тип данных, с к-м работает программа
+     * @param comparator компаратор строк
+     */
+    public ReversedTiesCursor(DataCursor source, DataType dataType, Comparator<String> comparator) {
+        this.source = source;
+        this.dataType = dataType;
+        this.comparator = comparator;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (current != null && --current.count > 0) {
+            return true;
+        }
+        if (run.isEmpty() && !readRun()) {
+            current = null;
+            return false;
+        }
+        current = run.remove(run.size() - 1);
+        return true;
+    }
+
+    /**
+     * Метод читает очередную серию равных строк.
+     *
+     * @return false, если строк больше нет
+     */
+    private boolean readRun() throws IOException {
+        Tie first = lookahead != null ? lookahead : readTie();
+        lookahead = null;
+        if (first == null) {
+            return false;
+        }
+        run.add(first);
+        Tie last = first;
+        Tie next;
+        while ((next = readTie()) != null) {
+            if (compare(next, first) != 0) {
+                lookahead = next;
+                break;
+            }
+            if (dataType.isNumeric() || next.line.equals(last.line)) {
+                last.count++;
+            }
+            else {
+                run.add(next);
+                last = next;
+            }
+        }
+        return true;
+    }
+
+    private int compare(Tie a, Tie b) {
+        return dataType.isNumeric() ? Long.compare(a.number, b.number) : comparator.compare(a.line, b.line);
+    }
+
+    private Tie readTie() throws IOException {
+        if (finished || !source.next()) {
+            finished = true;
+            return null;
+        }
+        // числовое значение есть только у строк целочисленных типов (см. DataCursor.currentNumber)
+        return dataType.isNumeric()
+                ? new Tie(null, source.currentNumber(), source.currentOffset(), source.currentLineNumber())
+                : new Tie(source.current(), 0, source.currentOffset(), source.currentLineNumber());
+    }
+
+    @Override
+    public String current() {
+        return dataType.isNumeric() ? Long.toString(current.number) : current.line;
+    }
+
+    @Override
+    public long currentNumber() {
+        return current.number;
+    }
+
+    @Override
+    public long currentOffset() {
+        return current.offset;
+    }
+
+    @Override
+    public long currentLineNumber() {
+        return current.lineNumber;
+    }
+
+    @Override
+    public String getFileName() {
+        return source.getFileName();
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+}
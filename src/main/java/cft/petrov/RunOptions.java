@@ -0,0 +1,245 @@
+package cft.petrov;
+
+/**
+ * Дополнительные (необязательные) параметры запуска программы,
+ * передаваемые в командной строке в виде "--имя" или "--имя=значение".
+ */
+public class RunOptions {
+    // потоковое слияние входных файлов без загрузки всех данных в память
+    private boolean streaming;
+    // уровень параллелизма сортировки (1 - последовательная сортировка)
+    private int parallelism = 1;
+    // порог длины подмассива, выше к-го параллельная сортировка делит задачу
+    private int parallelThreshold = ParallelMergeSort.DEFAULT_THRESHOLD;
+    // способ сортировки массива в памяти
+    private SortEngine sortEngine = SortEngine.AUTO;
+    // входные файлы не упорядочены: вместо отбрасывания строк выполняется внешняя сортировка
+    private boolean unsorted;
+    // входные файлы гарантированно упорядочены: по убыванию их можно слить потоком, читая с конца
+    private boolean presorted;
+    // бюджет памяти (в байтах) на порцию данных внешней сортировки
+    private long maxMemory = Runtime.getRuntime().maxMemory() / 2;
+    // каталог временных файлов (null - системный каталог временных файлов)
+    private String tempDir;
+    // размер буфера записи выходного файла (в байтах)
+    private int writeBufferSize = ChannelLineWriter.DEFAULT_BUFFER_SIZE;
+    // писать ли выходной файл в отдельном потоке, пока форматируется следующий буфер
+    private boolean asyncWrite;
+    // размер буфера распаковки / сжатия файлов ".gz" (в байтах)
+    private int gzipBufferSize = StreamLineReader.DEFAULT_BUFFER_SIZE;
+    // кол-во потоков проверки входных файлов (1 - файлы проверяются по очереди)
+    private int threads = 1;
+    // уровень подробности сообщений программы
+    private ReportLevel reportLevel = ReportLevel.SUMMARY;
+    // файл, в к-й записываются отброшенные строки входных файлов (null - не ведется)
+    private String rejectsFileName;
+    // файл отчета JSON со статистикой запуска (null - отчет не пишется)
+    private String statsFileName;
+    // сколько первых строк результата записать в выходной файл (0 - все)
+    private long limit;
+    // через сколько строк выходного файла записывается ключ в разреженный индекс (0 - индекс не пишется)
+    private int indexInterval;
+    // границы извлекаемого диапазона [from, to] (null - граница не задана; обе null - режим диапазона выключен)
+    private String rangeFrom;
+    private String rangeTo;
+    // через сколько строк потокового слияния сохраняется контрольная точка (0 - не сохраняется)
+    private long checkpointInterval;
+    // продолжить ли прерванное слияние с контрольной точки
+    private boolean resume;
+    // на сколько файлов-сегментов разбивается результат (1 - один выходной файл)
+    private int shards = 1;
+    // наибольшее кол-во файлов, сливаемых за один проход (больше - слияние в несколько проходов)
+    private int fanIn = MultiPassMerger.DEFAULT_FAN_IN;
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public SortEngine getSortEngine() {
+        return sortEngine;
+    }
+
+    void setSortEngine(SortEngine sortEngine) {
+        this.sortEngine = sortEngine;
+    }
+
+    public boolean isUnsorted() {
+        return unsorted;
+    }
+
+    void setUnsorted(boolean unsorted) {
+        this.unsorted = unsorted;
+    }
+
+    public boolean isPresorted() {
+        return presorted;
+    }
+
+    void setPresorted(boolean presorted) {
+        this.presorted = presorted;
+    }
+
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    void setMaxMemory(long maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    public String getTempDir() {
+        return tempDir;
+    }
+
+    void setTempDir(String tempDir) {
+        this.tempDir = tempDir;
+    }
+
+    public int getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
+    void setWriteBufferSize(int writeBufferSize) {
+        this.writeBufferSize = writeBufferSize;
+    }
+
+    public boolean isAsyncWrite() {
+        return asyncWrite;
+    }
+
+    void setAsyncWrite(boolean asyncWrite) {
+        this.asyncWrite = asyncWrite;
+    }
+
+    public int getGzipBufferSize() {
+        return gzipBufferSize;
+    }
+
+    void setGzipBufferSize(int gzipBufferSize) {
+        this.gzipBufferSize = gzipBufferSize;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public ReportLevel getReportLevel() {
+        return reportLevel;
+    }
+
+    void setReportLevel(ReportLevel reportLevel) {
+        this.reportLevel = reportLevel;
+    }
+
+    public String getRejectsFileName() {
+        return rejectsFileName;
+    }
+
+    void setRejectsFileName(String rejectsFileName) {
+        this.rejectsFileName = rejectsFileName;
+    }
+
+    public String getStatsFileName() {
+        return statsFileName;
+    }
+
+    void setStatsFileName(String statsFileName) {
+        this.statsFileName = statsFileName;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    void setLimit(long limit) {
+        this.limit = limit;
+    }
+
+    public int getIndexInterval() {
+        return indexInterval;
+    }
+
+    void setIndexInterval(int indexInterval) {
+        this.indexInterval = indexInterval;
+    }
+
+    public String getRangeFrom() {
+        return rangeFrom;
+    }
+
+    void setRangeFrom(String rangeFrom) {
+        this.rangeFrom = rangeFrom;
+    }
+
+    public String getRangeTo() {
+        return rangeTo;
+    }
+
+    void setRangeTo(String rangeTo) {
+        this.rangeTo = rangeTo;
+    }
+
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    void setCheckpointInterval(long checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    void setShards(int shards) {
+        this.shards = shards;
+    }
+
+    public int getFanIn() {
+        return fanIn;
+    }
+
+    void setFanIn(int fanIn) {
+        this.fanIn = fanIn;
+    }
+
+    /**
+     * Задан ли диапазон извлекаемых строк (параметры --from / --to).
+     */
+    public boolean isRangeQuery() {
+        return rangeFrom != null || rangeTo != null;
+    }
+
+}
@@ -0,0 +1,252 @@
+package cft.petrov;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.ToLongFunction;
+
+/**
+ * Статистика запуска программы для отчета в формате JSON (параметр --stats):
+ * время этапов работы (см. Phase), строки и байты входных и выходного файлов, скорость их обработки,
+ * пиковый объем кучи и работа сборщика мусора.
+ * Этапы могут быть вложенными (н-р, сортировка порции во время чтения входных файлов):
+ * вложенный этап приостанавливает внешний, так что время каждого этапа - "чистое", и сумма не превышает общего.
+ * Этапы отмечаются только в основном потоке программы.
+ */
+public class RunStats {
+
+    private final Instant startedAt = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final long[] phaseCalls = new long[Phase.values().length];
+    private final Deque<Phase> activePhases = new ArrayDeque<>();
+    private long activeSince;      // начало текущего отрезка времени самого вложенного этапа
+
+    private String outputFileName;
+    private long outputLines;
+
+    public RunStats() {
+        // пиковый объем кучи считается с начала работы программы
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Метод отмечает начало этапа работы программы (внешний этап, если он есть, приостанавливается).
+     */
+    public void start(Phase phase) {
+        long now = System.nanoTime();
+        Phase outer = activePhases.peek();
+        if (outer != null) {
+            phaseNanos[outer.ordinal()] += now - activeSince;
+        }
+        activePhases.push(phase);
+        phaseCalls[phase.ordinal()]++;
+        activeSince = now;
+    }
+
+    /**
+     * Метод отмечает окончание этапа, начатого последним (внешний этап, если он есть, продолжается).
+     */
+    public void stop(Phase phase) {
+        long now = System.nanoTime();
+        if (activePhases.peek() != phase) {
+            throw new IllegalStateException("Этап " + phase + " не был начат последним");
+        }
+        activePhases.pop();
+        phaseNanos[phase.ordinal()] += now - activeSince;
+        activeSince = now;
+    }
+
+    /**
+     * Метод учитывает запись выходного файла.
+     *
+     * @param fileName имя выходного файла
+     * @param lines    кол-во записанных строк
+     */
+    public void countOutput(String fileName, long lines) {
+        this.outputFileName = fileName;
+        this.outputLines += lines;
+    }
+
+    /**
+     * Метод записывает отчет в формате JSON.
+     *
+     * @param path      путь к файлу отчета
+     * @param fileStats счетчики строк входных файлов
+     * @throws IOException если файл не удалось записать
+     */
+    public void writeJson(Path path, List<FileStats> fileStats) throws IOException {
+        long wallNanos = System.nanoTime() - startNanos;
+        double wallSeconds = wallNanos / 1e9;
+        long inputLines = 0, inputBytes = 0, accepted = 0;
+        long[] rejected = new long[RejectReason.values().length];
+        for (FileStats stats : fileStats) {
+            inputLines += stats.getRead();
+            inputBytes += Math.max(0, stats.getBytes());
+            accepted += stats.getAccepted();
+            for (RejectReason reason : RejectReason.values()) {
+                rejected[reason.ordinal()] += stats.getRejected(reason);
+            }
+        }
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"startedAt\": ").append(quote(startedAt.toString())).append(",\n");
+        json.append("  \"wallTimeMs\": ").append(millis(wallNanos)).append(",\n");
+
+        json.append("  \"phases\": {");
+        String separator = "\n";
+        for (Phase phase : Phase.values()) {
+            if (phaseCalls[phase.ordinal()] == 0) {
+                continue;
+            }
+            json.append(separator).append("    ").append(quote(key(phase))).append(": { \"timeMs\": ")
+                    .append(millis(phaseNanos[phase.ordinal()])).append(", \"calls\": ")
+                    .append(phaseCalls[phase.ordinal()]).append(" }");
+            separator = ",\n";
+        }
+        json.append("\n  },\n");
+
+        json.append("  \"input\": {\n");
+        json.append("    \"files\": ").append(fileStats.size()).append(",\n");
+        json.append("    \"lines\": ").append(inputLines).append(",\n");
+        json.append("    \"bytes\": ").append(inputBytes).append(",\n");
+        json.append("    \"accepted\": ").append(accepted).append(",\n");
+        json.append("    \"rejected\": ").append(rejectedJson(reason -> rejected[reason.ordinal()])).append(",\n");
+        json.append("    \"linesPerSec\": ").append(rate(inputLines, wallSeconds)).append(",\n");
+        json.append("    \"bytesPerSec\": ").append(rate(inputBytes, wallSeconds)).append("\n");
+        json.append("  },\n");
+
+        json.append("  \"files\": [");
+        separator = "\n";
+        for (FileStats stats : fileStats) {
+            json.append(separator).append("    { \"name\": ").append(quote(stats.getFileName()))
+                    .append(", \"bytes\": ").append(stats.getBytes() < 0 ? "null" : stats.getBytes())
+                    .append(", \"lines\": ").append(stats.getRead())
+                    .append(", \"accepted\": ").append(stats.getAccepted())
+                    .append(", \"rejected\": ").append(rejectedJson(stats::getRejected));
+            if (stats.getElapsedNanos() >= 0) {
+                // время файла известно, только если файл проверялся отдельно от слияния
+                double seconds = stats.getElapsedNanos() / 1e9;
+                json.append(", \"timeMs\": ").append(millis(stats.getElapsedNanos()))
+                        .append(", \"linesPerSec\": ").append(rate(stats.getRead(), seconds))
+                        .append(", \"bytesPerSec\": ").append(rate(Math.max(0, stats.getBytes()), seconds));
+            }
+            json.append(" }");
+            separator = ",\n";
+        }
+        json.append(fileStats.isEmpty() ? "],\n" : "\n  ],\n");
+
+        json.append("  \"output\": {\n");
+        json.append("    \"file\": ").append(outputFileName == null ? "null" : quote(outputFileName)).append(",\n");
+        json.append("    \"lines\": ").append(outputLines).append(",\n");
+        json.append("    \"bytes\": ").append(outputBytes()).append(",\n");
+        json.append("    \"linesPerSec\": ").append(rate(outputLines, wallSeconds)).append("\n");
+        json.append("  },\n");
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+        json.append("  \"memory\": {\n");
+        json.append("    \"peakHeapBytes\": ").append(peakHeap).append(",\n");
+        json.append("    \"maxHeapBytes\": ").append(Runtime.getRuntime().maxMemory()).append("\n");
+        json.append("  },\n");
+
+        json.append("  \"gc\": [");
+        separator = "\n";
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            json.append(separator).append("    { \"name\": ").append(quote(gc.getName()))
+                    .append(", \"count\": ").append(Math.max(0, gc.getCollectionCount()))
+                    .append(", \"timeMs\": ").append(Math.max(0, gc.getCollectionTime())).append(" }");
+            separator = ",\n";
+        }
+        json.append("\n  ]\n");
+        json.append("}\n");
+
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write(json.toString());
+        }
+    }
+
+    /**
+     * Метод возвращает размер выходного файла (null, если файл не записан).
+     */
+    private String outputBytes() {
+        if (outputFileName == null || LineReader.isStream(outputFileName)) {
+            return "null";  // размер стандартного вывода (канала) неизвестен
+        }
+        try {
+            return Long.toString(Files.size(Path.of(outputFileName)));
+        }
+        catch (IOException e) {
+            return "null";
+        }
+    }
+
+    private static String rejectedJson(ToLongFunction<RejectReason> rejected) {
+        StringBuilder json = new StringBuilder("{ ");
+        String separator = "";
+        for (RejectReason reason : RejectReason.values()) {
+            json.append(separator).append(quote(key(reason))).append(": ").append(rejected.applyAsLong(reason));
+            separator = ", ";
+        }
+        return json.append(" }").toString();
+    }
+
+    private static String key(Enum<?> constant) {
+        return constant.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static String rate(long count, double seconds) {
+        return seconds > 0 ? String.format(Locale.ROOT, "%.1f", count / seconds) : "null";
+    }
+
+    /**
+     * Метод заключает строку в кавычки, экранируя символы по правилам JSON.
+     */
+    private static String quote(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (ch < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) ch));
+                    }
+                    else {
+                        sb.append(ch);
+                    }
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+}
@@ -0,0 +1,98 @@
+package cft.petrov;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Манифест сегментов выходного файла (параметр --shards): текстовый файл "ВЫХФАЙЛ.shards" рядом с сегментами.
+ * Сегменты - файлы "ВЫХФАЙЛ-01.txt", "ВЫХФАЙЛ-02.txt", ... в том же каталоге: каждый упорядочен,
+ * а диапазоны ключей сегментов не пересекаются и идут в порядке сортировки.
+ * <pre>
+ * # shards count=N lines=СТРОК
+ * файл TAB строк TAB первый ключ TAB последний ключ
+ * ...
+ * </pre>
+ * У пустого сегмента первый и последний ключи пусты.
+ */
+public class ShardManifest {
+    static final String HEADER = "# shards count=";
+    private static final String SUFFIX = ".shards";
+    // мин. кол-во цифр номера сегмента в имени файла ("out-01.txt")
+    private static final int MIN_NUMBER_DIGITS = 2;
+
+    private final List<String> entries = new ArrayList<>();
+    private long lines;
+
+    /**
+     * Метод возвращает путь к манифесту сегментов выходного файла ("ВЫХФАЙЛ.shards" в том же каталоге).
+     */
+    static Path pathFor(Path outputPath) {
+        return outputPath.resolveSibling(outputPath.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Метод возвращает путь к сегменту выходного файла: номер сегмента (с 1, дополненный нулями
+     * не меньше чем до двух цифр и до длины номера последнего сегмента, чтобы имена сегментов упорядочивались
+     * так же, как их ключи)
+     * вставляется перед расширением ".txt", н-р "out.txt" -> "out-01.txt", "out.txt.gz" -> "out-01.txt.gz".
+     *
+     * @param outputPath путь к выходному файлу
+     * @param shard      номер сегмента (с 0)
+     * @param shards     кол-во сегментов
+     */
+    static Path shardPath(Path outputPath, int shard, int shards) {
+        String name = outputPath.getFileName().toString();
+        int extension = name.toLowerCase(Locale.ROOT).lastIndexOf(".txt");
+        if (extension < 0) {
+            extension = name.length();
+        }
+        int digits = Math.max(MIN_NUMBER_DIGITS, String.valueOf(shards).length());
+        String number = String.format("%0" + digits + "d", shard + 1);
+        return outputPath.resolveSibling(name.substring(0, extension) + "-" + number + name.substring(extension));
+    }
+
+    /**
+     * Метод добавляет в манифест очередной сегмент.
+     *
+     * @param shardPath путь к сегменту
+     * @param lines     кол-во строк сегмента
+     * @param first     первый ключ сегмента (null - сегмент пуст)
+     * @param last      последний ключ сегмента
+     */
+    void add(Path shardPath, long lines, String first, String last) {
+        this.lines += lines;
+        entries.add(shardPath.getFileName() + "\t" + lines + "\t" + (first == null ? "" : first)
+                + "\t" + (last == null ? "" : last));
+    }
+
+    /**
+     * Кол-во строк всех сегментов.
+     */
+    long getLines() {
+        return lines;
+    }
+
+    /**
+     * Метод записывает манифест (существующий файл перезаписывается).
+     *
+     * @param path путь к манифесту
+     * @throws IOException если манифест не удалось записать
+     */
+    void write(Path path) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write(HEADER + entries.size() + " lines=" + lines);
+            out.newLine();
+            for (String entry : entries) {
+                out.write(entry);
+                out.newLine();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+package cft.petrov;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Выбор точек разбиения результата потокового слияния на сегменты (параметр --shards) по выборке ключей.
+ * Число строк результата до конца слияния неизвестно, поэтому границы сегментов выбираются заранее:
+ * в каждом упорядоченном несжатом входном файле читаются строки по SAMPLES_PER_FILE равноотстоящим смещениям
+ * (см. класс FileProbe), и каждая такая строка представляет равную долю байт своего файла.
+ * Границы сегментов - ключи выборки, делящие суммарный вес выборки на N равных частей.
+ * Сжатые файлы и потоки нельзя читать с середины, поэтому в выборку они не попадают.
+ */
+public class ShardSampler {
+    // кол-во строк выборки из каждого входного файла
+    static final int SAMPLES_PER_FILE = 1024;
+
+    private final DataType dataType;
+    private final Comparator<String> comparator;
+    private final Reporter reporter;
+
+    /**
+     * Строка выборки: ключ и доля байт входного файла, к-ю она представляет.
+     */
+    private record Sample(long number, String string, double weight) { }
+
+    public ShardSampler(DataType dataType, Comparator<String> comparator, Reporter reporter) {
+        this.dataType = dataType;
+        this.comparator = comparator;
+        this.reporter = reporter;
+    }
+
+    /**
+     * Метод выбирает точки разбиения результата слияния упорядоченных по возрастанию входных файлов.
+     *
+     * @param inputFileNames список имен входных файлов
+     * @param shards         кол-во сегментов
+     * @return               точки разбиения или null, если ни один файл не удалось прочитать с середины
+     */
+    public ShardedLineWriter.Split sample(List<String> inputFileNames, int shards) {
+        List<Sample> samples = new ArrayList<>();
+        for (String fileName : inputFileNames) {
+            if (LineReader.isGzip(fileName) || LineReader.isStream(fileName)) {
+                reporter.detail("Файл %s нельзя читать с середины и в выборку ключей не попадает.\n", fileName);
+                continue;
+            }
+            try (FileProbe file = new FileProbe(Path.of(fileName))) {
+                sampleFile(file, samples);
+            }
+            catch (IOException e) {
+                // об отсутствии или ошибке чтения файла сообщит открытие его курсора
+                reporter.detail("Файл %s не попал в выборку ключей: %s\n", fileName, e.getMessage());
+            }
+        }
+        if (samples.isEmpty()) {
+            return null;
+        }
+
+        samples.sort(dataType.isNumeric()
+                ? Comparator.comparingLong(Sample::number)
+                : Comparator.comparing(Sample::string, comparator));
+        double totalWeight = samples.stream().mapToDouble(Sample::weight).sum();
+        long[] numbers = new long[shards - 1];
+        String[] strings = new String[shards - 1];
+        double cumulative = 0;
+        int i = 0;
+        for (int shard = 0; shard < shards - 1; shard++) {
+            // граница сегмента - ключ, на к-м вес выборки достигает его доли
+            double target = totalWeight * (shard + 1) / shards;
+            while (i < samples.size() - 1 && cumulative + samples.get(i).weight() < target) {
+                cumulative += samples.get(i).weight();
+                i++;
+            }
+            numbers[shard] = samples.get(i).number();
+            strings[shard] = samples.get(i).string();
+        }
+        reporter.detail("Точки разбиения на сегменты выбраны по выборке из %d строк входных файлов.\n",
+                samples.size());
+        return dataType.isNumeric() ? ShardedLineWriter.Split.byKeys(numbers) : ShardedLineWriter.Split.byKeys(strings);
+    }
+
+    /**
+     * Метод читает строки файла по равноотстоящим смещениям и добавляет валидные из них в выборку.
+     */
+    private void sampleFile(FileProbe file, List<Sample> samples) throws IOException {
+        long size = file.size();
+        if (size == 0) {
+            return;
+        }
+        double weight = (double) size / SAMPLES_PER_FILE;
+        long previous = -1;
+        for (int i = 0; i < SAMPLES_PER_FILE; i++) {
+            long lineStart = file.nextLineStart(size * i / SAMPLES_PER_FILE);
+            if (lineStart >= size) {
+                break;
+            }
+            // короткий файл: несколько смещений попадают в одну строку, ее вес складывается
+            if (lineStart == previous) {
+                Sample last = samples.remove(samples.size() - 1);
+                samples.add(new Sample(last.number(), last.string(), last.weight() + weight));
+                continue;
+            }
+            String line = file.readLine(lineStart);
+            if (isValidKey(line)) {
+                samples.add(dataType.isNumeric()
+                        ? new Sample(Long.parseLong(line), null, weight)
+                        : new Sample(0, line, weight));
+                previous = lineStart;
+            }
+        }
+    }
+
+    /**
+     * Метод проверяет, примет ли строку курсор входного файла (пустые, с пробелами и чужого типа - нет).
+     */
+    private boolean isValidKey(String line) {
+        if (line.isEmpty() || line.indexOf(' ') >= 0) {
+            return false;
+        }
+        if (dataType == DataType.INTEGER) {
+            return InputFilesAnalyzer.isInteger(line);
+        }
+        if (dataType == DataType.LONG) {
+            return InputFilesAnalyzer.isLong(line);
+        }
+        return !InputFilesAnalyzer.isInteger(line);
+    }
+
+}
@@ -0,0 +1,266 @@
+package cft.petrov;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+/**
+ * Построчная запись упорядоченного потока строк (результата слияния) в N файлов-сегментов (параметр --shards).
+ * Строки идут в порядке сортировки, поэтому сегменты заполняются по очереди: очередная строка переключает
+ * запись на следующий сегмент, когда текущий набрал свою долю строк (точки разбиения по точному числу строк)
+ * или когда ключ строки вышел за верхнюю границу сегмента (точки разбиения по выборке ключей, см. ShardSampler).
+ * Строки с равными ключами всегда попадают в один сегмент, так что диапазоны сегментов не пересекаются.
+ * При закрытии создаются оставшиеся пустые сегменты и пишется манифест (см. класс ShardManifest).
+ */
+public class ShardedLineWriter implements LineWriter {
+
+    private final Path outputPath;
+    private final int shards;
+    private final Split split;
+    private final Opener opener;
+    private final Comparator<String> comparator = new CustomComparator();
+    private final ShardManifest manifest = new ShardManifest();
+
+    private int shard = -1;            // номер текущего сегмента
+    private ChannelLineWriter out;     // запись текущего сегмента
+    private long written;              // кол-во строк всех сегментов
+    private long shardLines;           // кол-во строк текущего сегмента
+    private String first;              // первый ключ текущего сегмента
+    private long lastNumber;           // последний ключ текущего сегмента
+    private String lastString;
+    private boolean hasLast;
+    private boolean numeric;           // пишутся ли строки-числа
+
+    /**
+     * Объект, открывающий файл сегмента на запись (н-р, с разреженным индексом).
+     */
+    @FunctionalInterface
+    public interface Opener {
+        ChannelLineWriter open(Path path) throws IOException;
+    }
+
+    /**
+     * @param outputPath путь к выходному файлу (по нему строятся имена сегментов и манифеста)
+     * @param shards     кол-во сегментов
+     * @param split      точки разбиения
+     * @param opener     объект, открывающий файл сегмента
+     */
+    public ShardedLineWriter(Path outputPath, int shards, Split split, Opener opener) {
+        this.outputPath = outputPath;
+        this.shards = shards;
+        this.split = split;
+        this.opener = opener;
+    }
+
+    @Override
+    public void writeLine(int value) throws IOException {
+        route(value);
+        out.writeLine(value);
+    }
+
+    @Override
+    public void writeLine(long value) throws IOException {
+        route(value);
+        out.writeLine(value);
+    }
+
+    @Override
+    public void writeLine(String line) throws IOException {
+        if (out == null || !hasLast || comparator.compare(line, lastString) != 0) {
+            // равные ключи не разделяются между сегментами
+            while (shard < shards - 1 && (shard < 0 || split.isBeyond(shard, written, line, comparator))) {
+                nextShard();
+            }
+            if (first == null) {
+                first = line;
+            }
+        }
+        lastString = line;
+        hasLast = true;
+        count();
+        out.writeLine(line);
+    }
+
+    /**
+     * Метод выбирает сегмент для строки с числом (см. writeLine(String)).
+     */
+    private void route(long value) throws IOException {
+        if (out == null || !hasLast || value != lastNumber) {
+            while (shard < shards - 1 && (shard < 0 || split.isBeyond(shard, written, value))) {
+                nextShard();
+            }
+            if (first == null) {
+                first = Long.toString(value);
+            }
+        }
+        lastNumber = value;
+        hasLast = true;
+        numeric = true;
+        count();
+    }
+
+    private void count() {
+        written++;
+        shardLines++;
+    }
+
+    /**
+     * Метод закрывает текущий сегмент (добавляя его в манифест) и открывает следующий.
+     */
+    private void nextShard() throws IOException {
+        closeShard();
+        shard++;
+        out = opener.open(ShardManifest.shardPath(outputPath, shard, shards));
+    }
+
+    private void closeShard() throws IOException {
+        if (out == null) {
+            return;
+        }
+        ChannelLineWriter closing = out;
+        out = null;
+        closing.close();
+        manifest.add(ShardManifest.shardPath(outputPath, shard, shards), shardLines, first,
+                first == null ? null : numeric ? Long.toString(lastNumber) : lastString);
+        shardLines = 0;
+        first = null;
+        hasLast = false;
+    }
+
+    /**
+     * Кол-во записанных строк всех сегментов.
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Путь к манифесту сегментов.
+     */
+    public Path getManifestPath() {
+        return ShardManifest.pathFor(outputPath);
+    }
+
+    /**
+     * Метод закрывает текущий сегмент, создает оставшиеся пустые сегменты и записывает манифест.
+     */
+    @Override
+    public void close() throws IOException {
+        while (shard < shards - 1) {
+            nextShard();
+        }
+        closeShard();
+        manifest.write(getManifestPath());
+    }
+
+    /**
+     * Метод закрывает текущий сегмент без записи манифеста (запись сегментов не удалась).
+     */
+    public void abort() throws IOException {
+        if (out != null) {
+            ChannelLineWriter closing = out;
+            out = null;
+            closing.close();
+        }
+    }
+
+    /**
+     * Точки разбиения потока строк на сегменты: по точному числу строк результата
+     * (каждый сегмент получает около total / N строк) или по верхним границам ключей сегментов
+     * (для результата, упорядоченного по возрастанию).
+     */
+    public static final class Split {
+        private final long total;         // кол-во строк результата (-1 - разбиение по ключам)
+        private final int shards;
+        private final long[] numbers;     // верхние границы ключей-чисел сегментов 0..N-2
+        private final String[] strings;   // верхние границы ключей-строк
+        private final boolean descending; // результат упорядочен по убыванию: границы - нижние
+
+        private Split(long total, int shards, long[] numbers, String[] strings, boolean descending) {
+            this.total = total;
+            this.shards = shards;
+            this.numbers = numbers;
+            this.strings = strings;
+            this.descending = descending;
+        }
+
+        /**
+         * Разбиение по точному числу строк результата.
+         */
+        public static Split byCount(long total, int shards) {
+            return new Split(total, shards, null, null, false);
+        }
+
+        /**
+         * Разбиение по верхним границам ключей-чисел сегментов (границы N-1 первых сегментов).
+         */
+        public static Split byKeys(long[] bounds) {
+            return new Split(-1, bounds.length + 1, bounds, null, false);
+        }
+
+        /**
+         * Разбиение по верхним границам ключей-строк сегментов.
+         */
+        public static Split byKeys(String[] bounds) {
+            return new Split(-1, bounds.length + 1, null, bounds, false);
+        }
+
+        /**
+         * Метод возвращает то же разбиение для результата, упорядоченного по убыванию:
+         * сегменты содержат те же диапазоны ключей, но нумеруются от больших ключей к меньшим.
+         */
+        public Split reversed() {
+            if (total >= 0) {
+                return this;
+            }
+            long[] reversedNumbers = null;
+            String[] reversedStrings = null;
+            if (numbers != null) {
+                reversedNumbers = new long[numbers.length];
+                for (int i = 0; i < numbers.length; i++) {
+                    reversedNumbers[i] = numbers[numbers.length - 1 - i];
+                }
+            }
+            else {
+                reversedStrings = new String[strings.length];
+                for (int i = 0; i < strings.length; i++) {
+                    reversedStrings[i] = strings[strings.length - 1 - i];
+                }
+            }
+            return new Split(total, shards, reversedNumbers, reversedStrings, !descending);
+        }
+
+        /**
+         * Метод проверяет, должна ли строка с новым ключом-числом перейти в следующий сегмент.
+         *
+         * @param shard   номер текущего сегмента
+         * @param written кол-во строк, уже записанных во все сегменты
+         * @param key     ключ строки
+         */
+        boolean isBeyond(int shard, long written, long key) {
+            if (total >= 0) {
+                return written >= boundary(shard + 1);
+            }
+            return descending ? key <= numbers[shard] : key > numbers[shard];
+        }
+
+        /**
+         * Метод проверяет, должна ли строка с новым ключом-строкой перейти в следующий сегмент.
+         */
+        boolean isBeyond(int shard, long written, String key, Comparator<String> comparator) {
+            if (total >= 0) {
+                return written >= boundary(shard + 1);
+            }
+            int order = comparator.compare(key, strings[shard]);
+            return descending ? order <= 0 : order > 0;
+        }
+
+        /**
+         * Кол-во строк результата до начала сегмента shard.
+         */
+        private long boundary(int shard) {
+            return total * shard / shards;
+        }
+    }
+
+}
@@ -0,0 +1,11 @@
+package cft.petrov;
+
+/**
+ * Способ (движок) сортировки массива данных в памяти.
+ */
+public enum SortEngine {
+    AUTO,   // выбор по типу данных и размеру массива (см. ValidDataManager)
+    MERGE,  // сортировка слиянием (IntegerMergeSort, StringMergeSort, ParallelMergeSort)
+    RADIX,  // поразрядная сортировка (IntegerRadixSort, StringRadixSort)
+    NATURAL // естественная сортировка слиянием готовых серий (NaturalMergeSort)
+}
@@ -0,0 +1,168 @@
+package cft.petrov;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Разреженный индекс упорядоченного по возрастанию файла (параметр --index): ключ каждой K-й строки
+ * и смещение этой строки в байтах от начала файла. Индекс - текстовый файл "ФАЙЛ.idx" рядом с самим файлом:
+ * <pre>
+ * # sparse-index interval=K
+ * смещение TAB ключ
+ * ...
+ * # end bytes=РАЗМЕР_ФАЙЛА lines=СТРОК
+ * </pre>
+ * Индекс пишет SparseIndexWriter, а класс RangeQuery ищет по нему начало диапазона ключей:
+ * двоичный поиск по индексу указывает место в файле, с к-го до начала диапазона остается не больше K строк.
+ */
+public class SparseIndex {
+    static final int DEFAULT_INTERVAL = 1024;
+    static final String HEADER = "# sparse-index interval=";
+    static final String TRAILER = "# end bytes=";
+    private static final String SUFFIX = ".idx";
+
+    private final long[] offsets;
+    private final long[] numbers;   // ключи-числа (для целочисленных типов данных)
+    private final String[] strings; // ключи-строки
+    private final Comparator<String> comparator;
+
+    private SparseIndex(long[] offsets, long[] numbers, String[] strings, Comparator<String> comparator) {
+        this.offsets = offsets;
+        this.numbers = numbers;
+        this.strings = strings;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Метод возвращает путь к индексу файла ("ФАЙЛ.idx" в том же каталоге).
+     */
+    static Path pathFor(Path dataPath) {
+        return dataPath.resolveSibling(dataPath.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Метод читает индекс файла и проверяет, что он соответствует файлу: записан до конца,
+     * не старше файла, указывает его размер, а ключи подходят к типу данных и упорядочены по возрастанию.
+     *
+     * @param dataPath   путь к файлу с данными
+     * @param dataType   тип данных, с к-м работает программа
+     * @param comparator компаратор строк
+     * @return           индекс или null, если у файла нет индекса
+     * @throws IOException если индекс не удалось прочитать или он не соответствует файлу (устарел, поврежден)
+     */
+    static SparseIndex load(Path dataPath, DataType dataType, Comparator<String> comparator) throws IOException {
+        Path indexPath = pathFor(dataPath);
+        if (!Files.exists(indexPath)) {
+            return null;
+        }
+        if (Files.getLastModifiedTime(indexPath).compareTo(Files.getLastModifiedTime(dataPath)) < 0) {
+            throw new IOException("индекс старше самого файла");
+        }
+
+        long[] offsets = new long[1024];
+        long[] numbers = new long[dataType.isNumeric() ? offsets.length : 0];
+        List<String> strings = new ArrayList<>();
+        int size = 0;
+        long dataBytes = -1;
+        try (BufferedReader in = Files.newBufferedReader(indexPath, StandardCharsets.UTF_8)) {
+            String line = in.readLine();
+            if (line == null || !line.startsWith(HEADER)) {
+                throw new IOException("нет заголовка индекса");
+            }
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(TRAILER)) {
+                    dataBytes = Long.parseLong(line.substring(TRAILER.length(), line.indexOf(' ', TRAILER.length())));
+                    break;
+                }
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    throw new IOException("строка индекса без ключа");
+                }
+                if (size == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, 2 * size);
+                    if (dataType.isNumeric()) {
+                        numbers = Arrays.copyOf(numbers, 2 * size);
+                    }
+                }
+                offsets[size] = Long.parseLong(line.substring(0, tab));
+                String key = line.substring(tab + 1);
+                if (dataType.isNumeric()) {
+                    numbers[size] = dataType == DataType.INTEGER ? Integer.parseInt(key) : Long.parseLong(key);
+                }
+                else if (InputFilesAnalyzer.isInteger(key)) {
+                    throw new IOException("ключи индекса - числа, а не строки");
+                }
+                else {
+                    strings.add(key);
+                }
+                if (size > 0 && (offsets[size] <= offsets[size - 1] || (dataType.isNumeric()
+                        ? Long.compare(numbers[size], numbers[size - 1])
+                        : comparator.compare(strings.get(size), strings.get(size - 1))) < 0)) {
+                    throw new IOException("ключи индекса не упорядочены по возрастанию");
+                }
+                size++;
+            }
+        }
+        catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new IOException("индекс поврежден или его ключи не соответствуют типу данных");
+        }
+        if (dataBytes < 0) {
+            throw new IOException("индекс записан не до конца");
+        }
+        if (dataBytes != Files.size(dataPath)) {
+            throw new IOException("размер файла изменился после записи индекса");
+        }
+        return new SparseIndex(Arrays.copyOf(offsets, size), dataType.isNumeric() ? Arrays.copyOf(numbers, size)
+                : null, dataType.isNumeric() ? null : strings.toArray(new String[0]), comparator);
+    }
+
+    /**
+     * Метод ищет место в файле, с к-го можно читать строки с ключами не меньше from:
+     * смещение последней проиндексированной строки с ключом меньше from (0, если такой нет).
+     */
+    long startOffset(long from) {
+        int low = 0, high = offsets.length;  // numbers[i] < from для всех i < low
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (numbers[mid] < from) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low == 0 ? 0 : offsets[low - 1];
+    }
+
+    /**
+     * Метод ищет место в файле для строкового ключа from (см. startOffset(long)).
+     */
+    long startOffset(String from) {
+        int low = 0, high = offsets.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(strings[mid], from) < 0) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low == 0 ? 0 : offsets[low - 1];
+    }
+
+    /**
+     * Кол-во проиндексированных строк.
+     */
+    int size() {
+        return offsets.length;
+    }
+
+}
@@ -0,0 +1,133 @@
+package cft.petrov;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+/**
+ * Запись разреженного индекса выходного файла (см. класс SparseIndex) по мере записи самого файла:
+ * ChannelLineWriter передает сюда каждую строку со смещением ее начала, а в индекс попадает каждая K-я.
+ * Если строки файла оказались не упорядочены по возрастанию (н-р, сортировка по убыванию),
+ * индекс бесполезен для поиска диапазона и удаляется.
+ */
+public class SparseIndexWriter {
+
+    private final Path path;
+    private final int interval;
+    private final BufferedWriter out;
+    private final Comparator<String> comparator = new CustomComparator();
+
+    private int countdown;         // сколько строк осталось до следующей проиндексированной
+    private long lines;            // кол-во строк файла
+    private long lastNumber;       // ключ последней проиндексированной строки
+    private String lastString;
+    private boolean hasLast;
+    private boolean ascending = true;
+
+    /**
+     * @param path     путь к файлу индекса (существующий файл перезаписывается)
+     * @param interval через сколько строк записывается ключ
+     * @throws IOException если файл не удалось открыть
+     */
+    public SparseIndexWriter(Path path, int interval) throws IOException {
+        this.path = path;
+        this.interval = interval;
+        this.out = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        out.write(SparseIndex.HEADER + interval);
+        out.newLine();
+    }
+
+    /**
+     * Метод учитывает строку-число выходного файла.
+     *
+     * @param offset смещение начала строки от начала файла
+     * @param key    число в строке
+     */
+    public void add(long offset, long key) throws IOException {
+        lines++;
+        if (countdown-- > 0) {
+            return;
+        }
+        countdown = interval - 1;
+        if (hasLast && key < lastNumber) {
+            ascending = false;
+        }
+        lastNumber = key;
+        hasLast = true;
+        writeEntry(offset, Long.toString(key));
+    }
+
+    /**
+     * Метод учитывает строку выходного файла (см. add(long, long)).
+     */
+    public void add(long offset, String key) throws IOException {
+        lines++;
+        if (countdown-- > 0) {
+            return;
+        }
+        countdown = interval - 1;
+        if (hasLast && comparator.compare(key, lastString) < 0) {
+            ascending = false;
+        }
+        lastString = key;
+        hasLast = true;
+        writeEntry(offset, key);
+    }
+
+    private void writeEntry(long offset, String key) throws IOException {
+        if (ascending) {
+            out.write(Long.toString(offset));
+            out.write('\t');
+            out.write(key);
+            out.newLine();
+        }
+    }
+
+    /**
+     * Упорядочены ли по возрастанию проиндексированные строки (т.е. будет ли индекс записан).
+     */
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Метод дописывает в индекс размер файла (по нему RangeQuery узнает устаревший индекс) и закрывает индекс.
+     * Индекс неупорядоченного файла удаляется.
+     *
+     * @param dataBytes размер выходного файла в байтах
+     */
+    public void finish(long dataBytes) throws IOException {
+        if (!ascending) {
+            abort();
+            return;
+        }
+        try (out) {
+            out.write(SparseIndex.TRAILER + dataBytes + " lines=" + lines);
+            out.newLine();
+        }
+    }
+
+    /**
+     * Метод закрывает и удаляет недописанный индекс (выходной файл записать не удалось).
+     */
+    public void abort() throws IOException {
+        try {
+            out.close();
+        }
+        finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+}
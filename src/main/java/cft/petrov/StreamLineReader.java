@@ -0,0 +1,96 @@
+package cft.petrov;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Построчное чтение потока байт порциями в один переиспользуемый буфер.
+ * Применяется там, где файл нельзя или не нужно отображать в память.
+ */
+public class StreamLineReader extends LineReader {
+    static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private byte[] bytes;
+    private boolean eof;
+    private IOException pendingError;  // ошибка чтения, отложенная до разбора уже прочитанных байт
+    private long bufferOffset;         // смещение начала буфера от начала потока
+
+    public StreamLineReader(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public StreamLineReader(InputStream in, int bufferSize) {
+        this(in, bufferSize, 0);
+    }
+
+    /**
+     * @param in         поток байт
+     * @param bufferSize размер буфера в байтах
+     * @param start      смещение, с к-го поток уже прочитан (для нумерации смещений строк, см. lineOffset)
+     */
+    public StreamLineReader(InputStream in, int bufferSize, long start) {
+        this.in = in;
+        this.bytes = new byte[bufferSize];
+        this.buffer = ByteBuffer.wrap(bytes).limit(0);
+        this.bufferOffset = start;
+    }
+
+    @Override
+    protected long bufferOffset() {
+        return bufferOffset;
+    }
+
+    @Override
+    protected boolean isLastChunk() {
+        return eof;
+    }
+
+    @Override
+    protected int refill(int keepFrom) throws IOException {
+        if (pendingError != null) {
+            throw pendingError;
+        }
+        int kept = buffer.limit() - keepFrom;
+        bufferOffset += keepFrom;
+        if (kept == bytes.length) {
+            bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+        }
+        else {
+            System.arraycopy(bytes, keepFrom, bytes, 0, kept);
+        }
+        int limit = kept;
+        // поток может отдавать данные мелкими частями, буфер дочитывается до заполнения
+        // или пока у потока есть доступные байты: строки канала разбираются, не дожидаясь следующих
+        while (limit < bytes.length && (limit == kept || in.available() > 0)) {
+            int read;
+            try {
+                read = in.read(bytes, limit, bytes.length - limit);
+            }
+            catch (IOException e) {
+                if (limit == kept) {
+                    throw e;
+                }
+                // строки, прочитанные до ошибки (н-р, до обрыва сжатого файла), разбираются, а ошибка
+                // пробрасывается при следующем дочитывании
+                pendingError = e;
+                break;
+            }
+            if (read < 0) {
+                eof = true;
+                break;
+            }
+            limit += read;
+        }
+        buffer = ByteBuffer.wrap(bytes).limit(limit);
+        return 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
@@ -4,79 +4,114 @@ import java.util.Comparator;
 
 /**
  * В классе осуществляется сортировка слиянием массива строк по возрастанию / убыванию.
+ * Сортировка восходящая (bottom-up) с одним буфером на всю сортировку (см. класс IntegerMergeSort).
  */
 
 public class StringMergeSort {
 
     /**
-     * Метод рекурсивно делит массив на 2 части, пока в каждом подмассиве не окажется только 1 эл-т,
-     * а затем запускается метод сортировки подмассивов со слиянием их воедино.
+     * Метод сортирует массив строк.
      *
      * @param stringArr  неотсортированный массив валидных строк вх. файлов
      * @param sortMode   режим сортировки
      * @param comparator компаратор строк
      */
     void divideStringArray(String[] stringArr, SortMode sortMode, Comparator<String> comparator) {
-        int arrLength = stringArr.length;
-
-        // если в stringArr 1 эл-т - прекращается деление на подмассивы
-        if (arrLength == 1) {
-            return;
+        if (stringArr.length > 1) {
+            sortRange(stringArr, 0, stringArr.length, new String[stringArr.length], sortMode, comparator);
         }
+    }
 
-        int mid = arrLength / 2;                      // середина массива stringArr
-        String[] left = new String[mid];              // подмассив с левой половиной эл-ов stringArr
-        String[] right = new String[arrLength - mid]; // подмассив с правой половиной эл-ов stringArr
-
-        // копирование в подмассив left первом половины эл-ов stringArr
-        System.arraycopy(stringArr, 0, left, 0, mid);
-        // копирование в подмассив right второй половины эл-ов stringArr
-        System.arraycopy(stringArr, mid, right, 0, arrLength - mid);
-
-        // подмассивы left и right и дальше (рекурсивно) делятся пополам,
-        // пока в к-м новом не останется по 1 эл-ту, а массив из 1 эл-та - отсортирован:
-        divideStringArray(left, sortMode, comparator);
-        divideStringArray(right, sortMode, comparator);
+    /**
+     * Метод сортирует диапазон [from, to) массива, используя тот же диапазон буфера как рабочую память.
+     *
+     * @param stringArr  сортируемый массив
+     * @param from       начало диапазона
+     * @param to         конец диапазона (не включая)
+     * @param buffer     буфер не короче stringArr
+     * @param sortMode   режим сортировки
+     * @param comparator компаратор строк
+     */
+    static void sortRange(String[] stringArr, int from, int to, String[] buffer, SortMode sortMode,
+                          Comparator<String> comparator) {
+        int runLength = IntegerMergeSort.INSERTION_SORT_THRESHOLD;
+        for (int runFrom = from; runFrom < to; runFrom += runLength) {
+            insertionSort(stringArr, runFrom, Math.min(runFrom + runLength, to), sortMode, comparator);
+        }
+        String[] src = stringArr;
+        String[] dst = buffer;
+        for (int width = runLength; width < to - from; width *= 2) {
+            for (int left = from; left < to; left += 2 * width) {
+                int mid = Math.min(left + width, to);
+                int right = Math.min(left + 2 * width, to);
+                sortArray(src, left, mid, src, mid, right, dst, left, sortMode, comparator);
+            }
+            String[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+        if (src != stringArr) {
+            System.arraycopy(src, from, stringArr, from, to - from);
+        }
+    }
 
-        // по окончанию деления подмассивы сливаются в один:
-        sortArray(stringArr, left, right, sortMode, comparator);
+    /**
+     * Метод устойчиво сортирует вставками короткий диапазон [from, to) массива.
+     */
+    static void insertionSort(String[] stringArr, int from, int to, SortMode sortMode,
+                                      Comparator<String> comparator) {
+        for (int i = from + 1; i < to; i++) {
+            String current = stringArr[i];
+            int j = i - 1;
+            if (sortMode == SortMode.ASC) {
+                while (j >= from && comparator.compare(stringArr[j], current) > 0) {
+                    stringArr[j + 1] = stringArr[j--];
+                }
+            }
+            else {
+                while (j >= from && comparator.compare(stringArr[j], current) < 0) {
+                    stringArr[j + 1] = stringArr[j--];
+                }
+            }
+            stringArr[j + 1] = current;
+        }
     }
 
     /**
      * Метод сортировки эл-ов подмассивов (по возрастанию или убыванию) и слияния их воедино.
+     * Подмассивы задаются диапазонами индексов (см. класс IntegerMergeSort).
+     * При равенстве строк первой берется строка left, поэтому сортировка устойчива.
      *
-     * @param stringArr  исходный массив, куда сольются отсортированные подмассивы
      * @param left       "левый" подмассив
+     * @param i          начало диапазона left
+     * @param leftEnd    конец диапазона left (не включая)
      * @param right      "правый" подмассив
+     * @param j          начало диапазона right
+     * @param rightEnd   конец диапазона right (не включая)
+     * @param stringArr  массив, куда сольются отсортированные подмассивы
+     * @param indexArr   индекс stringArr, с к-го начинается запись
      * @param sortMode   режим сортировки
      * @param comparator компаратор строк
      */
-    private static void sortArray(String[] stringArr, String[] left, String[] right, SortMode sortMode,
-                                  Comparator<String> comparator) {
-        int leftLength = left.length;
-        int rightLength = right.length;
-        int i = 0, j = 0, indexArr = 0; // индексы эл-ов left, right и stringArr
-
+    static void sortArray(String[] left, int i, int leftEnd, String[] right, int j, int rightEnd,
+                          String[] stringArr, int indexArr, SortMode sortMode, Comparator<String> comparator) {
         if (sortMode == SortMode.ASC) {
             // пока не прошлись до конца left и right
-            while (i < leftLength && j < rightLength) {
+            while (i < leftEnd && j < rightEnd) {
                 // в stringArr записывается мин. на текущий момент эл-т
-                stringArr[indexArr++] = comparator.compare(left[i], right[j]) < 0 ? left[i++] : right[j++];
+                stringArr[indexArr++] = comparator.compare(left[i], right[j]) <= 0 ? left[i++] : right[j++];
             }
         }
         else {
-            while (i < leftLength && j < rightLength) {
+            while (i < leftEnd && j < rightEnd) {
                 // в stringArr записывается макс. на текущий момент эл-т
-                stringArr[indexArr++] = comparator.compare(left[i], right[j]) > 0 ? left[i++] : right[j++];
+                stringArr[indexArr++] = comparator.compare(left[i], right[j]) >= 0 ? left[i++] : right[j++];
             }
         }
         // см. класс IntegerMergeSort
-        for (int indexLeft = i; indexLeft < leftLength; indexLeft++) {
-            stringArr[indexArr++] = left[indexLeft];
-        }
-        for (int indexRight = j; indexRight < rightLength; indexRight++) {
-            stringArr[indexArr++] = right[indexRight];
-        }
+        System.arraycopy(left, i, stringArr, indexArr, leftEnd - i);
+        indexArr += leftEnd - i;
+        System.arraycopy(right, j, stringArr, indexArr, rightEnd - j);
     }
 
 }
@@ -0,0 +1,213 @@
+package cft.petrov;
+
+import java.util.Arrays;
+
+/**
+ * В классе осуществляется поразрядная сортировка (MSD radix sort) массива строк
+ * в "естественном порядке" CustomComparator.
+ * Каждая строка один раз кодируется в байтовый ключ, беззнаковое лексикографическое сравнение к-го
+ * (Arrays.compareUnsigned) дает тот же результат, что и CustomComparator.compare:
+ * - символ строковой части с кодом до 0x7D - один байт (код + 2), остальные символы - байт 0x80 и два байта кода;
+ * - числовая часть - байт 0x01, кол-во цифр без ведущих нулей (один байт или 0xFF и четыре байта) и сами цифры.
+ * Так числовая часть меньше любого символа, более длинное число больше короткого ("abc2" < "abc10"),
+ * а закончившийся раньше ключ меньше продолжающегося.
+ * Затем ключи сортируются по байтам, начиная со старшего, без единого вызова компаратора.
+ * Сортировка устойчива, поэтому результат совпадает с сортировкой слиянием и для строк,
+ * равных с точки зрения компаратора (н-р, "a01" и "a1").
+ */
+public class StringRadixSort {
+    // диапазоны короче этого порога досортировываются вставками
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+    // кол-во "корзин": 256 значений байта + корзина для ключей, закончившихся раньше текущего байта
+    private static final int BUCKETS = 257;
+
+    private static final int DIGITS_MARKER = 0x01;
+    private static final int CHAR_SHIFT = 0x02;
+    private static final int MAX_SHORT_CHAR = 0x7D;
+    private static final int LONG_CHAR_MARKER = 0x80;
+    private static final int LONG_LENGTH_MARKER = 0xFF;
+
+    /**
+     * Метод сортирует массив строк.
+     *
+     * @param stringArr неотсортированный массив валидных строк вх. файлов
+     * @param sortMode  режим сортировки
+     */
+    void sortStringArray(String[] stringArr, SortMode sortMode) {
+        int length = stringArr.length;
+        if (length <= 1) {
+            return;
+        }
+        // Убывание получается устойчиво так: массив разворачивается, сортируется по возрастанию
+        // и разворачивается обратно - равные строки при этом остаются в исходном порядке.
+        if (sortMode == SortMode.DESC) {
+            reverse(stringArr);
+        }
+        byte[][] keys = new byte[length][];
+        for (int i = 0; i < length; i++) {
+            keys[i] = encodeKey(stringArr[i]);
+        }
+        sort(keys, stringArr);
+        if (sortMode == SortMode.DESC) {
+            reverse(stringArr);
+        }
+    }
+
+    /**
+     * Метод кодирует строку в байтовый ключ, сохраняющий порядок CustomComparator.
+     *
+     * @param str строка
+     * @return    ключ строки
+     */
+    static byte[] encodeKey(String str) {
+        int strLength = str.length();
+        // худший случай - все символы длинные (3 байта)
+        byte[] key = new byte[3 * strLength + 6];
+        int k = 0;
+        int i = 0;
+        while (i < strLength) {
+            char ch = str.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                // пропуск ведущих нулей числовой части
+                while (i < strLength && str.charAt(i) == '0') {
+                    i++;
+                }
+                int start = i;
+                while (i < strLength && str.charAt(i) >= '0' && str.charAt(i) <= '9') {
+                    i++;
+                }
+                int digits = i - start;
+                key[k++] = DIGITS_MARKER;
+                if (digits < LONG_LENGTH_MARKER) {
+                    key[k++] = (byte) digits;
+                }
+                else {
+                    key[k++] = (byte) LONG_LENGTH_MARKER;
+                    key[k++] = (byte) (digits >>> 24);
+                    key[k++] = (byte) (digits >>> 16);
+                    key[k++] = (byte) (digits >>> 8);
+                    key[k++] = (byte) digits;
+                }
+                for (int d = start; d < i; d++) {
+                    key[k++] = (byte) str.charAt(d);
+                }
+            }
+            else {
+                if (ch <= MAX_SHORT_CHAR) {
+                    key[k++] = (byte) (ch + CHAR_SHIFT);
+                }
+                else {
+                    key[k++] = (byte) LONG_CHAR_MARKER;
+                    key[k++] = (byte) (ch >>> 8);
+                    key[k++] = (byte) ch;
+                }
+                i++;
+            }
+        }
+        return Arrays.copyOf(key, k);
+    }
+
+    /**
+     * Метод устойчиво сортирует ключи по возрастанию, переставляя вместе с ними строки.
+     * Вместо рекурсии используется явный стек диапазонов, т.к. глубина равна длине общего префикса ключей.
+     */
+    private static void sort(byte[][] keys, String[] values) {
+        int length = keys.length;
+        byte[][] keysBuffer = new byte[length][];
+        String[] valuesBuffer = new String[length];
+        int[] count = new int[BUCKETS + 1];
+        // стек диапазонов: тройки (from, to, depth)
+        int[] stack = new int[3 * 64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = length;
+        stack[top++] = 0;
+
+        while (top > 0) {
+            int depth = stack[--top];
+            int to = stack[--top];
+            int from = stack[--top];
+
+            if (to - from <= INSERTION_SORT_THRESHOLD) {
+                insertionSort(keys, values, from, to, depth);
+                continue;
+            }
+            // подсчет ключей в каждой корзине по байту depth
+            Arrays.fill(count, 0);
+            for (int i = from; i < to; i++) {
+                count[byteAt(keys[i], depth) + 2]++;
+            }
+            for (int b = 0; b < BUCKETS; b++) {
+                count[b + 1] += count[b];
+            }
+            // устойчивое распределение по корзинам
+            for (int i = from; i < to; i++) {
+                int position = count[byteAt(keys[i], depth) + 1]++;
+                keysBuffer[position] = keys[i];
+                valuesBuffer[position] = values[i];
+            }
+            System.arraycopy(keysBuffer, 0, keys, from, to - from);
+            System.arraycopy(valuesBuffer, 0, values, from, to - from);
+
+            // корзина закончившихся ключей (count[0]..) уже упорядочена: все ее ключи равны
+            for (int b = 1; b < BUCKETS; b++) {
+                int bucketFrom = from + count[b - 1];
+                int bucketTo = from + count[b];
+                if (bucketTo - bucketFrom > 1) {
+                    if (top + 3 > stack.length) {
+                        stack = Arrays.copyOf(stack, 2 * stack.length);
+                    }
+                    stack[top++] = bucketFrom;
+                    stack[top++] = bucketTo;
+                    stack[top++] = depth + 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Метод возвращает байт ключа с индексом depth как беззнаковое число или -1, если ключ уже закончился.
+     */
+    private static int byteAt(byte[] key, int depth) {
+        return depth < key.length ? key[depth] & 0xFF : -1;
+    }
+
+    /**
+     * Метод устойчиво сортирует вставками короткий диапазон ключей, сравнивая их начиная с байта depth.
+     */
+    private static void insertionSort(byte[][] keys, String[] values, int from, int to, int depth) {
+        for (int i = from + 1; i < to; i++) {
+            byte[] currentKey = keys[i];
+            String currentValue = values[i];
+            int j = i - 1;
+            while (j >= from && compareFrom(keys[j], currentKey, depth) > 0) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = currentKey;
+            values[j + 1] = currentValue;
+        }
+    }
+
+    /**
+     * Метод сравнивает ключи, у к-х первые depth байт заведомо совпадают.
+     */
+    private static int compareFrom(byte[] key1, byte[] key2, int depth) {
+        int from1 = Math.min(depth, key1.length);
+        int from2 = Math.min(depth, key2.length);
+        return Arrays.compareUnsigned(key1, from1, key1.length, key2, from2, key2.length);
+    }
+
+    /**
+     * Метод разворачивает массив.
+     */
+    private static void reverse(String[] stringArr) {
+        for (int i = 0, j = stringArr.length - 1; i < j; i++, j--) {
+            String swap = stringArr[i];
+            stringArr[i] = stringArr[j];
+            stringArr[j] = swap;
+        }
+    }
+
+}
@@ -0,0 +1,277 @@
+package cft.petrov;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * В классе осуществляется отбор первых N строк результата (параметр --limit) без сортировки всех данных:
+ * валидные строки входных файлов проходят через ограниченную кучу из N эл-ов,
+ * на вершине к-й находится "худший" из отобранных эл-ов (последний в порядке вывода).
+ * Новая строка либо вытесняет его, либо сразу отбрасывается, поэтому память зависит от N,
+ * а время - от объема входных данных и log N.
+ * Из равных строк отбираются встреченные раньше, так что результат совпадает
+ * с первыми N строками полной (устойчивой) сортировки.
+ * Без параметра --limit куча вмещает все строки (так RangeQuery упорядочивает по убыванию диапазон,
+ * прочитанный из упорядоченных по возрастанию файлов).
+ */
+public class TopNSelector {
+    // начальная емкость кучи (дальше она удваивается до N)
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    // наибольший размер массива
+    private static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+    private final DataType dataType;
+    private final SortMode sortMode;
+    private final Comparator<String> comparator;
+    private final RunOptions runOptions;
+    private final Reporter reporter;
+    private final int limit;
+
+    private long[] numbers = new long[0];    // куча чисел
+    private String[] strings = new String[0]; // куча строк
+    private long[] sequence = new long[0];   // порядковые номера эл-ов кучи во входных данных
+    private int size;                        // кол-во эл-ов в куче
+    private long nextSequence;
+
+    /**
+     * @param dataType   тип данных, с к-м работает программа
+     * @param sortMode   режим сортировки
+     * @param comparator компаратор строк
+     * @param runOptions дополнительные параметры запуска (в т.ч. N - параметр --limit)
+     * @param reporter   объект, выводящий сообщения о ходе отбора
+     */
+    public TopNSelector(DataType dataType, SortMode sortMode, Comparator<String> comparator,
+                        RunOptions runOptions, Reporter reporter) {
+        this.dataType = dataType;
+        this.sortMode = sortMode;
+        this.comparator = comparator;
+        this.runOptions = runOptions;
+        this.reporter = reporter;
+        this.limit = runOptions.getLimit() > 0 ? (int) Math.min(runOptions.getLimit(), MAX_SIZE) : MAX_SIZE;
+    }
+
+    /**
+     * Метод отбирает первые N валидных строк входных файлов в порядке сортировки и пишет их в выходной файл.
+     *
+     * @param inputFileNames     список имен входных файлов
+     * @param inputFilesAnalyzer объект, открывающий курсоры по валидным строкам входных файлов
+     * @param outputFileName     имя выходного файла
+     */
+    public void selectAndWrite(List<String> inputFileNames, InputFilesAnalyzer inputFilesAnalyzer,
+                               String outputFileName) {
+        readInputFiles(inputFileNames, inputFilesAnalyzer);
+        write(outputFileName);
+    }
+
+    /**
+     * Метод отбирает первые N валидных строк уже открытых курсоров и пишет их в выходной файл
+     * (курсоры закрываются по мере прочтения).
+     *
+     * @param cursors        курсоры входных файлов (еще не спозиционированные на первую строку)
+     * @param outputFileName имя выходного файла
+     */
+    public void selectAndWrite(List<? extends DataCursor> cursors, String outputFileName) {
+        reporter.getRunStats().start(Phase.VALIDATE);
+        try {
+            for (DataCursor cursor : cursors) {
+                offerAll(cursor);
+            }
+        }
+        finally {
+            reporter.getRunStats().stop(Phase.VALIDATE);
+        }
+        write(outputFileName);
+    }
+
+    /**
+     * Метод упорядочивает отобранные строки и пишет их в выходной файл.
+     */
+    private void write(String outputFileName) {
+        if (size == 0) {
+            reporter.info("""
+                    ==========================================================
+                    Общий список валидных данных всех входных файлов пуст!
+                    Сортировать нечего!
+
+                    """);
+            return;
+        }
+        reporter.info("""
+                ==========================================================
+                Отобрано строк результата: %d
+                """, size);
+
+        reporter.getRunStats().start(Phase.SORT);
+        try {
+            sortHeap();
+        }
+        finally {
+            reporter.getRunStats().stop(Phase.SORT);
+        }
+
+        OutputFileWriter outputFileWriter = new OutputFileWriter(reporter, runOptions);
+        if (dataType.isNumeric()) {
+            outputFileWriter.writeLongArrayToFile(Arrays.copyOf(numbers, size), outputFileName);
+        }
+        else {
+            outputFileWriter.writeArrayToFile(Arrays.copyOf(strings, size), outputFileName);
+        }
+    }
+
+    /**
+     * Метод пропускает валидные строки всех входных файлов через кучу.
+     */
+    private void readInputFiles(List<String> inputFileNames, InputFilesAnalyzer inputFilesAnalyzer) {
+        inputFilesAnalyzer.printCheckStart();
+        reporter.getRunStats().start(Phase.VALIDATE);
+        try {
+            for (String fileName : inputFileNames) {
+                DataCursor cursor = inputFilesAnalyzer.openCursor(fileName, dataType, comparator);
+                if (cursor != null) {
+                    offerAll(cursor);
+                }
+            }
+        }
+        finally {
+            reporter.getRunStats().stop(Phase.VALIDATE);
+        }
+    }
+
+    /**
+     * Метод пропускает через кучу все валидные строки курсора и закрывает его.
+     */
+    private void offerAll(DataCursor cursor) {
+        try (cursor) {
+            while (cursor.next()) {
+                offer(cursor);
+            }
+        }
+        catch (IOException e) {
+            reporter.error("Ошибка при чтении входного файла %s: %s\n", cursor.getFileName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Метод предлагает куче текущую строку курсора.
+     * Пока куча не заполнена, строка добавляется; затем - только если она идет в выводе раньше вершины кучи.
+     */
+    private void offer(DataCursor cursor) {
+        long seq = nextSequence++;
+        if (size < limit) {
+            if (size == sequence.length) {
+                grow();
+            }
+            if (dataType.isNumeric()) {
+                numbers[size] = cursor.currentNumber();
+            }
+            else {
+                strings[size] = cursor.current();
+            }
+            sequence[size] = seq;
+            siftUp(size++);
+            return;
+        }
+        // у новой строки наибольший порядковый номер, поэтому при равенстве она идет после вершины
+        boolean precedesTop = dataType.isNumeric()
+                ? compareValues(cursor.currentNumber(), numbers[0]) < 0
+                : compareValues(cursor.current(), strings[0]) < 0;
+        if (precedesTop) {
+            if (dataType.isNumeric()) {
+                numbers[0] = cursor.currentNumber();
+            }
+            else {
+                strings[0] = cursor.current();
+            }
+            sequence[0] = seq;
+            siftDown(0, size);
+        }
+    }
+
+    private void grow() {
+        int capacity = (int) Math.min(limit, Math.max(INITIAL_CAPACITY, 2L * sequence.length));
+        sequence = Arrays.copyOf(sequence, capacity);
+        if (dataType.isNumeric()) {
+            numbers = Arrays.copyOf(numbers, capacity);
+        }
+        else {
+            strings = Arrays.copyOf(strings, capacity);
+        }
+    }
+
+    /**
+     * Метод упорядочивает эл-ты кучи в порядке вывода (пирамидальная сортировка на месте):
+     * вершина - последний в порядке вывода эл-т - раз за разом переносится в конец массива.
+     */
+    private void sortHeap() {
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (compare(i, parent) <= 0) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int end) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= end) {
+                return;
+            }
+            if (child + 1 < end && compare(child + 1, child) > 0) {
+                child++;
+            }
+            if (compare(child, i) <= 0) {
+                return;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    /**
+     * Метод сравнивает эл-ты кучи в порядке вывода: по значению в режиме сортировки,
+     * а при равенстве - по порядку во входных данных.
+     */
+    private int compare(int i, int j) {
+        int result = dataType.isNumeric()
+                ? compareValues(numbers[i], numbers[j])
+                : compareValues(strings[i], strings[j]);
+        return result != 0 ? result : Long.compare(sequence[i], sequence[j]);
+    }
+
+    private int compareValues(long a, long b) {
+        return sortMode == SortMode.ASC ? Long.compare(a, b) : Long.compare(b, a);
+    }
+
+    private int compareValues(String a, String b) {
+        return sortMode == SortMode.ASC ? comparator.compare(a, b) : comparator.compare(b, a);
+    }
+
+    private void swap(int i, int j) {
+        if (dataType.isNumeric()) {
+            long number = numbers[i];
+            numbers[i] = numbers[j];
+            numbers[j] = number;
+        }
+        else {
+            String string = strings[i];
+            strings[i] = strings[j];
+            strings[j] = string;
+        }
+        long seq = sequence[i];
+        sequence[i] = sequence[j];
+        sequence[j] = seq;
+    }
+
+}
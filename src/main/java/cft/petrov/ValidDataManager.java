@@ -2,11 +2,25 @@ package cft.petrov;
 
 import java.util.Comparator;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 
 /**
  * Класс манипулирует отобранными валидными данными входных файлов.
  */
 public class ValidDataManager {
+    // длина массива целых чисел, начиная с к-й автоматически выбирается поразрядная сортировка
+    static final int RADIX_SORT_THRESHOLD = 2_000_000;
+    // естественная сортировка сливает k серий за log2(k) проходов, а поразрядная делает по проходу на байт:
+    // при сериях не больше 2^(кол-во байт) числа естественная сортировка не медленнее поразрядной
+    private static final int INT_NATURAL_MAX_RUNS = 1 << Integer.BYTES;
+    private static final int LONG_NATURAL_MAX_RUNS = 1 << Long.BYTES;
+
+    private final Reporter reporter;
+
+    public ValidDataManager(Reporter reporter) {
+        this.reporter = reporter;
+    }
+
     /**
      * Метод создает массив данных на сортировку, запускает методы сортировки массива
      * и записи отсортированных данных в выходной файл.
@@ -15,32 +29,202 @@ public class ValidDataManager {
      * @param sortMode       режим сортировки
      * @param dataType       тип данных
      * @param outputFileName имя выходного файла
+     * @param comparator     компаратор строк
+     * @param runOptions     дополнительные параметры запуска
      */
     public void sortAndWrite(List<String> dataToSort, SortMode sortMode, DataType dataType, String outputFileName,
-                             Comparator<String> comparator) {
+                             Comparator<String> comparator, RunOptions runOptions) {
 
-        OutputFileWriter outputFileWriter = new OutputFileWriter();
+        OutputFileWriter outputFileWriter = new OutputFileWriter(reporter, runOptions);
 
         if (dataType == DataType.INTEGER) {
-            Integer[] intArr = dataToSort.stream().mapToInt(Integer::parseInt).boxed().toArray(Integer[]::new);
-            System.out.println("Создан массив целых чисел на сортировку слиянием.");
+            int[] intArr = dataToSort.stream().mapToInt(Integer::parseInt).toArray();
+            reporter.info("Создан массив целых чисел на сортировку слиянием.\n");
 
-            IntegerMergeSort intMergeSort = new IntegerMergeSort();
-            intMergeSort.divideIntArray(intArr, sortMode);
-            System.out.println("Массив целых чисел отсортирован.");
+            sortIntArray(intArr, sortMode, runOptions);
+            reporter.info("Массив целых чисел отсортирован.\n");
 
-            outputFileWriter.writeArrayToFile(intArr, outputFileName);
+            outputFileWriter.writeIntArrayToFile(intArr, outputFileName);
+        }
+        else if (dataType == DataType.LONG) {
+            long[] longArr = dataToSort.stream().mapToLong(Long::parseLong).toArray();
+            reporter.info("Создан массив 64-битных целых чисел на сортировку слиянием.\n");
+
+            sortLongArray(longArr, sortMode, runOptions);
+            reporter.info("Массив 64-битных целых чисел отсортирован.\n");
+
+            outputFileWriter.writeLongArrayToFile(longArr, outputFileName);
         }
         else {
             String[] stringArr = dataToSort.toArray(String[]::new);
-            System.out.println("Создан массив строковых данных на сортировку слиянием.");
+            reporter.info("Создан массив строковых данных на сортировку слиянием.\n");
 
-            StringMergeSort stringMergeSort = new StringMergeSort();
-            stringMergeSort.divideStringArray(stringArr, sortMode, comparator);
-            System.out.println("Массив строковых данных отсортирован.");
+            sortStringArray(stringArr, sortMode, comparator, runOptions);
+            reporter.info("Массив строковых данных отсортирован.\n");
 
             outputFileWriter.writeArrayToFile(stringArr, outputFileName);
         }
     }
 
+    /**
+     * Метод сортирует валидные целые числа и пишет их в выходной файл (см. sortAndWrite).
+     * Числа уже разобраны курсорами входных файлов, поэтому строки для них не создаются.
+     * Массив сортируется на месте, без копии: числа типа INTEGER уже собраны в int[] (см. класс NumberList).
+     *
+     * @param numbers        валидные числа на сортировку
+     * @param sortMode       режим сортировки
+     * @param outputFileName имя выходного файла
+     * @param runOptions     дополнительные параметры запуска
+     */
+    public void sortAndWriteNumbers(NumberList numbers, SortMode sortMode, String outputFileName,
+                                    RunOptions runOptions) {
+
+        OutputFileWriter outputFileWriter = new OutputFileWriter(reporter, runOptions);
+
+        if (numbers.getDataType() == DataType.INTEGER) {
+            reporter.info("Создан массив целых чисел на сортировку слиянием.\n");
+
+            sortIntArray(numbers.getInts(), numbers.size(), sortMode, runOptions);
+            reporter.info("Массив целых чисел отсортирован.\n");
+
+            outputFileWriter.writeIntArrayToFile(numbers.getInts(), numbers.size(), outputFileName);
+        }
+        else {
+            reporter.info("Создан массив 64-битных целых чисел на сортировку слиянием.\n");
+
+            sortLongArray(numbers.getLongs(), numbers.size(), sortMode, runOptions);
+            reporter.info("Массив 64-битных целых чисел отсортирован.\n");
+
+            outputFileWriter.writeLongArrayToFile(numbers.getLongs(), numbers.size(), outputFileName);
+        }
+    }
+
+    /**
+     * Метод сортирует массив целых чисел способом, выбранным по параметрам запуска (см. selectEngine):
+     * естественной или поразрядной сортировкой либо слиянием, при уровне параллелизма > 1 - на пуле ForkJoinPool.
+     */
+    void sortIntArray(int[] intArr, SortMode sortMode, RunOptions runOptions) {
+        sortIntArray(intArr, intArr.length, sortMode, runOptions);
+    }
+
+    /**
+     * Метод сортирует первые length эл-ов массива целых чисел (см. sortIntArray(int[], SortMode, RunOptions)):
+     * неполная порция внешней сортировки сортируется на месте, без копии точной длины.
+     */
+    void sortIntArray(int[] intArr, int length, SortMode sortMode, RunOptions runOptions) {
+        reporter.getRunStats().start(Phase.SORT);
+        try {
+            SortEngine engine = selectEngine(runOptions, () -> length >= RADIX_SORT_THRESHOLD
+                    && (runOptions.isUnsorted()
+                        || !NaturalMergeSort.hasAtMostRuns(intArr, length, INT_NATURAL_MAX_RUNS)));
+            if (engine == SortEngine.NATURAL) {
+                new NaturalMergeSort().sortIntArray(intArr, length, sortMode);
+            }
+            else if (engine == SortEngine.RADIX) {
+                new IntegerRadixSort().sortIntArray(intArr, length, sortMode);
+            }
+            else if (runOptions.getParallelism() > 1) {
+                new ParallelMergeSort(runOptions.getParallelism(), runOptions.getParallelThreshold())
+                        .sortIntArray(intArr, length, sortMode);
+            }
+            else {
+                new IntegerMergeSort().divideIntArray(intArr, length, sortMode);
+            }
+        }
+        finally {
+            reporter.getRunStats().stop(Phase.SORT);
+        }
+    }
+
+    /**
+     * Метод сортирует массив 64-битных целых чисел (см. sortIntArray).
+     */
+    void sortLongArray(long[] longArr, SortMode sortMode, RunOptions runOptions) {
+        sortLongArray(longArr, longArr.length, sortMode, runOptions);
+    }
+
+    /**
+     * Метод сортирует первые length эл-ов массива 64-битных целых чисел.
+     */
+    void sortLongArray(long[] longArr, int length, SortMode sortMode, RunOptions runOptions) {
+        reporter.getRunStats().start(Phase.SORT);
+        try {
+            SortEngine engine = selectEngine(runOptions, () -> length >= RADIX_SORT_THRESHOLD
+                    && (runOptions.isUnsorted()
+                        || !NaturalMergeSort.hasAtMostRuns(longArr, length, LONG_NATURAL_MAX_RUNS)));
+            if (engine == SortEngine.NATURAL) {
+                new NaturalMergeSort().sortLongArray(longArr, length, sortMode);
+            }
+            else if (engine == SortEngine.RADIX) {
+                new IntegerRadixSort().sortLongArray(longArr, length, sortMode);
+            }
+            else if (runOptions.getParallelism() > 1) {
+                new ParallelMergeSort(runOptions.getParallelism(), runOptions.getParallelThreshold())
+                        .sortLongArray(longArr, length, sortMode);
+            }
+            else {
+                new IntegerMergeSort().divideLongArray(longArr, length, sortMode);
+            }
+        }
+        finally {
+            reporter.getRunStats().stop(Phase.SORT);
+        }
+    }
+
+    /**
+     * Метод выбирает способ сортировки массива: заданный явно (--engine) или, по умолчанию (auto):
+     * - неупорядоченную порцию (--unsorted) - поразрядно, если это большой массив целых чисел, иначе слиянием;
+     * - при явно заданном уровне параллелизма > 1 - параллельным слиянием (естественная сортировка однопоточная);
+     * - иначе склейку упорядоченных по возрастанию входных файлов (строки, нарушающие порядок, отброшены) -
+     *   естественной сортировкой, к-я лишь сливает несколько длинных серий, но большой массив целых чисел
+     *   из множества серий - поразрядно: слияние всех серий было бы дольше.
+     *
+     * @param radixPreferred проверяет, выгоднее ли для массива поразрядная сортировка (вызывается только для auto)
+     * @return               NATURAL, RADIX или MERGE (слияние, при уровне параллелизма > 1 - параллельное)
+     */
+    private SortEngine selectEngine(RunOptions runOptions, BooleanSupplier radixPreferred) {
+        if (runOptions.getSortEngine() != SortEngine.AUTO) {
+            return runOptions.getSortEngine();
+        }
+        if (runOptions.isUnsorted()) {
+            return radixPreferred.getAsBoolean() ? SortEngine.RADIX : SortEngine.MERGE;
+        }
+        if (runOptions.getParallelism() > 1) {
+            reporter.info("Задан --parallelism: массив сортируется параллельным слиянием, "
+                    + "а не естественной сортировкой.\n");
+            return SortEngine.MERGE;
+        }
+        return radixPreferred.getAsBoolean() ? SortEngine.RADIX : SortEngine.NATURAL;
+    }
+
+    /**
+     * Метод сортирует массив строк (см. sortIntArray).
+     * При выборе поразрядной сортировки (--engine=radix) строки сортируются по байтовым ключам,
+     * кодирующим порядок CustomComparator, без вызовов компаратора.
+     */
+    void sortStringArray(String[] stringArr, SortMode sortMode, Comparator<String> comparator,
+                         RunOptions runOptions) {
+        reporter.getRunStats().start(Phase.SORT);
+        try {
+            // поразрядная сортировка строк выбирается только явно (--engine=radix)
+            SortEngine engine = selectEngine(runOptions, () -> false);
+            if (engine == SortEngine.NATURAL) {
+                new NaturalMergeSort().sortStringArray(stringArr, sortMode, comparator);
+            }
+            else if (engine == SortEngine.RADIX) {
+                new StringRadixSort().sortStringArray(stringArr, sortMode);
+            }
+            else if (runOptions.getParallelism() > 1) {
+                new ParallelMergeSort(runOptions.getParallelism(), runOptions.getParallelThreshold())
+                        .sortStringArray(stringArr, sortMode, comparator);
+            }
+            else {
+                new StringMergeSort().divideStringArray(stringArr, sortMode, comparator);
+            }
+        }
+        finally {
+            reporter.getRunStats().stop(Phase.SORT);
+        }
+    }
+
 }